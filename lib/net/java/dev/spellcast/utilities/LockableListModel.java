@@ -39,9 +39,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 
 import javax.swing.AbstractListModel;
 import javax.swing.ComboBoxModel;
@@ -59,6 +61,7 @@ public class LockableListModel<E>
 	implements Cloneable, List<E>, ListModel<E>, ComboBoxModel<E>, MutableComboBoxModel<E>
 {
 	private static final ListElementFilter NO_FILTER = new ShowEverythingFilter();
+	private static final int MAX_TOUCHED_ROWS = 32;
 
 	private boolean actionListenerFired = false;
 	
@@ -181,6 +184,102 @@ public class LockableListModel<E>
 		}
 	}
 
+	/**
+	 * Returns whether the list is already in the order {@link #sort()} would put it in, which takes one comparison per
+	 * element rather than a full sort.
+	 */
+
+	public boolean isSorted()
+	{
+		synchronized ( this.actualElements )
+		{
+			for ( int i = 1; i < this.actualElements.size(); ++i )
+			{
+				E previous = this.actualElements.get( i - 1 );
+				E element = this.actualElements.get( i );
+				int compareResult =
+					this.comparator != null ? this.comparator.compare( previous, element ) : LockableListModel.compareNaturally( previous, element );
+				if ( compareResult > 0 )
+				{
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	// Elements without a comparator are in their natural order, as Collections.sort leaves them
+
+	@SuppressWarnings( "unchecked" )
+	private static <E> int compareNaturally( final E previous, final E element )
+	{
+		return ( (Comparable<? super E>) previous ).compareTo( element );
+	}
+
+	/**
+	 * Tells the listeners of this list and its mirrors that the given elements have changed, one row at a time.
+	 * Elements which aren't shown are skipped. If more than a few rows are shown, it is cheaper to tell them that
+	 * everything has changed.
+	 */
+
+	public void touch( final Collection<? extends E> elements )
+	{
+		synchronized ( this.actualElements )
+		{
+			this.touchSingle( elements );
+
+			Iterator<WeakReference<LockableListModel<E>>> it = this.mirrorList.iterator();
+			while ( it.hasNext() )
+			{
+				LockableListModel<E> mirror = this.getNextMirror( it );
+				if ( mirror == null )
+				{
+					break;
+				}
+
+				mirror.touchSingle( elements );
+			}
+		}
+	}
+
+	private void touchSingle( final Collection<? extends E> elements )
+	{
+		if ( elements.isEmpty() || this.listenerList.getListenerCount() == 0 )
+		{
+			return;
+		}
+
+		Map<E, Integer> indices = new IdentityHashMap<E, Integer>();
+		for ( int i = 0; i < this.visibleElements.size(); ++i )
+		{
+			indices.put( this.visibleElements.get( i ), i );
+		}
+
+		List<Integer> rows = new ArrayList<Integer>();
+		for ( E element : elements )
+		{
+			Integer index = indices.get( element );
+			if ( index == null )
+			{
+				continue;
+			}
+
+			if ( rows.size() == LockableListModel.MAX_TOUCHED_ROWS )
+			{
+				this.fireContentsChanged( this, 0, this.visibleElements.size() - 1 );
+				return;
+			}
+
+			rows.add( index );
+		}
+
+		for ( int index : rows )
+		{
+			this.fireContentsChanged( this, index, index );
+		}
+	}
+
 	public void touch()
 	{
 		synchronized ( this.actualElements )
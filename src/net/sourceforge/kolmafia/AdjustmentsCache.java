@@ -0,0 +1,244 @@
+package net.sourceforge.kolmafia;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.sourceforge.kolmafia.objectpool.ItemPool;
+import net.sourceforge.kolmafia.persistence.HolidayDatabase;
+import net.sourceforge.kolmafia.preferences.Preferences;
+import net.sourceforge.kolmafia.request.CampgroundRequest;
+import net.sourceforge.kolmafia.request.ChateauRequest;
+import net.sourceforge.kolmafia.request.FloristRequest;
+import net.sourceforge.kolmafia.request.FloristRequest.Florist;
+import net.sourceforge.kolmafia.request.UseSkillRequest;
+import net.sourceforge.kolmafia.session.ClanManager;
+import net.sourceforge.kolmafia.session.EquipmentManager;
+import net.sourceforge.kolmafia.session.InventoryManager;
+
+// Remembers what KoLCharacter.recalculateAdjustments() last saw, so that a recalculation
+// whose inputs have not changed since the previous one can be skipped.
+//
+// A fingerprint has two parts.  The preferences are those the last recalculation actually
+// read, and whether each still has the value it was read with.  Everything else the
+// calculation or a variable modifier reads is listed by getState.  Some modifiers read the
+// current modifiers themselves, so a result is only reused once a recalculation has left
+// the current modifiers unchanged.
+
+public class AdjustmentsCache {
+  private static List<Object> lastState = null;
+  private static Preferences.Reads lastReads = null;
+  private static ModifiersSnapshot lastResult = null;
+
+  private static int hits = 0;
+  private static int misses = 0;
+  private static long checkNanos = 0;
+  private static long recalculateNanos = 0;
+
+  private AdjustmentsCache() {}
+
+  public static final class Fingerprint {
+    private final List<Object> state;
+    private Preferences.Reads reads;
+
+    private Fingerprint(final List<Object> state) {
+      this.state = state;
+    }
+  }
+
+  // Returns the fingerprint of the current inputs, with the preferences it reads to be
+  // recorded until store is called, or null if the last recalculation can be reused.
+  static synchronized Fingerprint check() {
+    long start = System.nanoTime();
+    List<Object> state = AdjustmentsCache.getState();
+    boolean unchanged =
+        AdjustmentsCache.lastResult == KoLCharacter.getCurrentModifiers()
+            && state.equals(AdjustmentsCache.lastState)
+            && AdjustmentsCache.lastReads.unchanged();
+    AdjustmentsCache.checkNanos += System.nanoTime() - start;
+
+    if (unchanged) {
+      AdjustmentsCache.hits++;
+      return null;
+    }
+    AdjustmentsCache.misses++;
+
+    Fingerprint fingerprint = new Fingerprint(state);
+    fingerprint.reads = Preferences.startRecordingReads();
+    return fingerprint;
+  }
+
+  static synchronized void store(
+      final Fingerprint fingerprint, final boolean changed, final long elapsed) {
+    AdjustmentsCache.recalculateNanos += elapsed;
+    if (fingerprint == null) {
+      // A debug recalculation
+      AdjustmentsCache.invalidate();
+      return;
+    }
+
+    Preferences.stopRecordingReads(fingerprint.reads);
+    if (changed) {
+      AdjustmentsCache.invalidate();
+      return;
+    }
+    AdjustmentsCache.lastState = fingerprint.state;
+    AdjustmentsCache.lastReads = fingerprint.reads;
+    AdjustmentsCache.lastResult = KoLCharacter.getCurrentModifiers();
+  }
+
+  public static synchronized void invalidate() {
+    AdjustmentsCache.lastState = null;
+    AdjustmentsCache.lastReads = null;
+    AdjustmentsCache.lastResult = null;
+  }
+
+  public static synchronized int getHits() {
+    return AdjustmentsCache.hits;
+  }
+
+  public static synchronized int getMisses() {
+    return AdjustmentsCache.misses;
+  }
+
+  // Time spent taking fingerprints
+  public static synchronized long getCheckNanos() {
+    return AdjustmentsCache.checkNanos;
+  }
+
+  // Time spent in recalculations which were not skipped
+  public static synchronized long getRecalculateNanos() {
+    return AdjustmentsCache.recalculateNanos;
+  }
+
+  public static synchronized void resetCounters() {
+    AdjustmentsCache.hits = 0;
+    AdjustmentsCache.misses = 0;
+    AdjustmentsCache.checkNanos = 0;
+    AdjustmentsCache.recalculateNanos = 0;
+  }
+
+  private static List<Object> getState() {
+    List<Object> state = new ArrayList<>(256);
+
+    state.add(KoLCharacter.getMindControlLevel());
+
+    for (AdventureResult item : EquipmentManager.allEquipment()) {
+      state.add(item == null ? null : item.getItemId());
+    }
+    state.add(EquipmentManager.getFakeHands());
+
+    synchronized (KoLConstants.activeEffects) {
+      for (AdventureResult effect : KoLConstants.activeEffects) {
+        state.add(effect.getEffectId());
+        state.add(effect.getCount());
+      }
+    }
+    state.add(null);
+
+    AdjustmentsCache.addFamiliar(state, KoLCharacter.getFamiliar());
+    AdjustmentsCache.addFamiliar(state, KoLCharacter.getEffectiveFamiliar());
+    AdjustmentsCache.addFamiliar(state, KoLCharacter.getEnthroned());
+    AdjustmentsCache.addFamiliar(state, KoLCharacter.getBjorned());
+
+    state.add(Modifiers.currentLocation);
+    state.add(Modifiers.currentZone);
+    state.add(Modifiers.currentEnvironment);
+    state.add(Modifiers.getCurrentML());
+
+    // Left behind by earlier calculations, speculative ones included
+    state.add(Modifiers.getCurrentFamiliar());
+    state.add(Modifiers.getCurrentWeight());
+    state.add(Modifiers.getMainhandClass());
+    state.add(Modifiers.isUnarmed());
+    state.add(Modifiers.getSmithsness());
+    state.add(Modifiers.getHoboPower());
+
+    state.add(Modifiers.getDataGeneration());
+
+    // Holidays and the month follow the calendar in some time zone
+    state.add(System.currentTimeMillis() / 900000L);
+    state.add(HolidayDatabase.getMoonState());
+    state.add(KoLmafia.statDay);
+
+    state.add(KoLCharacter.getAscensionClass());
+    state.add(KoLCharacter.getPath());
+    state.add(KoLCharacter.getSign());
+    state.add(KoLCharacter.getLimitmode());
+    state.add(KoLCharacter.canInteract());
+    state.add(KoLCharacter.getAscensions());
+    state.add(KoLCharacter.getLevel());
+    state.add(KoLCharacter.getBaseMuscle());
+    state.add(KoLCharacter.getBaseMysticality());
+    state.add(KoLCharacter.getBaseMoxie());
+    state.add(KoLCharacter.getFullness());
+    state.add(KoLCharacter.getInebriety());
+    state.add(KoLCharacter.getSpleenUse());
+    state.add(KoLCharacter.getGender());
+    state.add(KoLCharacter.getFury());
+    state.add(KoLCharacter.getDiscoMomentum());
+    state.add(KoLCharacter.getAudience());
+    state.add(KoLCharacter.getTelescopeUpgrades());
+    state.add(KoLCharacter.getRadSickness());
+    state.add(KoLCharacter.getMask());
+    state.add(KoLCharacter.getMinstrelLevel());
+    state.add(KoLCharacter.getCurrentInstrument());
+    state.add(KoLCharacter.getCompanion());
+    state.add(KoLCharacter.currentPastaThrall.getType());
+    state.add(KoLCharacter.currentPastaThrall.getLevel());
+
+    EdServantData servant = EdServantData.currentServant();
+    state.add(servant == null ? null : servant.getId());
+    state.add(servant == null ? null : servant.getLevel());
+
+    VYKEACompanionData companion = VYKEACompanionData.currentCompanion();
+    state.add(companion.getType());
+    state.add(companion.getLevel());
+
+    state.add(FloristRequest.haveFlorist());
+    List<Florist> plants = FloristRequest.getPlants(Modifiers.currentLocation);
+    if (plants != null) {
+      for (Florist plant : plants) {
+        state.add(plant);
+      }
+    }
+    state.add(null);
+
+    state.add(CampgroundRequest.getCurrentDwelling().getItemId());
+    synchronized (KoLConstants.campground) {
+      for (AdventureResult item : KoLConstants.campground) {
+        state.add(item.getItemId());
+        state.add(item.getCount());
+      }
+    }
+    state.add(null);
+
+    state.add(ChateauRequest.ceiling);
+    state.add(new ArrayList<>(ClanManager.getClanRumpus()));
+
+    state.add(KoLConstants.inventory.contains(ItemPool.get(ItemPool.COMFY_BLANKET, 1)));
+    state.add(InventoryManager.hasItem(ItemPool.FISHING_POLE));
+    state.add(InventoryManager.hasItem(ItemPool.ANTIQUE_TACKLE_BOX));
+
+    int skills = 0;
+    synchronized (KoLConstants.availableSkills) {
+      for (UseSkillRequest skill : KoLConstants.availableSkills) {
+        skills = 31 * skills + skill.getSkillId();
+      }
+      state.add(KoLConstants.availableSkills.size());
+    }
+    state.add(skills);
+
+    return state;
+  }
+
+  private static void addFamiliar(final List<Object> state, final FamiliarData familiar) {
+    if (familiar == null) {
+      state.add(null);
+      return;
+    }
+    state.add(familiar.getId());
+    state.add(familiar.getUncappedWeight());
+    state.add(familiar.getFeasted());
+    AdventureResult item = familiar.getItem();
+    state.add(item == null ? null : item.getItemId());
+  }
+}
@@ -63,22 +63,37 @@ public class DebugModifiers extends Modifiers {
     }
 
     super.add(index, mod, desc);
+    this.record(index, mod, desc, null, null);
+  }
+
+  @Override
+  public void add(final int index, final double mod, final String type, final String name) {
+    if (index < 0 || index >= Modifiers.DOUBLE_MODIFIERS || mod == 0.0) {
+      return;
+    }
+
+    super.add(index, mod, type, name);
+    // Only built when tracing
+    this.record(index, mod, type + ":" + name, type, name);
+  }
 
+  private void record(
+      final int index, final double mod, final String desc, String type, String name) {
     Integer key = IntegerPool.get(index);
     if (!DebugModifiers.wanted.containsKey(key)) {
       return;
     }
 
-    String lookup = desc;
-    String type = null;
-    String name = null;
-    int ind = lookup.indexOf(":");
-    if (ind > 0) {
-      type = lookup.substring(0, ind);
-      name = lookup.replace(type + ":", "");
-    } else {
-      type = "";
-      name = desc;
+    if (type == null) {
+      String lookup = desc;
+      int ind = lookup.indexOf(":");
+      if (ind > 0) {
+        type = lookup.substring(0, ind);
+        name = lookup.replace(type + ":", "");
+      } else {
+        type = "";
+        name = desc;
+      }
     }
     if (!desc.equals(DebugModifiers.currentDesc) || DebugModifiers.adjustments.containsKey(key)) {
       DebugModifiers.flushRow();
@@ -111,26 +126,19 @@ public class DebugModifiers extends Modifiers {
       String modifier = DebugModifiers.wanted.get(key);
       DebugModifiers.buffer.append(modifier);
       ArrayList<Change> modChangers = new ArrayList<>();
-      Iterator<String> allmods = Modifiers.getAllModifiers();
-      while (allmods.hasNext()) {
-        String lookup = allmods.next();
-        String type = null;
-        String name = null;
-        int ind = lookup.indexOf(":");
-        if (ind > 0) {
-          type = lookup.substring(0, ind);
-          name = lookup.replace(type + ":", "");
-        } else {
-          type = "";
-          name = lookup;
-        }
-        Modifiers mods = Modifiers.getModifiers(type, name);
-        if (mods == null) {
-          continue;
+      for (ModifierIndex.Source source : ModifierIndex.getSources(key)) {
+        String type = source.getType();
+        String name = source.getName();
+        double value = source.getValue();
+        if (source.isVariable()) {
+          Modifiers mods = Modifiers.getModifiers(type, name);
+          if (mods == null) {
+            continue;
+          }
+          value = mods.get(key);
         }
-        double value = mods.get(key);
         if (value != 0.0) {
-          modChangers.add(new Change(type, name, value, mods.variable));
+          modChangers.add(new Change(type, name, value, source.isVariable()));
         }
       }
       if (modChangers.size() > 0) {
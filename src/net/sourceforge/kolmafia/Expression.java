@@ -1,12 +1,21 @@
 package net.sourceforge.kolmafia;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.function.DoubleSupplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import net.sourceforge.kolmafia.listener.CharacterListener;
+import net.sourceforge.kolmafia.listener.CharacterListenerRegistry;
+import net.sourceforge.kolmafia.listener.Listener;
+import net.sourceforge.kolmafia.listener.PreferenceListenerRegistry;
 import net.sourceforge.kolmafia.objectpool.EffectPool;
 import net.sourceforge.kolmafia.objectpool.ItemPool;
 import net.sourceforge.kolmafia.persistence.AdventureDatabase;
@@ -22,15 +31,48 @@ import net.sourceforge.kolmafia.utilities.StringUtilities;
 
 public class Expression {
   private static final Pattern NUM_PATTERN = Pattern.compile("([+-]?[\\d.]+)(.*)");
-  private static final int STACK_SIZE = 128;
+
+  // Inputs whose changes are tracked, so that the value of an expression which reads
+  // nothing else can be remembered until one of them changes.
+  public static final int PREFERENCES = 0;
+  public static final int LOCATION = 1;
+  public static final int FAMILIAR = 2;
+  public static final int MOON = 3;
+  public static final int MONSTER_LEVEL = 4;
+  private static final int TRACKED_INPUTS = 5;
+
+  // An input the expression reads whose changes are not tracked
+  private static final int UNTRACKED = -1;
+  // Constants and arithmetic
+  private static final int NO_INPUT = -2;
+
+  private static final int[] generations = new int[Expression.TRACKED_INPUTS];
+
+  // Preferences which some expression reads
+  private static final Set<String> watchedPreferences = new HashSet<>();
+
+  private static final Listener preferenceListener = () -> Expression.inputChanged(PREFERENCES);
+  private static final CharacterListener characterListener =
+      new CharacterListener(Expression::allInputsChanged);
+
+  static {
+    CharacterListenerRegistry.addCharacterListener(Expression.characterListener);
+  }
 
   protected String name;
   protected String text;
 
   private char[] bytecode; // Compiled expression
+  private DoubleSupplier root; // Closures which evaluate the bytecode
   private ArrayList<Object> literals; // Strings & floats needed by expression
   protected AdventureResult effect;
 
+  // Tracked inputs read by the expression, or null if it reads an untracked one
+  private int[] inputs;
+  // Preferences read by the expression
+  private String[] preferences;
+  private volatile CachedValue cached = null;
+
   // If non-null, contains concatenated error strings from compiling bytecode
   private StringBuilder error = null;
 
@@ -56,21 +98,6 @@ public class Expression {
     return buf;
   }
 
-  private static double[] cachedStack;
-
-  private static synchronized double[] stackFactory(double[] recycle) {
-    if (recycle != null) { // Reuse this stack for the next evaluation.
-      cachedStack = recycle;
-      return null;
-    } else if (cachedStack != null) { // We have a stack handy; it's yours now.
-      double[] rv = cachedStack;
-      cachedStack = null;
-      return rv;
-    } else { // We're all out of stacks.
-      return new double[STACK_SIZE];
-    }
-  }
-
   public Expression(String text, String name) {
     this.name = name;
     this.text = text;
@@ -95,6 +122,173 @@ public class Expression {
       buf.append(this.text);
     }
     this.text = null;
+
+    try {
+      this.root = this.compile();
+    } catch (RuntimeException e) {
+      // Report the problem each time the expression is evaluated
+      this.root =
+          () -> {
+            throw e;
+          };
+    }
+
+    this.recordInputs();
+  }
+
+  private static final class CachedValue {
+    final double value;
+    final int[] stamps;
+
+    CachedValue(double value, int[] stamps) {
+      this.value = value;
+      this.stamps = stamps;
+    }
+  }
+
+  public static synchronized void inputChanged(final int input) {
+    Expression.generations[input]++;
+  }
+
+  public static synchronized void allInputsChanged() {
+    for (int i = 0; i < Expression.TRACKED_INPUTS; ++i) {
+      Expression.generations[i]++;
+    }
+  }
+
+  private static synchronized int getGeneration(final int input) {
+    return Expression.generations[input];
+  }
+
+  private static void watchPreference(final String name) {
+    synchronized (Expression.watchedPreferences) {
+      if (!Expression.watchedPreferences.add(name)) {
+        return;
+      }
+    }
+    PreferenceListenerRegistry.registerPreferenceListener(name, Expression.preferenceListener);
+  }
+
+  // Returns the tracked input which the given bytecode reads, UNTRACKED if
+  // it reads something else, or NO_INPUT if it reads nothing at all
+  private static int getInput(final char inst) {
+    if (inst > '\u00FF') {
+      return NO_INPUT;
+    }
+    switch (inst) {
+      case 'r':
+      case '+':
+      case '-':
+      case '*':
+      case '/':
+      case '%':
+      case '^':
+      case 'a':
+      case 'c':
+      case 'f':
+      case 'm':
+      case 's':
+      case 'x':
+      case '#':
+      case '\u0096':
+        return NO_INPUT;
+      case 'p':
+        return PREFERENCES;
+      case 'l':
+      case 'z':
+      case 'j':
+        return LOCATION;
+      case 'w':
+      case 'i':
+      case 'W':
+        return FAMILIAR;
+      case 'B':
+      case 'G':
+      case 'M':
+        return MOON;
+      case '\u0083':
+        return MONSTER_LEVEL;
+    }
+    return UNTRACKED;
+  }
+
+  private void recordInputs() {
+    boolean[] reads = new boolean[Expression.TRACKED_INPUTS];
+    int count = 0;
+    ArrayList<String> preferences = new ArrayList<>();
+    for (int pc = 0; pc < this.bytecode.length; ++pc) {
+      char inst = this.bytecode[pc];
+      int input = Expression.getInput(inst);
+      if (input == UNTRACKED) {
+        this.inputs = null;
+        return;
+      }
+      if (input == NO_INPUT) {
+        continue;
+      }
+      if (input == PREFERENCES) {
+        // The preference name is the literal pushed just before
+        String pref = (String) this.literals.get(this.bytecode[pc - 1] - 0x8000);
+        int commaIndex = pref.indexOf(",");
+        pref = commaIndex > -1 ? pref.substring(0, commaIndex) : pref;
+        Expression.watchPreference(pref);
+        preferences.add(pref);
+      }
+      if (!reads[input]) {
+        reads[input] = true;
+        count++;
+      }
+    }
+
+    this.preferences = preferences.toArray(new String[0]);
+    this.inputs = new int[count];
+    for (int i = 0, j = 0; i < Expression.TRACKED_INPUTS; ++i) {
+      if (reads[i]) {
+        this.inputs[j++] = i;
+      }
+    }
+  }
+
+  // Returns the current state of the inputs the expression reads, or null
+  // if its value can't be remembered right now.
+  private int[] getStamps() {
+    if (this.inputs == null) {
+      return null;
+    }
+    int[] stamps = new int[this.inputs.length];
+    for (int i = 0; i < this.inputs.length; ++i) {
+      int input = this.inputs[i];
+      switch (input) {
+        case PREFERENCES:
+          // Changes made while listeners are deferred aren't reported yet
+          if (PreferenceListenerRegistry.isDeferringPreferenceListeners()) {
+            return null;
+          }
+          stamps[i] = Expression.getGeneration(input);
+          break;
+        case MOON:
+          stamps[i] = HolidayDatabase.getMoonState();
+          break;
+        case MONSTER_LEVEL:
+          stamps[i] = KoLCharacter.getMonsterLevelAdjustment();
+          break;
+        case FAMILIAR:
+          // A search task's familiar isn't the one the generations follow
+          if (!Modifiers.isSharedContext()) {
+            return null;
+          }
+          stamps[i] = Expression.getGeneration(input);
+          break;
+        default:
+          stamps[i] = Expression.getGeneration(input);
+          break;
+      }
+    }
+    return stamps;
+  }
+
+  public boolean isCacheable() {
+    return this.inputs != null;
   }
 
   public static Expression getInstance(String text, String name) {
@@ -109,8 +303,24 @@ public class Expression {
   protected void initialize() {}
 
   public double eval() {
+    int[] stamps = this.getStamps();
+    CachedValue cached = this.cached;
+    if (stamps != null && cached != null && Arrays.equals(stamps, cached.stamps)) {
+      if (Preferences.isRecordingReads()) {
+        // Read the preferences anyway, so that they are recorded
+        for (String pref : this.preferences) {
+          Preferences.getString(pref);
+        }
+      }
+      return cached.value;
+    }
+
     try {
-      return this.evalInternal();
+      double value = this.evalInternal();
+      if (stamps != null) {
+        this.cached = new CachedValue(value, stamps);
+      }
+      return value;
     } catch (ArrayIndexOutOfBoundsException e) {
       KoLmafia.updateDisplay("Unreasonably complex expression for " + this.name + ": " + e);
     } catch (RuntimeException e) {
@@ -122,135 +332,202 @@ public class Expression {
   }
 
   public double evalInternal() {
-    double[] s = stackFactory(null);
-    int sp = 0;
-    int pc = 0;
-    double v = 0.0;
+    return this.root.getAsDouble();
+  }
 
-    while (true) {
-      char inst = this.bytecode[pc++];
-      switch (inst) {
-          // 			case '?':	// temporary instrumentation
-          // 				KoLmafia.updateDisplay( "\u2326 Eval " + this.name + " from " +
-          // 					Thread.currentThread().getName() );
-          // 				StringBuffer b = new StringBuffer();
-          // 				if ( pc == 1 )
-          // 				{
-          // 					b.append( "\u2326 Bytecode=" );
-          // 					b.append( this.bytecode );
-          // 					for ( int i = 1; i < this.bytecode.length; i += 2 )
-          // 					{
-          // 						b.append( ' ' );
-          // 						b.append( Integer.toHexString( this.bytecode[ i ] ) );
-          // 					}
-          // 					KoLmafia.updateDisplay( b.toString() );
-          // 					b.setLength( 0 );
-          // 				}
-          // 				b.append( "\u2326 PC=" );
-          // 				b.append( pc );
-          // 				b.append( " Stack=" );
-          // 				if ( sp < 0 )
-          // 				{
-          // 					b.append( sp );
-          // 				}
-          // 				else
-          // 				{
-          // 					for ( int i = 0; i < sp && i < INITIAL_STACK; ++i )
-          // 					{
-          // 						b.append( ' ' );
-          // 						b.append( s[ i ] );
-          // 					}
-          // 				}
-          // 				KoLmafia.updateDisplay( b.toString() );
-          // 				continue;
-
-        case 'r':
-          v = s[--sp];
-          stackFactory(s); // recycle this stack
-          return v;
+  // A value known when the expression is compiled
+  private static final class Constant implements DoubleSupplier {
+    final double value;
 
-        case '+':
-          v = s[--sp] + s[--sp];
-          break;
+    Constant(double value) {
+      this.value = value;
+    }
 
-        case '-':
-          v = s[--sp] - s[--sp];
-          break;
+    @Override
+    public double getAsDouble() {
+      return this.value;
+    }
+  }
 
-        case '*':
-          v = s[--sp] * s[--sp];
-          break;
+  // Operations whose result depends only on their operands
+  private static final String PURE_OPERATIONS = "+-*/%^acfmsx";
+  private static final String UNARY_OPERATIONS = "acfs";
 
-        case '/':
-          double numerator = s[--sp];
-          double denominator = s[--sp];
-          if (denominator == 0.0) {
-            throw new ArithmeticException("Can't divide by zero");
-          }
-          v = numerator / denominator;
-          break;
+  // Turns the bytecode into a tree of closures, each bound to its operands and
+  // literals, so that evaluation needs no shared stack and no decoding.
+  private DoubleSupplier compile() {
+    ArrayDeque<DoubleSupplier> stack = new ArrayDeque<>();
 
-        case '%':
-          v = s[--sp] % s[--sp];
-          break;
+    for (char inst : this.bytecode) {
+      if (inst == 'r') {
+        return stack.pop();
+      }
 
-        case '^':
-          double base = s[--sp];
-          double expt = s[--sp];
-          v = Math.pow(base, expt);
-          if (Double.isNaN(v) || Double.isInfinite(v)) {
-            throw new ArithmeticException(
-                "Invalid exponentiation: cannot take " + base + " ** " + expt);
-          }
-          break;
+      if (inst > '\u00FF') {
+        stack.push(new Constant(inst - 0x8000));
+        continue;
+      }
 
-        case 'a':
-          v = Math.abs(s[--sp]);
-          break;
-        case 'c':
-          v = Math.ceil(s[--sp]);
-          break;
-        case 'f':
-          v = Math.floor(s[--sp]);
-          break;
-        case 'm':
-          v = Math.min(s[--sp], s[--sp]);
-          break;
-        case 'p':
-          String first = (String) this.literals.get((int) s[--sp]);
-          String second = null;
+      boolean foldable = Expression.hasConstantOperands(inst, stack);
+      DoubleSupplier node = this.compile(inst, stack);
+      if (!foldable) {
+        stack.push(node);
+        continue;
+      }
+
+      // Fold operations on constants, unless they would fail
+      try {
+        stack.push(new Constant(node.getAsDouble()));
+      } catch (ArithmeticException e) {
+        stack.push(node);
+      }
+    }
+
+    throw new RuntimeException("Evaluator bytecode invalid: " + String.valueOf(this.bytecode));
+  }
+
+  private static boolean hasConstantOperands(
+      final char inst, final ArrayDeque<DoubleSupplier> stack) {
+    if (Expression.PURE_OPERATIONS.indexOf(inst) == -1) {
+      return false;
+    }
+    int operands = Expression.UNARY_OPERATIONS.indexOf(inst) == -1 ? 2 : 1;
+    Iterator<DoubleSupplier> it = stack.iterator();
+    for (int i = 0; i < operands; ++i) {
+      if (!it.hasNext() || !(it.next() instanceof Constant)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Object literal(final ArrayDeque<DoubleSupplier> stack) {
+    return this.literals.get((int) ((Constant) stack.pop()).value);
+  }
+
+  private String stringLiteral(final ArrayDeque<DoubleSupplier> stack) {
+    return (String) this.literal(stack);
+  }
+
+  private DoubleSupplier compile(final char inst, final ArrayDeque<DoubleSupplier> stack) {
+    switch (inst) {
+      case '+':
+        {
+          DoubleSupplier a = stack.pop(), b = stack.pop();
+          return () -> a.getAsDouble() + b.getAsDouble();
+        }
+
+      case '-':
+        {
+          DoubleSupplier a = stack.pop(), b = stack.pop();
+          return () -> a.getAsDouble() - b.getAsDouble();
+        }
+
+      case '*':
+        {
+          DoubleSupplier a = stack.pop(), b = stack.pop();
+          return () -> a.getAsDouble() * b.getAsDouble();
+        }
+
+      case '/':
+        {
+          DoubleSupplier numerator = stack.pop(), denominator = stack.pop();
+          return () -> {
+            double d = denominator.getAsDouble();
+            if (d == 0.0) {
+              throw new ArithmeticException("Can't divide by zero");
+            }
+            return numerator.getAsDouble() / d;
+          };
+        }
+
+      case '%':
+        {
+          DoubleSupplier a = stack.pop(), b = stack.pop();
+          return () -> a.getAsDouble() % b.getAsDouble();
+        }
+
+      case '^':
+        {
+          DoubleSupplier base = stack.pop(), expt = stack.pop();
+          return () -> {
+            double b = base.getAsDouble();
+            double e = expt.getAsDouble();
+            double v = Math.pow(b, e);
+            if (Double.isNaN(v) || Double.isInfinite(v)) {
+              throw new ArithmeticException(
+                  "Invalid exponentiation: cannot take " + b + " ** " + e);
+            }
+            return v;
+          };
+        }
+
+      case 'a':
+        {
+          DoubleSupplier a = stack.pop();
+          return () -> Math.abs(a.getAsDouble());
+        }
+
+      case 'c':
+        {
+          DoubleSupplier a = stack.pop();
+          return () -> Math.ceil(a.getAsDouble());
+        }
+
+      case 'f':
+        {
+          DoubleSupplier a = stack.pop();
+          return () -> Math.floor(a.getAsDouble());
+        }
+
+      case 'm':
+        {
+          DoubleSupplier a = stack.pop(), b = stack.pop();
+          return () -> Math.min(a.getAsDouble(), b.getAsDouble());
+        }
+
+      case 'x':
+        {
+          DoubleSupplier a = stack.pop(), b = stack.pop();
+          return () -> Math.max(a.getAsDouble(), b.getAsDouble());
+        }
+
+      case 's':
+        {
+          DoubleSupplier a = stack.pop();
+          return () -> {
+            double v = Math.sqrt(a.getAsDouble());
+            if (Double.isNaN(v)) {
+              throw new ArithmeticException("Can't take square root of a negative value");
+            }
+            return v;
+          };
+        }
+
+      case '#':
+        return new Constant((Double) this.literal(stack));
+
+      case 'p':
+        {
+          String first = this.stringLiteral(stack);
           int commaIndex = first.indexOf(",");
           if (commaIndex > -1) {
-            second = first.substring(commaIndex + 1);
-            first = first.substring(0, commaIndex);
-          }
-          String prefString = Preferences.getString(first);
-          if (second != null) {
-            v = prefString.contains(second) ? 1 : 0;
-          } else {
-            v =
-                prefString.contains("true")
-                    ? 1
-                    : prefString.contains("false") ? 0 : StringUtilities.parseDouble(prefString);
-          }
-          break;
-        case 's':
-          v = Math.sqrt(s[--sp]);
-          if (Double.isNaN(v)) {
-            throw new ArithmeticException("Can't take square root of a negative value");
+            String pref = first.substring(0, commaIndex);
+            String second = first.substring(commaIndex + 1);
+            return () -> Preferences.getString(pref).contains(second) ? 1 : 0;
           }
-          break;
-        case 'x':
-          v = Math.max(s[--sp], s[--sp]);
-          break;
-
-        case '#':
-          v = ((Double) this.literals.get((int) s[--sp])).doubleValue();
-          break;
-
-          // Valid with ModifierExpression:
-        case 'b':
-          String elem = (String) this.literals.get((int) s[--sp]);
+          return () -> {
+            String prefString = Preferences.getString(first);
+            return prefString.contains("true")
+                ? 1
+                : prefString.contains("false") ? 0 : StringUtilities.parseDouble(prefString);
+          };
+        }
+
+        // Valid with ModifierExpression:
+      case 'b':
+        {
+          String elem = this.stringLiteral(stack);
           int element =
               elem.equalsIgnoreCase("cold")
                   ? Modifiers.COLD_RESISTANCE
@@ -267,275 +544,239 @@ public class Expression {
                                       : elem.equalsIgnoreCase("supercold")
                                           ? Modifiers.SUPERCOLD_RESISTANCE
                                           : -1;
-          v = KoLCharacter.currentNumericModifier(element);
-          break;
-        case 'd':
-          String skillName = (String) this.literals.get((int) s[--sp]);
-          if (StringUtilities.isNumeric(skillName)) {
-            int skillId = StringUtilities.parseInt(skillName);
-            skillName = SkillDatabase.getSkillName(skillId);
-          }
-          v = KoLCharacter.hasSkill(skillName) ? 1 : 0;
-          break;
-        case 'e':
-          String effectName = (String) this.literals.get((int) s[--sp]);
-          // If effect name is a number, convert to name
-          AdventureResult eff = null;
-          if (StringUtilities.isNumeric(effectName)) {
-            int effectId = StringUtilities.parseInt(effectName);
-            eff = EffectPool.get(effectId);
-          } else {
-            int effectId = EffectDatabase.getEffectId(effectName);
-            eff = EffectPool.get(effectId);
-          }
-          v = eff == null ? 0.0 : Math.max(0, eff.getCount(KoLConstants.activeEffects));
-          break;
-        case 'g':
-          String itemName = (String) this.literals.get((int) s[--sp]);
-          int itemId = ItemDatabase.getItemId(itemName);
-          AdventureResult item = ItemPool.get(itemId);
-          v = KoLCharacter.hasEquipped(item) ? 1 : 0;
-          break;
-        case 'h':
-          v =
-              Modifiers.mainhandClass.equalsIgnoreCase((String) this.literals.get((int) s[--sp]))
-                  ? 1
-                  : 0;
-          break;
-        case 'i':
-          v =
-              FamiliarDatabase.hasAttribute(
-                      Modifiers.currentFamiliar, (String) this.literals.get((int) s[--sp]))
-                  ? 1
-                  : 0;
-          break;
-        case 'j':
-          v =
-              Modifiers.currentEnvironment.equalsIgnoreCase(
-                      (String) this.literals.get((int) s[--sp]))
-                  ? 1
-                  : 0;
-          break;
-        case 'l':
-          v =
-              Modifiers.currentLocation.equalsIgnoreCase((String) this.literals.get((int) s[--sp]))
-                  ? 1
-                  : 0;
-          break;
-        case 'n':
-          v =
-              KoLCharacter.getAscensionClassName()
-                      .equalsIgnoreCase((String) this.literals.get((int) s[--sp]))
-                  ? 1
-                  : 0;
-          break;
-        case 'w':
-          v =
-              Modifiers.currentFamiliar.equalsIgnoreCase((String) this.literals.get((int) s[--sp]))
-                  ? 1
-                  : 0;
-          break;
-        case 'z':
-          String expressionZone = (String) this.literals.get((int) s[--sp]);
-          String currentZone = Modifiers.currentZone;
-          v = 0;
-          while (true) {
-            if (currentZone.equalsIgnoreCase(expressionZone)) {
-              v = 1;
-              break;
+          return () -> KoLCharacter.currentNumericModifier(element);
+        }
+      case 'd':
+        {
+          String skill = this.stringLiteral(stack);
+          return () -> {
+            String skillName = skill;
+            if (StringUtilities.isNumeric(skillName)) {
+              int skillId = StringUtilities.parseInt(skillName);
+              skillName = SkillDatabase.getSkillName(skillId);
             }
-            String parentZone = AdventureDatabase.PARENT_ZONES.get(currentZone);
-            if (parentZone == null || currentZone.equals(parentZone)) {
-              break;
+            return KoLCharacter.hasSkill(skillName) ? 1 : 0;
+          };
+        }
+      case 'e':
+        {
+          String effectName = this.stringLiteral(stack);
+          return () -> {
+            // If effect name is a number, convert to name
+            AdventureResult eff = null;
+            if (StringUtilities.isNumeric(effectName)) {
+              int effectId = StringUtilities.parseInt(effectName);
+              eff = EffectPool.get(effectId);
+            } else {
+              int effectId = EffectDatabase.getEffectId(effectName);
+              eff = EffectPool.get(effectId);
             }
-            currentZone = parentZone;
-          }
-          break;
-        case 'v':
-          String event = (String) this.literals.get((int) s[--sp]);
-
-          if (HolidayDatabase.getHoliday().contains(event)) {
-            v = 1;
-            break;
-          }
-
-          Calendar date = Calendar.getInstance(TimeZone.getTimeZone("GMT-0700"));
-          if (event.equals("Crimbo2015")) {
-            // Event ends just after rollover on 3rd January 2016
-            GregorianCalendar eventEnd = new GregorianCalendar(2016, Calendar.JANUARY, 3, 20, 30);
-            eventEnd.setTimeZone(TimeZone.getTimeZone("GMT-0700"));
-            v = date.before(eventEnd) ? 1 : 0;
-          } else if (event.equals("December")) {
-            int month = date.get(Calendar.MONTH);
-            v = (month == Calendar.DECEMBER) ? 1 : 0;
-          }
-
-          break;
-
-          // Valid with MonsterExpression:
-        case '\u0080':
-          v = KoLCharacter.getAdjustedMuscle();
-          break;
-          // Valid with MonsterExpression:
-        case '\u0081':
-          v = KoLCharacter.getAdjustedMysticality();
-          break;
-          // Valid with MonsterExpression:
-        case '\u0082':
-          v = KoLCharacter.getAdjustedMoxie();
-          break;
-          // Valid with MonsterExpression:
-        case '\u0083':
-          v = KoLCharacter.getMonsterLevelAdjustment();
-          break;
-          // Valid with MonsterExpression:
-        case '\u0084':
-          v = KoLCharacter.getMindControlLevel();
-          break;
-          // Valid with MonsterExpression and RestoreExpression:
-        case '\u0085':
-          v = KoLCharacter.getMaximumHP();
-          break;
-          // Valid with MonsterExpression:
-        case '\u0086':
-          v = BasementRequest.getBasementLevel();
-          break;
-          // Valid with MonsterExpression:
-        case '\u0087':
-          v = FightRequest.dreadKisses("Woods");
-          break;
-          // Valid with MonsterExpression:
-        case '\u0088':
-          v = FightRequest.dreadKisses("Village");
-          break;
-          // Valid with MonsterExpression:
-        case '\u0089':
-          v = FightRequest.dreadKisses("Castle");
-          break;
-          // Valid with MonsterExpression:
-        case '\u0090':
-          v = KoLCharacter.getAdjustedHighestStat();
-          break;
-          // Valid with RestoreExpression:
-        case '\u0091':
-          v = KoLCharacter.getMaximumMP();
-          break;
-          // Valid with ModifierExpression and MonsterExpression:
-        case '\u0092':
-          v = KoLCharacter.getPath().equals(this.literals.get((int) s[--sp])) ? 1 : 0;
-          break;
-          // Valid with ModifierExpression:
-        case '\u0093':
-          Modifiers mods = KoLCharacter.getCurrentModifiers();
-          String modName = (String) this.literals.get((int) s[--sp]);
-          v = mods.getExtra(modName);
-          break;
-          // Valid with ModifierExpression:
-        case '\u0094':
-          v = KoLCharacter.canInteract() ? 1 : 0;
-          break;
-          // Valid with RestoreExpression:
-        case '\u0095':
-          v = KoLCharacter.getCurrentHP();
-          break;
-        case '\u0096':
-          String arg = (String) this.literals.get((int) s[--sp]);
-          v = StringUtilities.parseInt(arg.replaceAll(",", ""));
-          break;
-
-        case 'A':
-          v = KoLCharacter.getAscensions();
-          break;
-        case 'B':
-          v = HolidayDatabase.getBloodEffect();
-          break;
-        case 'C':
-          v = KoLCharacter.getMinstrelLevel();
-          break;
-        case 'D':
-          v = KoLCharacter.getInebriety();
-          break;
-        case 'E':
-          {
-            int size = KoLConstants.activeEffects.size();
-            AdventureResult[] effectsArray = new AdventureResult[size];
-            KoLConstants.activeEffects.toArray(effectsArray);
-
-            v = 0;
-            for (int i = 0; i < size; i++) {
-              AdventureResult effect = effectsArray[i];
-              int duration = effect.getCount();
-              if (duration != Integer.MAX_VALUE) {
-                v++;
+            return eff == null ? 0.0 : Math.max(0, eff.getCount(KoLConstants.activeEffects));
+          };
+        }
+      case 'g':
+        {
+          String itemName = this.stringLiteral(stack);
+          return () -> {
+            int itemId = ItemDatabase.getItemId(itemName);
+            AdventureResult item = ItemPool.get(itemId);
+            return KoLCharacter.hasEquipped(item) ? 1 : 0;
+          };
+        }
+      case 'h':
+        {
+          String mainhand = this.stringLiteral(stack);
+          return () -> Modifiers.getMainhandClass().equalsIgnoreCase(mainhand) ? 1 : 0;
+        }
+      case 'i':
+        {
+          String attribute = this.stringLiteral(stack);
+          return () ->
+              FamiliarDatabase.hasAttribute(Modifiers.getCurrentFamiliar(), attribute) ? 1 : 0;
+        }
+      case 'j':
+        {
+          String environment = this.stringLiteral(stack);
+          return () -> Modifiers.currentEnvironment.equalsIgnoreCase(environment) ? 1 : 0;
+        }
+      case 'l':
+        {
+          String location = this.stringLiteral(stack);
+          return () -> Modifiers.currentLocation.equalsIgnoreCase(location) ? 1 : 0;
+        }
+      case 'n':
+        {
+          String className = this.stringLiteral(stack);
+          return () -> KoLCharacter.getAscensionClassName().equalsIgnoreCase(className) ? 1 : 0;
+        }
+      case 'w':
+        {
+          String familiar = this.stringLiteral(stack);
+          return () -> Modifiers.getCurrentFamiliar().equalsIgnoreCase(familiar) ? 1 : 0;
+        }
+      case 'z':
+        {
+          String expressionZone = this.stringLiteral(stack);
+          return () -> {
+            String currentZone = Modifiers.currentZone;
+            while (true) {
+              if (currentZone.equalsIgnoreCase(expressionZone)) {
+                return 1;
+              }
+              String parentZone = AdventureDatabase.PARENT_ZONES.get(currentZone);
+              if (parentZone == null || currentZone.equals(parentZone)) {
+                return 0;
               }
+              currentZone = parentZone;
+            }
+          };
+        }
+      case 'v':
+        {
+          String event = this.stringLiteral(stack);
+          return () -> {
+            if (HolidayDatabase.getHoliday().contains(event)) {
+              return 1;
             }
-            break;
-          }
-        case 'F':
-          v = KoLCharacter.getFullness();
-          break;
-        case 'G':
-          v = HolidayDatabase.getGrimaciteEffect() / 10.0;
-          break;
-        case 'H':
-          v = Modifiers.hoboPower;
-          break;
-        case 'I':
-          v = KoLCharacter.getDiscoMomentum();
-          break;
-        case 'J':
-          v = HolidayDatabase.getHoliday().contains("Festival of Jarlsberg") ? 1.0 : 0.0;
-          break;
-        case 'K':
-          v = Modifiers.smithsness;
-          break;
-        case 'L':
-          v = KoLCharacter.getLevel();
-          break;
-        case 'M':
-          v = HolidayDatabase.getMoonlight();
-          break;
-        case 'N':
-          v = KoLCharacter.getAudience();
-          break;
-        case 'P':
-          v = KoLCharacter.currentPastaThrall.getLevel();
-          break;
-        case 'R':
-          v = KoLCharacter.getReagentPotionDuration();
-          break;
-        case 'S':
-          v = KoLCharacter.getSpleenUse();
-          break;
-        case 'T':
-          v =
-              this.effect == null
-                  ? 0.0
-                  : Math.max(1, this.effect.getCount(KoLConstants.activeEffects));
-          break;
-        case 'U':
-          v = KoLCharacter.getTelescopeUpgrades();
-          break;
-        case 'W':
-          v = Modifiers.currentWeight;
-          break;
-        case 'X':
-          v = KoLCharacter.getGender();
-          break;
-        case 'Y':
-          v = KoLCharacter.getFury();
-          break;
 
-        default:
-          if (inst > '\u00FF') {
-            v = inst - 0x8000;
-            break;
+            Calendar date = Calendar.getInstance(TimeZone.getTimeZone("GMT-0700"));
+            if (event.equals("Crimbo2015")) {
+              // Event ends just after rollover on 3rd January 2016
+              GregorianCalendar eventEnd = new GregorianCalendar(2016, Calendar.JANUARY, 3, 20, 30);
+              eventEnd.setTimeZone(TimeZone.getTimeZone("GMT-0700"));
+              return date.before(eventEnd) ? 1 : 0;
+            } else if (event.equals("December")) {
+              int month = date.get(Calendar.MONTH);
+              return (month == Calendar.DECEMBER) ? 1 : 0;
+            }
+            return 0;
+          };
+        }
+
+        // Valid with MonsterExpression:
+      case '\u0080':
+        return KoLCharacter::getAdjustedMuscle;
+        // Valid with MonsterExpression:
+      case '\u0081':
+        return KoLCharacter::getAdjustedMysticality;
+        // Valid with MonsterExpression:
+      case '\u0082':
+        return KoLCharacter::getAdjustedMoxie;
+        // Valid with MonsterExpression:
+      case '\u0083':
+        return KoLCharacter::getMonsterLevelAdjustment;
+        // Valid with MonsterExpression:
+      case '\u0084':
+        return KoLCharacter::getMindControlLevel;
+        // Valid with MonsterExpression and RestoreExpression:
+      case '\u0085':
+        return KoLCharacter::getMaximumHP;
+        // Valid with MonsterExpression:
+      case '\u0086':
+        return BasementRequest::getBasementLevel;
+        // Valid with MonsterExpression:
+      case '\u0087':
+        return () -> FightRequest.dreadKisses("Woods");
+        // Valid with MonsterExpression:
+      case '\u0088':
+        return () -> FightRequest.dreadKisses("Village");
+        // Valid with MonsterExpression:
+      case '\u0089':
+        return () -> FightRequest.dreadKisses("Castle");
+        // Valid with MonsterExpression:
+      case '\u0090':
+        return KoLCharacter::getAdjustedHighestStat;
+        // Valid with RestoreExpression:
+      case '\u0091':
+        return KoLCharacter::getMaximumMP;
+        // Valid with ModifierExpression and MonsterExpression:
+      case '\u0092':
+        {
+          Object path = this.literal(stack);
+          return () -> KoLCharacter.getPath().equals(path) ? 1 : 0;
+        }
+        // Valid with ModifierExpression:
+      case '\u0093':
+        {
+          String modName = this.stringLiteral(stack);
+          return () -> KoLCharacter.getCurrentModifiers().getExtra(modName);
+        }
+        // Valid with ModifierExpression:
+      case '\u0094':
+        return () -> KoLCharacter.canInteract() ? 1 : 0;
+        // Valid with RestoreExpression:
+      case '\u0095':
+        return KoLCharacter::getCurrentHP;
+      case '\u0096':
+        return new Constant(
+            StringUtilities.parseInt(this.stringLiteral(stack).replaceAll(",", "")));
+
+      case 'A':
+        return KoLCharacter::getAscensions;
+      case 'B':
+        return HolidayDatabase::getBloodEffect;
+      case 'C':
+        return KoLCharacter::getMinstrelLevel;
+      case 'D':
+        return KoLCharacter::getInebriety;
+      case 'E':
+        return () -> {
+          int size = KoLConstants.activeEffects.size();
+          AdventureResult[] effectsArray = new AdventureResult[size];
+          KoLConstants.activeEffects.toArray(effectsArray);
+
+          int v = 0;
+          for (int i = 0; i < size; i++) {
+            AdventureResult effect = effectsArray[i];
+            int duration = effect.getCount();
+            if (duration != Integer.MAX_VALUE) {
+              v++;
+            }
           }
-          throw new RuntimeException(
-              "Evaluator bytecode invalid at " + (pc - 1) + ": " + String.valueOf(this.bytecode));
-      }
-      s[sp++] = v;
+          return v;
+        };
+      case 'F':
+        return KoLCharacter::getFullness;
+      case 'G':
+        return () -> HolidayDatabase.getGrimaciteEffect() / 10.0;
+      case 'H':
+        return Modifiers::getHoboPower;
+      case 'I':
+        return KoLCharacter::getDiscoMomentum;
+      case 'J':
+        return () -> HolidayDatabase.getHoliday().contains("Festival of Jarlsberg") ? 1.0 : 0.0;
+      case 'K':
+        return Modifiers::getSmithsness;
+      case 'L':
+        return KoLCharacter::getLevel;
+      case 'M':
+        return HolidayDatabase::getMoonlight;
+      case 'N':
+        return KoLCharacter::getAudience;
+      case 'P':
+        return () -> KoLCharacter.currentPastaThrall.getLevel();
+      case 'R':
+        return KoLCharacter::getReagentPotionDuration;
+      case 'S':
+        return KoLCharacter::getSpleenUse;
+      case 'T':
+        {
+          AdventureResult effect = this.effect;
+          return () ->
+              effect == null ? 0.0 : Math.max(1, effect.getCount(KoLConstants.activeEffects));
+        }
+      case 'U':
+        return KoLCharacter::getTelescopeUpgrades;
+      case 'W':
+        return Modifiers::getCurrentWeight;
+      case 'X':
+        return KoLCharacter::getGender;
+      case 'Y':
+        return KoLCharacter::getFury;
     }
+
+    throw new RuntimeException(
+        "Evaluator bytecode invalid at " + inst + ": " + String.valueOf(this.bytecode));
   }
 
   protected String validBytecodes() { // Allowed operations in the A-Z range.
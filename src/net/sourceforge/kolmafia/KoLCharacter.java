@@ -95,7 +95,9 @@ public abstract class KoLCharacter {
   public static final int FEMALE = 1;
 
   // Create this early before subsequent initializers want to look at it.
-  private static final Modifiers currentModifiers = new Modifiers();
+  // Replaced, never changed, so that readers on other threads see a whole recalculation.
+  private static volatile ModifiersSnapshot currentModifiers =
+      new ModifiersSnapshot(new Modifiers());
 
   // Things that cannot be changed
 
@@ -304,8 +306,9 @@ public abstract class KoLCharacter {
     KoLCharacter.totalSubpoints = new long[3];
     KoLCharacter.resetTriggers();
 
-    KoLCharacter.currentModifiers.reset();
-    KoLCharacter.currentModifiers.resetModifiers();
+    KoLCharacter.currentModifiers = new ModifiersSnapshot(new Modifiers());
+    Modifiers.resetModifiers();
+    AdjustmentsCache.invalidate();
 
     KoLConstants.inventory.clear();
     KoLConstants.closet.clear();
@@ -2108,7 +2111,7 @@ public abstract class KoLCharacter {
   }
 
   /** Accessor method to retrieve the current value of a named modifier */
-  public static final Modifiers getCurrentModifiers() {
+  public static final ModifiersSnapshot getCurrentModifiers() {
     return KoLCharacter.currentModifiers;
   }
 
@@ -2169,9 +2172,9 @@ public abstract class KoLCharacter {
 
   /** Accessor method to retrieve the total current familiar weight adjustment */
   public static final int getFamiliarWeightAdjustment() {
+    ModifiersSnapshot current = KoLCharacter.currentModifiers;
     return (int)
-        (KoLCharacter.currentModifiers.get(Modifiers.FAMILIAR_WEIGHT)
-            + KoLCharacter.currentModifiers.get(Modifiers.HIDDEN_FAMILIAR_WEIGHT));
+        (current.get(Modifiers.FAMILIAR_WEIGHT) + current.get(Modifiers.HIDDEN_FAMILIAR_WEIGHT));
   }
 
   public static final int getFamiliarWeightPercentAdjustment() {
@@ -2183,27 +2186,30 @@ public abstract class KoLCharacter {
   }
 
   public static final int getManaCostAdjustment(final boolean combat) {
-    return (int) KoLCharacter.currentModifiers.get(Modifiers.MANA_COST)
-        + (int) KoLCharacter.currentModifiers.get(Modifiers.STACKABLE_MANA_COST)
-        + (combat ? (int) KoLCharacter.currentModifiers.get(Modifiers.COMBAT_MANA_COST) : 0)
+    ModifiersSnapshot current = KoLCharacter.currentModifiers;
+    return (int) current.get(Modifiers.MANA_COST)
+        + (int) current.get(Modifiers.STACKABLE_MANA_COST)
+        + (combat ? (int) current.get(Modifiers.COMBAT_MANA_COST) : 0)
         - KoLCharacter.holidayManaCostReduction;
   }
 
   /** Accessor method to retrieve the total current combat percent adjustment */
   public static final double getCombatRateAdjustment() {
-    double rate = KoLCharacter.currentModifiers.get(Modifiers.COMBAT_RATE);
+    ModifiersSnapshot current = KoLCharacter.currentModifiers;
+    double rate = current.get(Modifiers.COMBAT_RATE);
     if (Modifiers.currentZone.contains("The Sea")
         || Modifiers.currentLocation.equals("The Sunken Party Yacht")) {
-      rate += KoLCharacter.currentModifiers.get(Modifiers.UNDERWATER_COMBAT_RATE);
+      rate += current.get(Modifiers.UNDERWATER_COMBAT_RATE);
     }
     return rate;
   }
 
   /** Accessor method to retrieve the total current initiative adjustment */
   public static final double getInitiativeAdjustment() {
+    ModifiersSnapshot current = KoLCharacter.currentModifiers;
     // Penalty is constrained to be non-positive
-    return KoLCharacter.currentModifiers.get(Modifiers.INITIATIVE)
-        + Math.min(KoLCharacter.currentModifiers.get(Modifiers.INITIATIVE_PENALTY), 0.0f);
+    return current.get(Modifiers.INITIATIVE)
+        + Math.min(current.get(Modifiers.INITIATIVE_PENALTY), 0.0f);
   }
 
   /** Accessor method to retrieve the total current fixed experience adjustment */
@@ -2218,9 +2224,10 @@ public abstract class KoLCharacter {
    * @return Total Current Meat Drop Percent Adjustment
    */
   public static final double getMeatDropPercentAdjustment() {
+    ModifiersSnapshot current = KoLCharacter.currentModifiers;
     // Penalty is constrained to be non-positive
-    return KoLCharacter.currentModifiers.get(Modifiers.MEATDROP)
-        + Math.min(KoLCharacter.currentModifiers.get(Modifiers.MEATDROP_PENALTY), 0.0f);
+    return current.get(Modifiers.MEATDROP)
+        + Math.min(current.get(Modifiers.MEATDROP_PENALTY), 0.0f);
   }
 
   /**
@@ -2238,8 +2245,9 @@ public abstract class KoLCharacter {
    * @return Total Current Item Drop Percent Adjustment
    */
   public static final double getItemDropPercentAdjustment() {
-    return KoLCharacter.currentModifiers.get(Modifiers.ITEMDROP)
-        + Math.min(KoLCharacter.currentModifiers.get(Modifiers.ITEMDROP_PENALTY), 0.0f);
+    ModifiersSnapshot current = KoLCharacter.currentModifiers;
+    return current.get(Modifiers.ITEMDROP)
+        + Math.min(current.get(Modifiers.ITEMDROP_PENALTY), 0.0f);
   }
 
   /**
@@ -2356,21 +2364,23 @@ public abstract class KoLCharacter {
   }
 
   public static final int getRestingHP() {
-    int rv = (int) KoLCharacter.currentModifiers.get(Modifiers.BASE_RESTING_HP);
-    double factor = KoLCharacter.currentModifiers.get(Modifiers.RESTING_HP_PCT);
+    ModifiersSnapshot current = KoLCharacter.currentModifiers;
+    int rv = (int) current.get(Modifiers.BASE_RESTING_HP);
+    double factor = current.get(Modifiers.RESTING_HP_PCT);
     if (factor != 0) {
       rv = (int) (rv * (factor + 100.0f) / 100.0f);
     }
-    return rv + (int) KoLCharacter.currentModifiers.get(Modifiers.BONUS_RESTING_HP);
+    return rv + (int) current.get(Modifiers.BONUS_RESTING_HP);
   }
 
   public static final int getRestingMP() {
-    int rv = (int) KoLCharacter.currentModifiers.get(Modifiers.BASE_RESTING_MP);
-    double factor = KoLCharacter.currentModifiers.get(Modifiers.RESTING_MP_PCT);
+    ModifiersSnapshot current = KoLCharacter.currentModifiers;
+    int rv = (int) current.get(Modifiers.BASE_RESTING_MP);
+    double factor = current.get(Modifiers.RESTING_MP_PCT);
     if (factor != 0) {
       rv = (int) (rv * (factor + 100.0f) / 100.0f);
     }
-    return rv + (int) KoLCharacter.currentModifiers.get(Modifiers.BONUS_RESTING_MP);
+    return rv + (int) current.get(Modifiers.BONUS_RESTING_MP);
   }
 
   /**
@@ -2379,21 +2389,22 @@ public abstract class KoLCharacter {
    * @return Total Current Resistance to specified element
    */
   public static final int getElementalResistanceLevels(final Element element) {
+    ModifiersSnapshot current = KoLCharacter.currentModifiers;
     switch (element) {
       case COLD:
-        return (int) KoLCharacter.currentModifiers.get(Modifiers.COLD_RESISTANCE);
+        return (int) current.get(Modifiers.COLD_RESISTANCE);
       case HOT:
-        return (int) KoLCharacter.currentModifiers.get(Modifiers.HOT_RESISTANCE);
+        return (int) current.get(Modifiers.HOT_RESISTANCE);
       case SLEAZE:
-        return (int) KoLCharacter.currentModifiers.get(Modifiers.SLEAZE_RESISTANCE);
+        return (int) current.get(Modifiers.SLEAZE_RESISTANCE);
       case SPOOKY:
-        return (int) KoLCharacter.currentModifiers.get(Modifiers.SPOOKY_RESISTANCE);
+        return (int) current.get(Modifiers.SPOOKY_RESISTANCE);
       case STENCH:
-        return (int) KoLCharacter.currentModifiers.get(Modifiers.STENCH_RESISTANCE);
+        return (int) current.get(Modifiers.STENCH_RESISTANCE);
       case SLIME:
-        return (int) KoLCharacter.currentModifiers.get(Modifiers.SLIME_RESISTANCE);
+        return (int) current.get(Modifiers.SLIME_RESISTANCE);
       case SUPERCOLD:
-        return (int) KoLCharacter.currentModifiers.get(Modifiers.SUPERCOLD_RESISTANCE);
+        return (int) current.get(Modifiers.SUPERCOLD_RESISTANCE);
       default:
         return 0;
     }
@@ -2442,8 +2453,9 @@ public abstract class KoLCharacter {
    * @return Total Current Resistance to specified element
    */
   public static final int currentBonusDamage() {
-    int weaponDamage = (int) KoLCharacter.currentModifiers.get(Modifiers.WEAPON_DAMAGE);
-    int rangedDamage = (int) KoLCharacter.currentModifiers.get(Modifiers.RANGED_DAMAGE);
+    ModifiersSnapshot current = KoLCharacter.currentModifiers;
+    int weaponDamage = (int) current.get(Modifiers.WEAPON_DAMAGE);
+    int rangedDamage = (int) current.get(Modifiers.RANGED_DAMAGE);
     return weaponDamage
         + (EquipmentManager.getWeaponType() == WeaponType.RANGED ? rangedDamage : 0);
   }
@@ -2839,7 +2851,7 @@ public abstract class KoLCharacter {
     Preferences.setBoolean("breakfastCompleted", false);
 
     // Reset modifiers in case we had modifiers that no longer apply
-    KoLCharacter.currentModifiers.resetModifiers();
+    Modifiers.resetModifiers();
 
     // If leaving a path with a unique class, finish when player picks a new class.
     // We can't interrupt choice.php with (most) requests.
@@ -4853,25 +4865,45 @@ public abstract class KoLCharacter {
   }
 
   public static final boolean recalculateAdjustments(boolean debug) {
-    return KoLCharacter.currentModifiers.set(
-        KoLCharacter.recalculateAdjustments(
-            debug,
-            KoLCharacter.getMindControlLevel(),
-            EquipmentManager.allEquipment(),
-            KoLConstants.activeEffects,
-            KoLCharacter.effectiveFamiliar,
-            KoLCharacter.currentEnthroned,
-            KoLCharacter.currentBjorned,
-            Preferences.getString("edPiece"),
-            Preferences.getString("snowsuit"),
-            null,
-            Preferences.getString("_horsery"),
-            Preferences.getString("boomBoxSong"),
-            Preferences.getString("retroCapeSuperhero")
-                + " "
-                + Preferences.getString("retroCapeWashingInstructions"),
-            Preferences.getString("backupCameraMode"),
-            false));
+    AdjustmentsCache.Fingerprint fingerprint = null;
+    if (!debug) {
+      fingerprint = AdjustmentsCache.check();
+      if (fingerprint == null) {
+        // Nothing has changed since the last recalculation
+        return false;
+      }
+    }
+
+    long start = System.nanoTime();
+    boolean changed = true;
+    try {
+      Modifiers newModifiers =
+          KoLCharacter.recalculateAdjustments(
+              debug,
+              KoLCharacter.getMindControlLevel(),
+              EquipmentManager.allEquipment(),
+              KoLConstants.activeEffects,
+              KoLCharacter.effectiveFamiliar,
+              KoLCharacter.currentEnthroned,
+              KoLCharacter.currentBjorned,
+              Preferences.getString("edPiece"),
+              Preferences.getString("snowsuit"),
+              null,
+              Preferences.getString("_horsery"),
+              Preferences.getString("boomBoxSong"),
+              Preferences.getString("retroCapeSuperhero")
+                  + " "
+                  + Preferences.getString("retroCapeWashingInstructions"),
+              Preferences.getString("backupCameraMode"),
+              false);
+      changed = !KoLCharacter.currentModifiers.hasSameValues(newModifiers);
+      if (changed) {
+        KoLCharacter.currentModifiers = new ModifiersSnapshot(newModifiers);
+      }
+    } finally {
+      AdjustmentsCache.store(fingerprint, changed, System.nanoTime() - start);
+    }
+    return changed;
   }
 
   public static final Modifiers recalculateAdjustments(
@@ -4895,12 +4927,12 @@ public abstract class KoLCharacter {
     Modifiers newModifiers = debug ? new DebugModifiers() : new Modifiers();
     Modifiers.setFamiliar(familiar);
     AdventureResult weapon = equipment[EquipmentManager.WEAPON];
-    Modifiers.mainhandClass =
-        weapon == null ? "" : EquipmentDatabase.getItemType(weapon.getItemId());
+    Modifiers.setMainhandClass(
+        weapon == null ? "" : EquipmentDatabase.getItemType(weapon.getItemId()));
     AdventureResult offhand = equipment[EquipmentManager.OFFHAND];
-    Modifiers.unarmed =
+    Modifiers.setUnarmed(
         (weapon == null || weapon == EquipmentRequest.UNEQUIP)
-            && (offhand == null || offhand == EquipmentRequest.UNEQUIP);
+            && (offhand == null || offhand == EquipmentRequest.UNEQUIP));
 
     // Area-specific adjustments
     newModifiers.add(Modifiers.getModifiers("Loc", Modifiers.currentLocation));
@@ -4915,7 +4947,7 @@ public abstract class KoLCharacter {
       newModifiers.add(Modifiers.getModifiers("StatDay", KoLmafia.statDay));
     }
 
-    Modifiers.smithsness = KoLCharacter.getSmithsnessModifier(equipment, effects);
+    Modifiers.setSmithsness(KoLCharacter.getSmithsnessModifier(equipment, effects));
 
     // Certain outfits give benefits to the character
     // Need to do this before the individual items, so that Hobo Power
@@ -4957,7 +4989,7 @@ public abstract class KoLCharacter {
                 newModifiers.add(Modifiers.INITIATIVE, level * 20, "El Vibrato:SELF");
                 break;
               case 8:
-                if (Modifiers.currentFamiliar.contains("megadrone")) {
+                if (Modifiers.getCurrentFamiliar().contains("megadrone")) {
                   newModifiers.add(Modifiers.FAMILIAR_WEIGHT, level * 10, "El Vibrato:DRONE");
                 }
                 break;
@@ -4991,7 +5023,10 @@ public abstract class KoLCharacter {
     int fakeHands = EquipmentManager.getFakeHands();
     if (fakeHands > 0) {
       newModifiers.add(
-          Modifiers.WEAPON_DAMAGE, -1 * fakeHands, "Hands:fake hand (" + fakeHands + ")");
+          Modifiers.WEAPON_DAMAGE,
+          -1 * fakeHands,
+          "Hands",
+          debug ? "fake hand (" + fakeHands + ")" : "fake hand");
     }
 
     int brimstoneMonsterLevel = 1 << newModifiers.getBitmap(Modifiers.BRIMSTONE);
@@ -5024,7 +5059,7 @@ public abstract class KoLCharacter {
       newModifiers.add(Modifiers.getEffectModifiers(effects.get(i).getEffectId()));
     }
 
-    Modifiers.hoboPower = newModifiers.get(Modifiers.HOBO_POWER);
+    Modifiers.setHoboPower(newModifiers.get(Modifiers.HOBO_POWER));
 
     // Add modifiers from campground equipment.
     for (int i = 0; i < KoLConstants.campground.size(); ++i) {
@@ -5096,9 +5131,7 @@ public abstract class KoLCharacter {
 
     // Mummery
     newModifiers.add(
-        new Modifiers(
-            "Mummery",
-            Modifiers.evaluateModifiers("Mummery", Preferences.getString("_mummeryMods"))));
+        Modifiers.getEvaluatedModifiers("Mummery", Preferences.getString("_mummeryMods")));
 
     // Add modifiers from inventory
     if (InventoryManager.hasItem(ItemPool.FISHING_POLE)) {
@@ -5119,10 +5152,8 @@ public abstract class KoLCharacter {
 
     // Voting Booth
     newModifiers.add(
-        new Modifiers(
-            "Local Vote:Local Vote",
-            Modifiers.evaluateModifiers(
-                "Local Vote:Local Vote", Preferences.getString("_voteModifier"))));
+        Modifiers.getEvaluatedModifiers(
+            "Local Vote:Local Vote", Preferences.getString("_voteModifier")));
 
     // Miscellaneous
 
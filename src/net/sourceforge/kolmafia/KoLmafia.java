@@ -33,6 +33,7 @@ import net.sourceforge.kolmafia.objectpool.EffectPool;
 import net.sourceforge.kolmafia.objectpool.ItemPool;
 import net.sourceforge.kolmafia.persistence.BountyDatabase;
 import net.sourceforge.kolmafia.persistence.ConcoctionDatabase;
+import net.sourceforge.kolmafia.persistence.DatabaseLoader;
 import net.sourceforge.kolmafia.persistence.EffectDatabase;
 import net.sourceforge.kolmafia.persistence.EquipmentDatabase;
 import net.sourceforge.kolmafia.persistence.FamiliarDatabase;
@@ -267,6 +268,14 @@ public abstract class KoLmafia {
 
     KoLmafia.checkDataOverrides();
 
+    // Load the databases, reading their data files in parallel
+
+    DatabaseLoader.load();
+    if (Boolean.getBoolean("startupReport")) {
+      System.out.println(DatabaseLoader.getReport());
+      System.out.println();
+    }
+
     // Create an images directory if necessary
     KoLConstants.IMAGE_LOCATION.mkdirs();
 
@@ -502,6 +502,7 @@ public class KoLmafiaCLI {
     new AbsorbCommand().register("absorb");
     new AccordionsCommand().register("accordions");
     new AcquireCommand().register("acquire").register("find").register("retrieve");
+    new AdjustmentsCommand().register("adjustments");
     new AdventureCommand().register("adv").register("adventure");
     new AliasCommand().register("alias");
     new AreaSummaryCommand().register("safe");
@@ -0,0 +1,186 @@
+package net.sourceforge.kolmafia;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import net.sourceforge.kolmafia.Modifiers.Modifier;
+import net.sourceforge.kolmafia.utilities.StringUtilities;
+
+// Maps each modifier to the items, effects, skills, outfits and everything else which
+// provide it, so that finding the sources of, say, Item Drop doesn't mean parsing and
+// looking through every entry in the modifier data.
+//
+// The index is built from the unparsed modifiers the first time it is asked for, and is
+// thrown away whenever an entry is added, changed or removed.  A source whose value is an
+// expression is marked as variable and has a value of zero; ask Modifiers for its current
+// value.
+
+public class ModifierIndex {
+  public static class Source {
+    private final String lookup;
+    private final double value;
+    private final boolean variable;
+
+    Source(final String lookup, final double value, final boolean variable) {
+      this.lookup = lookup;
+      this.value = value;
+      this.variable = variable;
+    }
+
+    public String getLookup() {
+      return this.lookup;
+    }
+
+    public String getType() {
+      return Modifiers.getTypeFromLookup(this.lookup);
+    }
+
+    public String getName() {
+      return Modifiers.getNameFromLookup(this.lookup);
+    }
+
+    // The id of an item or effect stored by number, or -1
+    public int getId() {
+      String name = this.getName();
+      if (name.length() < 3 || !name.startsWith("[") || !name.endsWith("]")) {
+        return -1;
+      }
+      String id = name.substring(1, name.length() - 1);
+      return StringUtilities.isNumeric(id) ? StringUtilities.parseInt(id) : -1;
+    }
+
+    // Doubles and bitmaps have their value, booleans 1 and strings 0
+    public double getValue() {
+      return this.value;
+    }
+
+    public boolean isVariable() {
+      return this.variable;
+    }
+
+    @Override
+    public String toString() {
+      return this.lookup + " (" + (this.variable ? "variable" : this.value) + ")";
+    }
+  }
+
+  private static List<List<Source>> sources = null;
+  private static Map<String, List<String>> lookupsByType = null;
+
+  private static int builds = 0;
+
+  private ModifierIndex() {}
+
+  public static synchronized void invalidate() {
+    ModifierIndex.sources = null;
+    ModifierIndex.lookupsByType = null;
+  }
+
+  // The sources of a modifier, numbered as in Modifiers.findAnyName.
+  // Double modifiers keep their own numbers.
+  public static synchronized List<Source> getSources(final int index) {
+    if (index < 0 || index >= Modifiers.ALL_MODIFIERS) {
+      return Collections.emptyList();
+    }
+    ModifierIndex.build();
+    return Collections.unmodifiableList(ModifierIndex.sources.get(index));
+  }
+
+  public static List<Source> getSources(final String modifier) {
+    return ModifierIndex.getSources(Modifiers.findAnyName(modifier));
+  }
+
+  // Every lookup of a type, such as "Horsery" or "Effect"
+  public static synchronized List<String> getLookups(final String type) {
+    ModifierIndex.build();
+    List<String> lookups = ModifierIndex.lookupsByType.get(type);
+    return lookups == null
+        ? Collections.<String>emptyList()
+        : Collections.unmodifiableList(lookups);
+  }
+
+  public static synchronized int getBuilds() {
+    return ModifierIndex.builds;
+  }
+
+  private static void build() {
+    if (ModifierIndex.sources != null) {
+      return;
+    }
+
+    List<List<Source>> sources = new ArrayList<>(Modifiers.ALL_MODIFIERS);
+    for (int i = 0; i < Modifiers.ALL_MODIFIERS; ++i) {
+      sources.add(new ArrayList<>());
+    }
+    Map<String, List<String>> lookupsByType = new HashMap<>();
+
+    // Keys which are not modifier names are matched against every pattern,
+    // so remember what they turned out to be.
+    Map<String, Integer> indices = new HashMap<>();
+    // As with parseModifiers, only the first of a repeated modifier counts
+    BitSet seen = new BitSet(Modifiers.ALL_MODIFIERS);
+
+    Iterator<String> i = Modifiers.getAllModifiers();
+    while (i.hasNext()) {
+      String lookup = i.next();
+      lookupsByType
+          .computeIfAbsent(Modifiers.getTypeFromLookup(lookup), k -> new ArrayList<>())
+          .add(lookup);
+
+      String text = Modifiers.getModifierText(lookup);
+      if (text == null || text.equals("")) {
+        continue;
+      }
+
+      seen.clear();
+      for (Modifier modifier : Modifiers.splitModifiers(text)) {
+        String key = modifier.getName();
+        Integer index = indices.get(key);
+        if (index == null) {
+          index = Modifiers.findModifierIndex(key, modifier.toString());
+          indices.put(key, index);
+        }
+        if (index != -1 && !seen.get(index)) {
+          seen.set(index);
+          sources.get(index).add(ModifierIndex.getSource(lookup, index, modifier.getValue()));
+        }
+      }
+    }
+
+    ModifierIndex.sources = sources;
+    ModifierIndex.lookupsByType = lookupsByType;
+    ModifierIndex.builds++;
+  }
+
+  private static Source getSource(final String lookup, final int index, String value) {
+    if (index >= Modifiers.DOUBLE_MODIFIERS + Modifiers.BITMAP_MODIFIERS) {
+      // Booleans and strings
+      boolean isBoolean =
+          index
+              < Modifiers.DOUBLE_MODIFIERS
+                  + Modifiers.BITMAP_MODIFIERS
+                  + Modifiers.BOOLEAN_MODIFIERS;
+      return new Source(lookup, isBoolean ? 1.0 : 0.0, false);
+    }
+
+    if (value == null) {
+      // Bitmaps such as Brimstone count one
+      return new Source(lookup, 1.0, false);
+    }
+    if (value.startsWith("[")) {
+      return new Source(lookup, 0.0, true);
+    }
+    if (value.startsWith("+")) {
+      value = value.substring(1);
+    }
+    try {
+      return new Source(lookup, Double.parseDouble(value), false);
+    } catch (NumberFormatException e) {
+      return new Source(lookup, 0.0, true);
+    }
+  }
+}
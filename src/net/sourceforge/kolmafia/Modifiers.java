@@ -3,10 +3,12 @@ package net.sourceforge.kolmafia;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.PrintStream;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -45,7 +47,48 @@ import net.sourceforge.kolmafia.utilities.LogStream;
 import net.sourceforge.kolmafia.utilities.StringUtilities;
 
 public class Modifiers {
-  private static final Map<String, Object> modifiersByName = new HashMap<>();
+  // Synchronized, since parallel maximizer search tasks parse entries as they look them up
+  private static final Map<String, Object> modifiersByName =
+      Collections.synchronizedMap(new HashMap<>());
+
+  // Things whose modifiers can be looked up by number
+  public enum ModifierType {
+    ITEM("Item"),
+    EFFECT("Effect"),
+    SKILL("Skill");
+
+    private final String name;
+
+    ModifierType(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String toString() {
+      return this.name;
+    }
+
+    private String getLookupName(final int id) {
+      if (this == ModifierType.SKILL) {
+        return this.name + ":" + SkillDatabase.getSkillName(id);
+      }
+      return this.name + ":[" + id + "]";
+    }
+  }
+
+  // The entries of modifiersByName for each ModifierType, indexed by id and filled in
+  // as they are looked up, so that the lookups made for every item, effect and skill
+  // in every recalculation don't build and hash a "Type:[id]" string.
+  private static final Map<ModifierType, Object[]> modifiersById =
+      new EnumMap<>(ModifierType.class);
+  private static final Object NO_MODIFIERS = new Object();
+
+  static {
+    for (ModifierType type : ModifierType.values()) {
+      Modifiers.modifiersById.put(type, new Object[0]);
+    }
+  }
+
   private static final Map<String, String> familiarEffectByName = new HashMap<>();
   private static final Map<String, Integer> modifierIndicesByName = new HashMap<>();
   private static final List<UseSkillRequest> passiveSkills = new ArrayList<>();
@@ -56,12 +99,33 @@ public class Modifiers {
   public static String currentZone = "";
   public static String currentEnvironment = "";
   public static double currentML = 4.0;
-  public static String currentFamiliar = "";
-  public static String mainhandClass = "";
-  public static double hoboPower = 0.0;
-  public static double smithsness = 0.0;
-  public static double currentWeight = 0.0;
-  public static boolean unarmed = false;
+
+  // What KoLCharacter.recalculateAdjustments has worked out so far, which expressions
+  // and variable modifiers read as it goes.  Every thread shares one context, except
+  // that each task of a parallel maximizer search calculates with its own.
+  public static class Context {
+    private String familiar = "";
+    private String mainhandClass = "";
+    private double hoboPower = 0.0;
+    private double smithsness = 0.0;
+    private double weight = 0.0;
+    private boolean unarmed = false;
+
+    private Context copy() {
+      Context copy = new Context();
+      copy.familiar = this.familiar;
+      copy.mainhandClass = this.mainhandClass;
+      copy.hoboPower = this.hoboPower;
+      copy.smithsness = this.smithsness;
+      copy.weight = this.weight;
+      copy.unarmed = this.unarmed;
+      return copy;
+    }
+  }
+
+  private static final Context sharedContext = new Context();
+  private static final ThreadLocal<Context> context =
+      ThreadLocal.withInitial(() -> Modifiers.sharedContext);
 
   private static final Pattern FAMILIAR_EFFECT_PATTERN =
       Pattern.compile("Familiar Effect: \"(.*?)\"");
@@ -1029,6 +1093,75 @@ public class Modifiers {
     }
   }
 
+  // Double, bitmap, boolean and string modifiers together, numbered as in
+  // modifierIndicesByName
+  public static final int ALL_MODIFIERS =
+      DOUBLE_MODIFIERS + BITMAP_MODIFIERS + BOOLEAN_MODIFIERS + STRING_MODIFIERS;
+
+  private static final Object[][][] modifierTables = {
+    Modifiers.doubleModifiers,
+    Modifiers.bitmapModifiers,
+    Modifiers.booleanModifiers,
+    Modifiers.stringModifiers,
+  };
+
+  // Returns the number of the named modifier of any kind, or -1
+  public static final int findAnyName(final String name) {
+    int base = 0;
+    for (Object[][] table : Modifiers.modifierTables) {
+      int index = Modifiers.findName(table, name);
+      if (index != -1) {
+        return base + index;
+      }
+      base += table.length;
+    }
+    return -1;
+  }
+
+  public static final String getAnyModifierName(final int index) {
+    int base = 0;
+    for (Object[][] table : Modifiers.modifierTables) {
+      if (index - base < table.length) {
+        return Modifiers.modifierName(table, index - base);
+      }
+      base += table.length;
+    }
+    return null;
+  }
+
+  // Returns the number of the modifier a data file entry gives with this key,
+  // or -1.  Keys which are neither names nor tags are matched against the
+  // patterns parseModifiers uses.
+  static final int findModifierIndex(final String key, final String modifier) {
+    Integer index = Modifiers.modifierIndicesByName.get(key);
+    if (index != null) {
+      return index;
+    }
+
+    int base = 0;
+    for (Object[][] table : Modifiers.modifierTables) {
+      for (int i = 0; i < table.length; ++i) {
+        if (key.equals(Modifiers.modifierTag(table, i))) {
+          return base + i;
+        }
+      }
+      base += table.length;
+    }
+
+    base = 0;
+    for (Object[][] table : Modifiers.modifierTables) {
+      for (int i = 0; i < table.length; ++i) {
+        Pattern pattern = Modifiers.modifierTagPattern(table, i);
+        if (pattern != null && pattern.matcher(modifier).find()) {
+          return base + i;
+        }
+      }
+      base += table.length;
+    }
+
+    return -1;
+  }
+
   // Indexes for array returned by predict():
   public static final int BUFFED_MUS = 0;
   public static final int BUFFED_MYS = 1;
@@ -1047,8 +1180,11 @@ public class Modifiers {
   public static final int DERIVED_MODIFIERS = Modifiers.derivedModifiers.length;
 
   public int[] predict() {
-    int[] rv = new int[Modifiers.DERIVED_MODIFIERS];
+    return this.predict(new int[Modifiers.DERIVED_MODIFIERS]);
+  }
 
+  // Fills in and returns the given array, rather than allocating one
+  public int[] predict(int[] rv) {
     int mus = KoLCharacter.getBaseMuscle();
     int mys = KoLCharacter.getBaseMysticality();
     int mox = KoLCharacter.getBaseMoxie();
@@ -1172,6 +1308,15 @@ public class Modifiers {
     return Modifiers.modifiersByName.keySet().iterator();
   }
 
+  // The unparsed modifiers for a lookup, or null
+  static final String getModifierText(final String lookup) {
+    Object modifier = Modifiers.modifiersByName.get(lookup);
+    if (modifier instanceof Modifiers) {
+      return ((Modifiers) modifier).getString(Modifiers.MODIFIERS);
+    }
+    return modifier instanceof String ? (String) modifier : null;
+  }
+
   public static final void overrideEffectModifiers(final int effectId) {
     String name = EffectDatabase.getEffectName(effectId);
     String descId = EffectDatabase.getDescriptionId(effectId);
@@ -1184,9 +1329,63 @@ public class Modifiers {
 
   public static final void overrideModifier(String lookup, Object value) {
     if (value != null) {
-      Modifiers.modifiersByName.put(lookup, value);
+      Modifiers.putModifiers(lookup, value);
     } else {
-      Modifiers.modifiersByName.remove(lookup);
+      Modifiers.removeModifiers(lookup);
+    }
+  }
+
+  // Counts the changes to modifiersByName
+  private static volatile int dataGeneration = 0;
+
+  public static int getDataGeneration() {
+    return Modifiers.dataGeneration;
+  }
+
+  // All changes to modifiersByName go through these, to keep modifiersById in step
+
+  private static void putModifiers(final String lookup, final Object value) {
+    Modifiers.dataGeneration++;
+    Modifiers.modifiersByName.put(lookup, value);
+    Modifiers.forgetModifiersById(lookup);
+    ModifierIndex.invalidate();
+  }
+
+  private static void removeModifiers(final String lookup) {
+    Modifiers.dataGeneration++;
+    Modifiers.modifiersByName.remove(lookup);
+    Modifiers.forgetModifiersById(lookup);
+    ModifierIndex.invalidate();
+  }
+
+  private static void clearModifiers() {
+    Modifiers.dataGeneration++;
+    Modifiers.modifiersByName.clear();
+    ModifierIndex.invalidate();
+    for (ModifierType type : ModifierType.values()) {
+      Modifiers.modifiersById.put(type, new Object[0]);
+    }
+  }
+
+  private static void forgetModifiersById(final String lookup) {
+    String typeName = Modifiers.getTypeFromLookup(lookup);
+    for (ModifierType type : ModifierType.values()) {
+      if (!type.toString().equals(typeName)) {
+        continue;
+      }
+      Object[] byId = Modifiers.modifiersById.get(type);
+      String name = Modifiers.getNameFromLookup(lookup);
+      String id =
+          name.startsWith("[") && name.endsWith("]") ? name.substring(1, name.length() - 1) : "";
+      if (type != ModifierType.SKILL && StringUtilities.isNumeric(id)) {
+        int index = StringUtilities.parseInt(id);
+        if (index >= 0 && index < byId.length) {
+          byId[index] = null;
+        }
+      } else {
+        // Skills are stored by name, so there's no telling which one this was
+        Arrays.fill(byId, null);
+      }
     }
   }
 
@@ -1300,16 +1499,24 @@ public class Modifiers {
   public static List<AdventureResult> getPotentialChanges(final int index) {
     ArrayList<AdventureResult> available = new ArrayList<AdventureResult>();
 
-    for (String check : Modifiers.modifiersByName.keySet()) {
-      String effectName = check.replace("Effect:", "");
-      int effectId = EffectDatabase.getEffectId(effectName);
+    for (ModifierIndex.Source source : ModifierIndex.getSources(index)) {
+      if (!source.getType().equals("Effect")) {
+        continue;
+      }
 
+      int effectId = source.getId();
+      if (effectId == -1) {
+        effectId = EffectDatabase.getEffectId(source.getName());
+      }
       if (effectId == -1) {
         continue;
       }
 
-      Modifiers currentTest = Modifiers.getEffectModifiers(effectId);
-      double value = currentTest.get(index);
+      double value = source.getValue();
+      if (source.isVariable()) {
+        Modifiers currentTest = Modifiers.getEffectModifiers(effectId);
+        value = currentTest == null ? 0.0 : currentTest.get(index);
+      }
 
       if (value == 0.0) {
         continue;
@@ -1366,6 +1573,7 @@ public class Modifiers {
   public Modifiers(Modifiers copy) {
     this();
     this.set(copy);
+    System.arraycopy(copy.extras, 0, this.extras, 0, this.extras.length);
   }
 
   public Modifiers(String name, ModifierList mods) {
@@ -1386,7 +1594,7 @@ public class Modifiers {
     return this.name;
   }
 
-  public final void reset() {
+  public void reset() {
     Arrays.fill(this.doubles, 0.0);
     Arrays.fill(this.bitmaps, 0);
     Arrays.fill(this.strings, "");
@@ -1581,6 +1789,19 @@ public class Modifiers {
     return false;
   }
 
+  // Whether these have the same values as mods, so that set(mods) would change nothing
+  public boolean hasSameValues(final Modifiers mods) {
+    for (int index = 0; index < this.doubles.length; ++index) {
+      // Prismatic Damage is derived from the elemental damages when asked for
+      if (index != Modifiers.PRISMATIC_DAMAGE && this.doubles[index] != mods.doubles[index]) {
+        return false;
+      }
+    }
+    return Arrays.equals(this.bitmaps, mods.bitmaps)
+        && Arrays.equals(this.strings, mods.strings)
+        && Arrays.equals(this.extras, mods.extras);
+  }
+
   public boolean set(final Modifiers mods) {
     if (mods == null) {
       return false;
@@ -1616,7 +1837,39 @@ public class Modifiers {
     return changed;
   }
 
+  // Sources whose Item Drop is also counted in extras
+  private static final String[] ITEMDROP_EXTRA_TYPES = {
+    "Ballroom",
+    "Bjorn",
+    "Effect",
+    "Item",
+    "Local Vote",
+    "Outfit",
+    "Path",
+    "Sign",
+    "Skill",
+    "Synergy",
+    "Throne",
+  };
+
   public void add(final int index, final double mod, final String desc) {
+    this.accumulate(index, mod, null, null, desc);
+  }
+
+  // Adds a modifier whose source is given as a type and name, so that callers
+  // need not build a description which only DebugModifiers would look at.
+  public void add(final int index, final double mod, final String type, final String name) {
+    this.accumulate(index, mod, type, name, null);
+  }
+
+  // The source is either a type and name or a lookup string, and is only
+  // compared in place, so that the usual path allocates nothing.
+  private void accumulate(
+      final int index,
+      final double mod,
+      final String type,
+      final String name,
+      final String lookup) {
     switch (index) {
       case COMBAT_RATE:
         // Combat Rate has diminishing returns beyond + or - 25%
@@ -1660,22 +1913,10 @@ public class Modifiers {
         }
         break;
       case ITEMDROP:
-        String type = Modifiers.getTypeFromLookup(desc);
-        if (type.equals("Ballroom")
-            || type.equals("Bjorn")
-            || type.equals("Effect")
-            || type.equals("Item")
-            || type.equals("Local Vote")
-            || type.equals("Outfit")
-            || type.equals("Path")
-            || type.equals("Sign")
-            || type.equals("Skill")
-            || type.equals("Synergy")
-            || type.equals("Throne")) {
-          String name = Modifiers.getNameFromLookup(desc);
-          if (!name.equals("Steely-Eyed Squint") && !name.equals("broken champagne bottle")) {
-            this.extras[index] += mod;
-          }
+        if (Modifiers.isSourceType(type, lookup, Modifiers.ITEMDROP_EXTRA_TYPES)
+            && !Modifiers.isSourceName(name, lookup, "Steely-Eyed Squint")
+            && !Modifiers.isSourceName(name, lookup, "broken champagne bottle")) {
+          this.extras[index] += mod;
         }
         this.doubles[index] += mod;
         break;
@@ -1690,8 +1931,8 @@ public class Modifiers {
       case STENCH_SPELL_DAMAGE:
       case SPOOKY_SPELL_DAMAGE:
       case SLEAZE_SPELL_DAMAGE:
-        String name = Modifiers.getNameFromLookup(desc);
-        if (!name.equals("Bendin' Hell") && !name.equals("Bow-Legged Swagger")) {
+        if (!Modifiers.isSourceName(name, lookup, "Bendin' Hell")
+            && !Modifiers.isSourceName(name, lookup, "Bow-Legged Swagger")) {
           this.extras[index] += mod;
         }
         this.doubles[index] += mod;
@@ -1700,8 +1941,7 @@ public class Modifiers {
       case MUS_EXPERIENCE:
       case MYS_EXPERIENCE:
       case MOX_EXPERIENCE:
-        name = Modifiers.getNameFromLookup(desc);
-        if (!name.equals("makeshift garbage shirt")) {
+        if (!Modifiers.isSourceName(name, lookup, "makeshift garbage shirt")) {
           this.extras[index] += mod;
         }
         this.doubles[index] += mod;
@@ -1721,14 +1961,17 @@ public class Modifiers {
     }
 
     // Make sure the modifiers apply to current class
-    AscensionClass ascensionClass = AscensionClass.nameToClass(mods.strings[Modifiers.CLASS]);
-    if (ascensionClass != null && ascensionClass != KoLCharacter.getAscensionClass()) {
-      return;
+    String className = mods.strings[Modifiers.CLASS];
+    if (!className.isEmpty()) {
+      AscensionClass ascensionClass = AscensionClass.nameToClass(className);
+      if (ascensionClass != null && ascensionClass != KoLCharacter.getAscensionClass()) {
+        return;
+      }
     }
 
     // Unarmed modifiers apply only if the character has no weapon or offhand
     boolean unarmed = mods.getBoolean(Modifiers.UNARMED);
-    if (unarmed && !Modifiers.unarmed) {
+    if (unarmed && !Modifiers.isUnarmed()) {
       return;
     }
 
@@ -1820,8 +2063,7 @@ public class Modifiers {
     if (id <= 0) {
       return null;
     }
-    String name = "[" + id + "]";
-    return Modifiers.getModifiers("Item", name);
+    return Modifiers.getModifiers(ModifierType.ITEM, id);
   }
 
   /**
@@ -1855,8 +2097,47 @@ public class Modifiers {
         return null;
       }
     }
-    String name = "[" + id + "]";
-    return Modifiers.getModifiers("Effect", name);
+    return Modifiers.getModifiers(ModifierType.EFFECT, id);
+  }
+
+  public static final Modifiers getSkillModifiers(final int id) {
+    if (id < 0) {
+      return null;
+    }
+    return Modifiers.getModifiers(ModifierType.SKILL, id);
+  }
+
+  public static final Modifiers getModifiers(final ModifierType type, final int id) {
+    Object[] byId = Modifiers.modifiersById.get(type);
+    if (id >= byId.length) {
+      byId = Arrays.copyOf(byId, Math.max(id + 1, byId.length * 2));
+      Modifiers.modifiersById.put(type, byId);
+    }
+
+    Object modifier = byId[id];
+    if (modifier == null) {
+      modifier = Modifiers.modifiersByName.get(type.getLookupName(id));
+      byId[id] = modifier == null ? Modifiers.NO_MODIFIERS : modifier;
+    }
+
+    if (modifier instanceof Modifiers) {
+      Modifiers mods = (Modifiers) modifier;
+      if (mods.variable) {
+        mods = Modifiers.evaluateVariable(mods, type.getLookupName(id));
+      }
+      return mods;
+    }
+
+    if (!(modifier instanceof String)) {
+      return null;
+    }
+
+    String lookup = type.getLookupName(id);
+    Modifiers newMods = Modifiers.parseModifiers(lookup, (String) modifier);
+    newMods.variable = newMods.override(lookup);
+    Modifiers.modifiersByName.put(lookup, newMods);
+    byId[id] = newMods;
+    return newMods;
   }
 
   public static final Modifiers getModifiers(String type, final String name) {
@@ -1865,6 +2146,19 @@ public class Modifiers {
       return null;
     }
 
+    // Items and effects are stored by id
+    if (type.equals("Item")) {
+      int itemId = ItemDatabase.getItemId(name);
+      if (itemId >= 0) {
+        return Modifiers.getModifiers(ModifierType.ITEM, itemId);
+      }
+    } else if (type.equals("Effect")) {
+      int effectId = EffectDatabase.getEffectId(name);
+      if (effectId >= 0) {
+        return Modifiers.getModifiers(ModifierType.EFFECT, effectId);
+      }
+    }
+
     if (type.equals("Bjorn")) {
       changeType = type;
       type = "Throne";
@@ -1880,7 +2174,7 @@ public class Modifiers {
     if (modifier instanceof Modifiers) {
       Modifiers mods = (Modifiers) modifier;
       if (mods.variable) {
-        mods.override(lookup);
+        mods = Modifiers.evaluateVariable(mods, lookup);
         if (changeType != null) {
           mods.name = changeType + ":" + name;
         }
@@ -1900,11 +2194,28 @@ public class Modifiers {
 
     newMods.variable = newMods.override(lookup) || type.equals("Loc") || type.equals("Zone");
 
+    // Parsing the text changes nothing the index holds, and any by-id slot
+    // still has the same text
     Modifiers.modifiersByName.put(lookup, newMods);
 
     return newMods;
   }
 
+  // Variable modifiers are evaluated in place for the shared context.  A search task has a
+  // context of its own, so it evaluates a copy rather than change what other threads read.
+  private static Modifiers evaluateVariable(final Modifiers mods, final String lookup) {
+    if (Modifiers.isSharedContext()) {
+      mods.override(lookup);
+      return mods;
+    }
+
+    Modifiers copy = new Modifiers(mods);
+    copy.variable = true;
+    copy.expressions = mods.expressions;
+    copy.override(lookup);
+    return copy;
+  }
+
   public static final Modifiers parseModifiers(final String lookup, final String string) {
     Modifiers newMods = new Modifiers();
     double[] newDoubles = newMods.doubles;
@@ -2303,6 +2614,28 @@ public class Modifiers {
     return list;
   }
 
+  // Modifiers built from a preference such as _mummeryMods, keyed by lookup, along
+  // with the text they were built from
+  private static final Map<String, Entry<String, Modifiers>> evaluatedModifiers = new HashMap<>();
+
+  // Like new Modifiers(lookup, evaluateModifiers(lookup, modifiers)), but reuses the
+  // previous result if the text is unchanged and holds no expressions.
+  public static final synchronized Modifiers getEvaluatedModifiers(
+      final String lookup, final String modifiers) {
+    if (modifiers.contains("[")) {
+      return new Modifiers(lookup, Modifiers.evaluateModifiers(lookup, modifiers));
+    }
+
+    Entry<String, Modifiers> entry = Modifiers.evaluatedModifiers.get(lookup);
+    if (entry == null || !entry.getKey().equals(modifiers)) {
+      entry =
+          new AbstractMap.SimpleImmutableEntry<>(
+              modifiers, new Modifiers(lookup, Modifiers.splitModifiers(modifiers)));
+      Modifiers.evaluatedModifiers.put(lookup, entry);
+    }
+    return entry.getValue();
+  }
+
   public static final String trimModifiers(final String modifiers, final String remove) {
     ModifierList list = Modifiers.splitModifiers(modifiers);
     list.removeModifier(remove);
@@ -2644,7 +2977,7 @@ public class Modifiers {
           continue;
         }
 
-        this.add(Modifiers.getModifiers("Skill", name));
+        this.add(Modifiers.getSkillModifiers(skill.getSkillId()));
       }
     }
 
@@ -2717,7 +3050,13 @@ public class Modifiers {
       final FamiliarData familiar, int weight, final AdventureResult famItem) {
     int familiarId = familiar.getId();
     weight = Math.max(1, weight);
-    Modifiers.currentWeight = weight;
+    Context context = Modifiers.context.get();
+    if (context.weight != weight) {
+      context.weight = weight;
+      if (context == Modifiers.sharedContext) {
+        Expression.inputChanged(Expression.FAMILIAR);
+      }
+    }
 
     String race = familiar.getRace();
 
@@ -2752,23 +3091,23 @@ public class Modifiers {
       if ((tuning = this.get(Modifiers.FAMILIAR_TUNING_MUSCLE)) > 0) {
         double mainstatFactor = tuning / 100;
         double offstatFactor = (1 - mainstatFactor) / 2;
-        this.add(Modifiers.MUS_EXPERIENCE, factor * mainstatFactor, "Tuned Volleyball:" + race);
-        this.add(Modifiers.MYS_EXPERIENCE, factor * offstatFactor, "Tuned Volleyball:" + race);
-        this.add(Modifiers.MOX_EXPERIENCE, factor * offstatFactor, "Tuned Volleyball:" + race);
+        this.add(Modifiers.MUS_EXPERIENCE, factor * mainstatFactor, "Tuned Volleyball", race);
+        this.add(Modifiers.MYS_EXPERIENCE, factor * offstatFactor, "Tuned Volleyball", race);
+        this.add(Modifiers.MOX_EXPERIENCE, factor * offstatFactor, "Tuned Volleyball", race);
       } else if ((tuning = this.get(Modifiers.FAMILIAR_TUNING_MYSTICALITY)) > 0) {
         double mainstatFactor = tuning / 100;
         double offstatFactor = (1 - mainstatFactor) / 2;
-        this.add(Modifiers.MUS_EXPERIENCE, factor * offstatFactor, "Tuned Volleyball:" + race);
-        this.add(Modifiers.MYS_EXPERIENCE, factor * mainstatFactor, "Tuned Volleyball:" + race);
-        this.add(Modifiers.MOX_EXPERIENCE, factor * offstatFactor, "Tuned Volleyball:" + race);
+        this.add(Modifiers.MUS_EXPERIENCE, factor * offstatFactor, "Tuned Volleyball", race);
+        this.add(Modifiers.MYS_EXPERIENCE, factor * mainstatFactor, "Tuned Volleyball", race);
+        this.add(Modifiers.MOX_EXPERIENCE, factor * offstatFactor, "Tuned Volleyball", race);
       } else if ((tuning = this.get(Modifiers.FAMILIAR_TUNING_MOXIE)) > 0) {
         double mainstatFactor = tuning / 100;
         double offstatFactor = (1 - mainstatFactor) / 2;
-        this.add(Modifiers.MUS_EXPERIENCE, factor * offstatFactor, "Tuned Volleyball:" + race);
-        this.add(Modifiers.MYS_EXPERIENCE, factor * offstatFactor, "Tuned Volleyball:" + race);
-        this.add(Modifiers.MOX_EXPERIENCE, factor * mainstatFactor, "Tuned Volleyball:" + race);
+        this.add(Modifiers.MUS_EXPERIENCE, factor * offstatFactor, "Tuned Volleyball", race);
+        this.add(Modifiers.MYS_EXPERIENCE, factor * offstatFactor, "Tuned Volleyball", race);
+        this.add(Modifiers.MOX_EXPERIENCE, factor * mainstatFactor, "Tuned Volleyball", race);
       } else {
-        this.add(Modifiers.EXPERIENCE, factor, "Volleyball:" + race);
+        this.add(Modifiers.EXPERIENCE, factor, "Volleyball", race);
       }
     }
 
@@ -2787,7 +3126,8 @@ public class Modifiers {
           Math.min(
               Math.max(factor * (Modifiers.currentML / 4) * (0.1 + 0.005 * effective), 1),
               maxStats),
-          "Familiar:" + race);
+          "Familiar",
+          race);
     }
 
     effective = cappedWeight * this.get(Modifiers.LEPRECHAUN_WEIGHT);
@@ -2800,7 +3140,8 @@ public class Modifiers {
       this.add(
           Modifiers.MEATDROP,
           factor * (Math.sqrt(220 * effective) + 2 * effective - 6),
-          "Familiar:" + race);
+          "Familiar",
+          race);
     }
 
     effective = cappedWeight * this.get(Modifiers.FAIRY_WEIGHT);
@@ -2814,7 +3155,8 @@ public class Modifiers {
       this.add(
           Modifiers.ITEMDROP,
           factor * (Math.sqrt(55 * effective) + effective - 3),
-          "Familiar:" + race);
+          "Familiar",
+          race);
     }
 
     if (FamiliarDatabase.isUnderwaterType(familiarId)) {
@@ -3467,6 +3809,8 @@ public class Modifiers {
   }
 
   public static void setLocation(KoLAdventure location) {
+    Expression.inputChanged(Expression.LOCATION);
+
     if (location == null) {
       Modifiers.currentLocation = "";
       Modifiers.currentZone = "";
@@ -3486,7 +3830,71 @@ public class Modifiers {
   }
 
   public static void setFamiliar(FamiliarData fam) {
-    Modifiers.currentFamiliar = fam == null ? "" : fam.getRace();
+    String race = fam == null ? "" : fam.getRace();
+    Context context = Modifiers.context.get();
+    if (!race.equals(context.familiar)) {
+      context.familiar = race;
+      // Remembered expression values only follow the shared context
+      if (context == Modifiers.sharedContext) {
+        Expression.inputChanged(Expression.FAMILIAR);
+      }
+    }
+  }
+
+  public static String getCurrentFamiliar() {
+    return Modifiers.context.get().familiar;
+  }
+
+  public static double getCurrentWeight() {
+    return Modifiers.context.get().weight;
+  }
+
+  public static String getMainhandClass() {
+    return Modifiers.context.get().mainhandClass;
+  }
+
+  public static void setMainhandClass(String mainhandClass) {
+    Modifiers.context.get().mainhandClass = mainhandClass;
+  }
+
+  public static boolean isUnarmed() {
+    return Modifiers.context.get().unarmed;
+  }
+
+  public static void setUnarmed(boolean unarmed) {
+    Modifiers.context.get().unarmed = unarmed;
+  }
+
+  public static double getSmithsness() {
+    return Modifiers.context.get().smithsness;
+  }
+
+  public static void setSmithsness(double smithsness) {
+    Modifiers.context.get().smithsness = smithsness;
+  }
+
+  public static double getHoboPower() {
+    return Modifiers.context.get().hoboPower;
+  }
+
+  public static void setHoboPower(double hoboPower) {
+    Modifiers.context.get().hoboPower = hoboPower;
+  }
+
+  public static boolean isSharedContext() {
+    return Modifiers.context.get() == Modifiers.sharedContext;
+  }
+
+  // A copy of the calling thread's context, for a search task to start from
+  public static Context copyContext() {
+    return Modifiers.context.get().copy();
+  }
+
+  // Makes the calling thread calculate with the given context, returning the one it replaces
+  public static Context setContext(Context context) {
+    Context previous = Modifiers.context.get();
+    Modifiers.context.set(context);
+    return previous;
   }
 
   public static String getLookupName(final String type, final String name) {
@@ -3521,8 +3929,31 @@ public class Modifiers {
     return lookup;
   }
 
+  // Equivalent to getTypeFromLookup(lookup) being one of types, without the substring
+  private static boolean isSourceType(
+      final String type, final String lookup, final String[] types) {
+    int length = type != null ? type.length() : lookup.indexOf(":");
+    for (String candidate : types) {
+      if (candidate.length() == length
+          && (type != null ? type.equals(candidate) : lookup.startsWith(candidate))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Equivalent to getNameFromLookup(lookup).equals(candidate), without the substring
+  private static boolean isSourceName(
+      final String name, final String lookup, final String candidate) {
+    if (name != null) {
+      return name.equals(candidate);
+    }
+    return lookup.length() - lookup.indexOf(":") - 1 == candidate.length()
+        && lookup.endsWith(candidate);
+  }
+
   public static void resetModifiers() {
-    Modifiers.modifiersByName.clear();
+    Modifiers.clearModifiers();
     Modifiers.familiarEffectByName.clear();
     Modifiers.passiveSkills.clear();
     Modifiers.synergies.clear();
@@ -3548,7 +3979,7 @@ public class Modifiers {
       }
 
       String modifiers = data[2];
-      Modifiers.modifiersByName.put(lookup, modifiers);
+      Modifiers.putModifiers(lookup, modifiers);
 
       Matcher matcher = FAMILIAR_EFFECT_PATTERN.matcher(modifiers);
       if (matcher.find()) {
@@ -3562,7 +3993,7 @@ public class Modifiers {
         if (matcher.find()) {
           effect = matcher.replaceAll(FAMILIAR_EFFECT_TRANSLATE_REPLACEMENT2);
         }
-        Modifiers.modifiersByName.put("FamEq:" + name, effect);
+        Modifiers.putModifiers("FamEq:" + name, effect);
       }
 
       if (type.equals("Synergy")) {
@@ -3986,7 +4417,7 @@ public class Modifiers {
 
   public static final void updateItem(final String name, final String known) {
     String lookup = Modifiers.getLookupName("Item", name);
-    Modifiers.modifiersByName.put(lookup, known);
+    Modifiers.putModifiers(lookup, known);
   }
 
   private static void registerObject(
@@ -4010,7 +4441,7 @@ public class Modifiers {
 
       String lookup = Modifiers.getLookupName(type, name);
       if (!Modifiers.modifiersByName.containsKey(lookup)) {
-        Modifiers.modifiersByName.put(lookup, known);
+        Modifiers.putModifiers(lookup, known);
       }
     }
   }
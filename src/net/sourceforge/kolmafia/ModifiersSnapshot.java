@@ -0,0 +1,102 @@
+package net.sourceforge.kolmafia;
+
+// Modifiers which can no longer change.
+//
+// KoLCharacter publishes a new snapshot after each recalculation which changed anything, so
+// the relay browser, the GUI, the maximizer and scripts can all read the current modifiers
+// without locking, copying, or seeing a recalculation half done.  Anything which wants
+// different modifiers starts from a copy.
+
+public final class ModifiersSnapshot extends Modifiers {
+  private final double prismaticDamage;
+  private final boolean sealed;
+
+  public ModifiersSnapshot(final Modifiers mods) {
+    super(mods);
+    // Prismatic Damage is derived when asked for, so do it while we still can
+    this.prismaticDamage = super.get(Modifiers.PRISMATIC_DAMAGE);
+    this.sealed = true;
+  }
+
+  private void checkMutable() {
+    if (this.sealed) {
+      throw new UnsupportedOperationException("Modifiers snapshots cannot be changed");
+    }
+  }
+
+  @Override
+  public double get(final int index) {
+    if (index == Modifiers.PRISMATIC_DAMAGE) {
+      return this.prismaticDamage;
+    }
+    return super.get(index);
+  }
+
+  @Override
+  public double get(final String name) {
+    if (name.equals("Prismatic Damage")) {
+      return this.prismaticDamage;
+    }
+    return super.get(name);
+  }
+
+  @Override
+  public void reset() {
+    this.checkMutable();
+    super.reset();
+  }
+
+  @Override
+  public boolean set(final int index, final double mod) {
+    this.checkMutable();
+    return super.set(index, mod);
+  }
+
+  @Override
+  public boolean set(final int index, final int mod) {
+    this.checkMutable();
+    return super.set(index, mod);
+  }
+
+  @Override
+  public boolean set(final int index, final boolean mod) {
+    this.checkMutable();
+    return super.set(index, mod);
+  }
+
+  @Override
+  public boolean set(final int index, final String mod) {
+    this.checkMutable();
+    return super.set(index, mod);
+  }
+
+  @Override
+  public boolean set(final Modifiers mods) {
+    this.checkMutable();
+    return super.set(mods);
+  }
+
+  @Override
+  public void add(final int index, final double mod, final String desc) {
+    this.checkMutable();
+    super.add(index, mod, desc);
+  }
+
+  @Override
+  public void add(final int index, final double mod, final String type, final String name) {
+    this.checkMutable();
+    super.add(index, mod, type, name);
+  }
+
+  @Override
+  public void add(final Modifiers mods) {
+    this.checkMutable();
+    super.add(mods);
+  }
+
+  @Override
+  public boolean add(final Modifier mod) {
+    this.checkMutable();
+    return super.add(mod);
+  }
+}
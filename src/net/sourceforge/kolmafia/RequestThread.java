@@ -12,6 +12,7 @@ import net.sourceforge.kolmafia.KoLConstants.MafiaState;
 import net.sourceforge.kolmafia.SpecialOutfit.Checkpoint;
 import net.sourceforge.kolmafia.chat.ChatManager;
 import net.sourceforge.kolmafia.chat.InternalMessage;
+import net.sourceforge.kolmafia.listener.PreferenceListenerRegistry;
 import net.sourceforge.kolmafia.objectpool.IntegerPool;
 import net.sourceforge.kolmafia.preferences.Preferences;
 import net.sourceforge.kolmafia.request.GenericRequest;
@@ -270,6 +271,10 @@ public abstract class RequestThread {
       return;
     }
 
+    // Save whatever preferences the requests changed, and show them
+    Preferences.flushSoon();
+    PreferenceListenerRegistry.flushPreferenceListeners();
+
     if (KoLmafia.getLastMessage().endsWith("...")) {
       KoLmafia.updateDisplay("Requests complete.");
       SystemTrayFrame.showBalloon("Requests complete.");
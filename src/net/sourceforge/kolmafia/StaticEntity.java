@@ -52,6 +52,8 @@ public abstract class StaticEntity {
           return MafiaState.CONTINUE;
         }
       };
+  private static final ThreadLocal<Boolean> ownContinuationState =
+      ThreadLocal.withInitial(() -> false);
 
   public static final Attributes getAttributes() {
     if (StaticEntity.cachedAttributes == null) {
@@ -698,13 +700,13 @@ public abstract class StaticEntity {
   }
 
   public static final MafiaState getContinuationState() {
-    return isRelayThread()
+    return hasOwnContinuationState()
         ? StaticEntity.threadLocalContinuationState.get()
         : StaticEntity.globalContinuationState;
   }
 
   public static void setContinuationState(MafiaState state) {
-    if (isRelayThread()) {
+    if (hasOwnContinuationState()) {
       StaticEntity.threadLocalContinuationState.set(state);
     } else {
       StaticEntity.globalContinuationState = state;
@@ -714,4 +716,14 @@ public abstract class StaticEntity {
   static final boolean isRelayThread() {
     return RelayServer.agentThreads.contains(Thread.currentThread());
   }
+
+  // Gives the current thread a continuation state of its own, as relay threads have, so that
+  // a worker whose request fails doesn't stop whatever else is running
+  public static final void useOwnContinuationState() {
+    StaticEntity.ownContinuationState.set(true);
+  }
+
+  private static boolean hasOwnContinuationState() {
+    return StaticEntity.ownContinuationState.get() || isRelayThread();
+  }
 }
@@ -1,13 +1,18 @@
 package net.sourceforge.kolmafia.listener;
 
+import java.awt.Component;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import net.sourceforge.kolmafia.RequestLogger;
 import net.sourceforge.kolmafia.StaticEntity;
 
@@ -26,8 +31,34 @@ public class ListenerRegistry {
   private final HashSet<Object> deferred = new HashSet<>();
   private int deferring = 0;
 
+  // Coalescing. Listeners which update the GUI are not run on the thread which fired them,
+  // but collected and run on the event dispatch thread, each once however many of its keys
+  // fired in the meantime.  They run a moment after the first of them is queued, or as soon as
+  // the last request sequence ends.  Other listeners keep caches up to date, so they still
+  // run before fireListener returns.
+  private static final int COALESCE_DELAY = 250;
+
+  private boolean coalescing = false;
+  private final LinkedHashSet<Listener> pending = new LinkedHashSet<>();
+  private Timer pendingTimer = null; // guarded by pending
+
+  // Metrics
+  private final AtomicLong fired = new AtomicLong();
+  private final AtomicLong updated = new AtomicLong();
+  private final AtomicLong queued = new AtomicLong();
+  private final AtomicLong merged = new AtomicLong();
+  private final AtomicLong delivered = new AtomicLong();
+
   public ListenerRegistry() {}
 
+  public void setCoalescing(final boolean coalescing) {
+    this.coalescing = coalescing;
+  }
+
+  public boolean isCoalescing() {
+    return this.coalescing;
+  }
+
   public void deferListeners(boolean deferring) {
     // If we are deferring, increment defer level
     if (deferring) {
@@ -65,6 +96,10 @@ public class ListenerRegistry {
     }
   }
 
+  public boolean isDeferring() {
+    return this.deferring > 0;
+  }
+
   public final void registerListener(final Object key, final Listener listener) {
     ArrayList<WeakReference<Listener>> listenerList = null;
 
@@ -85,6 +120,8 @@ public class ListenerRegistry {
   }
 
   public final void fireListener(final Object key) {
+    this.fired.incrementAndGet();
+
     ArrayList<WeakReference<Listener>> listenerList = null;
 
     synchronized (this.listenerMap) {
@@ -118,6 +155,8 @@ public class ListenerRegistry {
   }
 
   public final void fireAllListeners() {
+    this.fired.incrementAndGet();
+
     boolean logit = ListenerRegistry.logging && RequestLogger.isDebugging();
 
     if (this.deferring > 0) {
@@ -195,15 +234,93 @@ public class ListenerRegistry {
           notified.add(listener);
         }
 
-        try {
-          listener.update();
-        } catch (Exception e) {
-          // Don't let a botched listener interfere with
-          // the code that modified the preference.
-
-          StaticEntity.printStackTrace(e);
+        if (this.coalescing
+            && ListenerRegistry.isGuiListener(listener)
+            && !SwingUtilities.isEventDispatchThread()) {
+          this.queue(listener);
+          continue;
         }
+
+        this.updated.incrementAndGet();
+        ListenerRegistry.update(listener);
       }
     }
   }
+
+  private static void update(final Listener listener) {
+    try {
+      listener.update();
+    } catch (Exception e) {
+      // Don't let a botched listener interfere with
+      // the code that modified the preference.
+
+      StaticEntity.printStackTrace(e);
+    }
+  }
+
+  private static boolean isGuiListener(final Listener listener) {
+    return listener instanceof Component
+        || listener.getClass().getName().startsWith("net.sourceforge.kolmafia.swingui.");
+  }
+
+  private void queue(final Listener listener) {
+    synchronized (this.pending) {
+      if (this.pending.add(listener)) {
+        this.queued.incrementAndGet();
+      } else {
+        this.merged.incrementAndGet();
+      }
+
+      if (this.pendingTimer == null) {
+        this.pendingTimer = new Timer(ListenerRegistry.COALESCE_DELAY, e -> this.runPending());
+        this.pendingTimer.setRepeats(false);
+        this.pendingTimer.start();
+      }
+    }
+  }
+
+  // Runs the queued GUI listeners on the event dispatch thread without waiting for the delay
+  public void flushPending() {
+    synchronized (this.pending) {
+      if (this.pending.isEmpty()) {
+        return;
+      }
+    }
+    SwingUtilities.invokeLater(this::runPending);
+  }
+
+  private void runPending() {
+    Listener[] listeners;
+    synchronized (this.pending) {
+      if (this.pendingTimer != null) {
+        this.pendingTimer.stop();
+        this.pendingTimer = null;
+      }
+      listeners = this.pending.toArray(new Listener[0]);
+      this.pending.clear();
+    }
+
+    boolean logit = ListenerRegistry.logging && RequestLogger.isDebugging();
+    if (logit && listeners.length > 0) {
+      RequestLogger.updateDebugLog("Running " + listeners.length + " queued listeners");
+    }
+
+    for (Listener listener : listeners) {
+      this.delivered.incrementAndGet();
+      ListenerRegistry.update(listener);
+    }
+  }
+
+  public String getReport() {
+    return this.fired.get()
+        + " fired, "
+        + this.updated.get()
+        + " listeners run at once, "
+        + this.queued.get()
+        + " queued for the GUI, "
+        + this.merged.get()
+        + " merged with one already queued, "
+        + this.delivered.get()
+        + " run from the queue";
+  }
 }
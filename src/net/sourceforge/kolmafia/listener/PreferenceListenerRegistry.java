@@ -4,10 +4,29 @@ public class PreferenceListenerRegistry extends ListenerRegistry {
   // The registry of listeners:
   private static final ListenerRegistry INSTANCE = new ListenerRegistry();
 
+  static {
+    // -DsynchronousPreferenceListeners=true runs GUI listeners on the thread which changed
+    // the preference, as it always used to.
+    PreferenceListenerRegistry.INSTANCE.setCoalescing(
+        !Boolean.getBoolean("synchronousPreferenceListeners"));
+  }
+
   public static void deferPreferenceListeners(boolean deferring) {
     PreferenceListenerRegistry.INSTANCE.deferListeners(deferring);
   }
 
+  public static boolean isDeferringPreferenceListeners() {
+    return PreferenceListenerRegistry.INSTANCE.isDeferring();
+  }
+
+  public static void flushPreferenceListeners() {
+    PreferenceListenerRegistry.INSTANCE.flushPending();
+  }
+
+  public static String getPreferenceListenerReport() {
+    return "Preference listeners: " + PreferenceListenerRegistry.INSTANCE.getReport();
+  }
+
   public static final void registerPreferenceListener(final String name, final Listener listener) {
     PreferenceListenerRegistry.INSTANCE.registerListener(name, listener);
   }
@@ -1,6 +1,8 @@
 package net.sourceforge.kolmafia.maximizer;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import net.sourceforge.kolmafia.AdventureResult;
 import net.sourceforge.kolmafia.KoLCharacter;
 import net.sourceforge.kolmafia.KoLConstants;
@@ -16,6 +18,31 @@ import net.sourceforge.kolmafia.session.InventoryManager;
 import net.sourceforge.kolmafia.session.StoreManager;
 
 public class CheckedItem extends AdventureResult {
+  // While a batch of maximizations runs, each item's availability is worked out
+  // once and copied for every expression.
+  private static Map<String, CheckedItem> batch = null;
+
+  static synchronized void beginBatch() {
+    CheckedItem.batch = new HashMap<>();
+  }
+
+  static synchronized void endBatch() {
+    CheckedItem.batch = null;
+  }
+
+  static synchronized CheckedItem get(int itemId, int equipScope, int maxPrice, int priceLevel) {
+    if (CheckedItem.batch == null) {
+      return new CheckedItem(itemId, equipScope, maxPrice, priceLevel);
+    }
+    String key = itemId + ":" + equipScope + ":" + maxPrice + ":" + priceLevel;
+    CheckedItem item = CheckedItem.batch.get(key);
+    if (item == null) {
+      item = new CheckedItem(itemId, equipScope, maxPrice, priceLevel);
+      CheckedItem.batch.put(key, item);
+    }
+    return new CheckedItem(item);
+  }
+
   public CheckedItem(int itemId, int equipScope, int maxPrice, int priceLevel) {
     super(itemId, 1, false);
 
@@ -155,6 +182,23 @@ public class CheckedItem extends AdventureResult {
     }
   }
 
+  // Copies the availability, but none of the flags set while evaluating
+  private CheckedItem(CheckedItem other) {
+    super(other.getItemId(), 1, false);
+    this.name = other.name;
+    this.inventory = other.inventory;
+    this.initial = other.initial;
+    this.creatable = other.creatable;
+    this.npcBuyable = other.npcBuyable;
+    this.mallBuyable = other.mallBuyable;
+    this.foldable = other.foldable;
+    this.pullable = other.pullable;
+    this.pullfoldable = other.pullfoldable;
+    this.pullBuyable = other.pullBuyable;
+    this.foldItemId = other.foldItemId;
+    this.buyableFlag = other.buyableFlag;
+  }
+
   @Override
   public final int getCount() {
     if (this.getItemId() == 0) {
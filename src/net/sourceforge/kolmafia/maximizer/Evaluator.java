@@ -2,6 +2,7 @@ package net.sourceforge.kolmafia.maximizer;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -16,15 +17,18 @@ import java.util.regex.Pattern;
 import net.sourceforge.kolmafia.AdventureResult;
 import net.sourceforge.kolmafia.FamiliarData;
 import net.sourceforge.kolmafia.KoLCharacter;
+import net.sourceforge.kolmafia.KoLConstants;
 import net.sourceforge.kolmafia.KoLConstants.MafiaState;
 import net.sourceforge.kolmafia.KoLConstants.WeaponType;
 import net.sourceforge.kolmafia.KoLmafia;
+import net.sourceforge.kolmafia.ModifierIndex;
 import net.sourceforge.kolmafia.Modifiers;
 import net.sourceforge.kolmafia.RequestLogger;
 import net.sourceforge.kolmafia.SpecialOutfit;
 import net.sourceforge.kolmafia.objectpool.EffectPool;
 import net.sourceforge.kolmafia.objectpool.FamiliarPool;
 import net.sourceforge.kolmafia.objectpool.ItemPool;
+import net.sourceforge.kolmafia.persistence.EffectDatabase;
 import net.sourceforge.kolmafia.persistence.EquipmentDatabase;
 import net.sourceforge.kolmafia.persistence.FamiliarDatabase;
 import net.sourceforge.kolmafia.persistence.ItemDatabase;
@@ -35,6 +39,7 @@ import net.sourceforge.kolmafia.request.EquipmentRequest;
 import net.sourceforge.kolmafia.request.StandardRequest;
 import net.sourceforge.kolmafia.session.EquipmentManager;
 import net.sourceforge.kolmafia.session.InventoryManager;
+import net.sourceforge.kolmafia.session.StoreManager;
 import net.sourceforge.kolmafia.textui.command.BackupCameraCommand;
 import net.sourceforge.kolmafia.textui.command.EdPieceCommand;
 import net.sourceforge.kolmafia.textui.command.RetroCapeCommand;
@@ -42,7 +47,7 @@ import net.sourceforge.kolmafia.textui.command.SnowsuitCommand;
 import net.sourceforge.kolmafia.utilities.BooleanArray;
 import net.sourceforge.kolmafia.utilities.StringUtilities;
 
-public class Evaluator {
+public class Evaluator implements Cloneable {
   public boolean failed;
   boolean exceeded;
   private Evaluator tiebreaker;
@@ -87,6 +92,108 @@ public class Evaluator {
   private final Set<AdventureResult> uniques = new HashSet<>();
   private final Map<AdventureResult, Double> bonuses = new HashMap<>();
 
+  // The expression compiled for scoring: the modifiers it looks at, and the bonus items
+  private int[] scored;
+  private boolean predictsStats;
+  private final boolean[] relevant = new boolean[Modifiers.DOUBLE_MODIFIERS];
+  // Effects which may change the score, found when first asked for
+  private BitSet affectingEffects = null;
+  // How many equipment candidates were dropped as dominated
+  private int dominated = 0;
+  private int[] predicted = new int[Modifiers.DERIVED_MODIFIERS];
+  private AdventureResult[] bonusItems;
+  private double[] bonusValues;
+
+  // While a batch of maximizations runs, the equipment, outfits and familiars to look at
+  // are found once for every expression, by availability scope and price.
+  private static Map<String, Candidates> batch = null;
+
+  private static class Candidates {
+    final List<Candidate> equipment = new ArrayList<>();
+    final List<Integer> outfits = new ArrayList<>();
+    private List<FamiliarData> carriable = null;
+
+    Candidates() {
+      int id = 0;
+      while ((id = EquipmentDatabase.nextEquipmentItemId(id)) != -1) {
+        int slot = EquipmentManager.itemIdToEquipmentType(id);
+        if (slot < 0 || slot >= EquipmentManager.ALL_SLOTS) continue;
+        this.equipment.add(new Candidate(id, slot));
+      }
+
+      for (int i = 1; i < EquipmentDatabase.normalOutfits.size(); ++i) {
+        if (EquipmentDatabase.normalOutfits.get(i) != null) {
+          this.outfits.add(i);
+        }
+      }
+    }
+
+    // Familiars which could ride in the Crown of Thrones or Buddy Bjorn
+    List<FamiliarData> getCarriable() {
+      if (this.carriable == null) {
+        this.carriable = new ArrayList<>();
+        for (FamiliarData familiar : KoLCharacter.getFamiliarList()) {
+          if (familiar != null
+              && familiar != FamiliarData.NO_FAMILIAR
+              && familiar.canCarry()
+              && StandardRequest.isAllowed("Familiars", familiar.getRace())
+              && !(KoLCharacter.inBeecore() && KoLCharacter.getBeeosity(familiar.getRace()) > 0)) {
+            this.carriable.add(familiar);
+          }
+        }
+      }
+      return this.carriable;
+    }
+  }
+
+  private static class Candidate {
+    final int id;
+    final int slot;
+    final AdventureResult item;
+    final String name;
+    final boolean familiarCanEquip;
+    final boolean equippable;
+    // Set once the item turns out to be unavailable, which no expression changes
+    boolean unavailable = false;
+
+    Candidate(int id, int slot) {
+      this.id = id;
+      this.slot = slot;
+      this.item = ItemPool.get(id, 1);
+      this.name = this.item.getName();
+      this.familiarCanEquip = KoLCharacter.getFamiliar().canEquip(this.item);
+      this.equippable = EquipmentManager.canEquip(id) || KoLCharacter.hasEquipped(id);
+    }
+
+    CheckedItem check(int equipScope, int maxPrice, int priceLevel) {
+      CheckedItem item = CheckedItem.get(this.id, equipScope, maxPrice, priceLevel);
+      this.unavailable = item.getCount() == 0;
+      return item;
+    }
+  }
+
+  static synchronized void beginBatch() {
+    Evaluator.batch = new HashMap<>();
+  }
+
+  static synchronized void endBatch() {
+    Evaluator.batch = null;
+  }
+
+  private static synchronized Candidates getCandidates(
+      int equipScope, int maxPrice, int priceLevel) {
+    if (Evaluator.batch == null) {
+      return new Candidates();
+    }
+    String key = equipScope + ":" + maxPrice + ":" + priceLevel;
+    Candidates candidates = Evaluator.batch.get(key);
+    if (candidates == null) {
+      candidates = new Candidates();
+      Evaluator.batch.put(key, candidates);
+    }
+    return candidates;
+  }
+
   private static final String TIEBREAKER =
       "1 familiar weight, 1 familiar experience, 1 initiative, 5 exp, 1 item, 1 meat, 0.1 DA 1000 max, 1 DR, 0.5 all res, -10 mana cost, 1.0 mus, 0.5 mys, 1.0 mox, 1.5 mainstat, 1 HP, 1 MP, 1 weapon damage, 1 ranged damage, 1 spell damage, 1 cold damage, 1 hot damage, 1 sleaze damage, 1 spooky damage, 1 stench damage, 1 cold spell damage, 1 hot spell damage, 1 sleaze spell damage, 1 spooky spell damage, 1 stench spell damage, -1 fumble, 1 HP regen max, 3 MP regen max, 1 critical hit percent, 0.1 food drop, 0.1 booze drop, 0.1 hat drop, 0.1 weapon drop, 0.1 offhand drop, 0.1 shirt drop, 0.1 pants drop, 0.1 accessory drop, 1 DB combat damage, 0.1 sixgun damage";
   private static final Pattern KEYWORD_PATTERN =
@@ -94,6 +201,86 @@ public class Evaluator {
           "\\G\\s*(\\+|-|)([\\d.]*)\\s*(\"[^\"]+\"|(?:[^-+,0-9]|(?<! )[-+0-9])+),?\\s*");
   // Groups: 1=sign 2=weight 3=keyword
 
+  // Double modifiers that getScore derives its values from
+  private static final int[] DERIVED_FROM = {
+    Modifiers.HIDDEN_FAMILIAR_WEIGHT,
+    Modifiers.STACKABLE_MANA_COST,
+    Modifiers.INITIATIVE_PENALTY,
+    Modifiers.MEATDROP_PENALTY,
+    Modifiers.SPORADIC_MEATDROP,
+    Modifiers.MEAT_BONUS,
+    Modifiers.ITEMDROP_PENALTY,
+    Modifiers.SPORADIC_ITEMDROP,
+    Modifiers.WEAPON_DAMAGE_PCT,
+    Modifiers.RANGED_DAMAGE_PCT,
+    Modifiers.SPELL_DAMAGE_PCT,
+    Modifiers.CLOWNINESS,
+    Modifiers.SURGEONOSITY,
+  };
+
+  // Double modifiers that Modifiers.predict derives buffed stats, HP and MP from
+  private static final int[] PREDICTED_FROM = {
+    Modifiers.MUS,
+    Modifiers.MYS,
+    Modifiers.MOX,
+    Modifiers.MUS_PCT,
+    Modifiers.MYS_PCT,
+    Modifiers.MOX_PCT,
+    Modifiers.HP,
+    Modifiers.HP_PCT,
+    Modifiers.MP,
+    Modifiers.MP_PCT,
+  };
+
+  // String modifiers that change the calculation or the score
+  private static final int[] SCORED_STRINGS = {
+    Modifiers.CLASS,
+    Modifiers.INTRINSIC_EFFECT,
+    Modifiers.EQUALIZE,
+    Modifiers.STAT_TUNING,
+    Modifiers.EFFECT,
+    Modifiers.FAMILIAR_EFFECT,
+    Modifiers.EQUALIZE_MUSCLE,
+    Modifiers.EQUALIZE_MYST,
+    Modifiers.EQUALIZE_MOXIE,
+    Modifiers.ROLLOVER_EFFECT,
+    Modifiers.FLOOR_BUFFED_MUSCLE,
+    Modifiers.FLOOR_BUFFED_MYST,
+    Modifiers.FLOOR_BUFFED_MOXIE,
+  };
+
+  // Pairs of a scored modifier and a modifier getScore adds into it
+  private static final int[][] DERIVED_PAIRS = {
+    {Modifiers.MANA_COST, Modifiers.STACKABLE_MANA_COST},
+    {Modifiers.INITIATIVE, Modifiers.INITIATIVE_PENALTY},
+    {Modifiers.MEATDROP, Modifiers.MEATDROP_PENALTY},
+    {Modifiers.MEATDROP, Modifiers.SPORADIC_MEATDROP},
+    {Modifiers.MEATDROP, Modifiers.MEAT_BONUS},
+    {Modifiers.ITEMDROP, Modifiers.ITEMDROP_PENALTY},
+    {Modifiers.ITEMDROP, Modifiers.SPORADIC_ITEMDROP},
+    {Modifiers.WEAPON_DAMAGE, Modifiers.WEAPON_DAMAGE_PCT},
+    {Modifiers.RANGED_DAMAGE, Modifiers.RANGED_DAMAGE_PCT},
+    {Modifiers.SPELL_DAMAGE, Modifiers.SPELL_DAMAGE_PCT},
+    {Modifiers.PRISMATIC_DAMAGE, Modifiers.COLD_DAMAGE},
+    {Modifiers.PRISMATIC_DAMAGE, Modifiers.HOT_DAMAGE},
+    {Modifiers.PRISMATIC_DAMAGE, Modifiers.SLEAZE_DAMAGE},
+    {Modifiers.PRISMATIC_DAMAGE, Modifiers.SPOOKY_DAMAGE},
+    {Modifiers.PRISMATIC_DAMAGE, Modifiers.STENCH_DAMAGE},
+  };
+
+  // Slots whose candidates are compared for dominance before the search.
+  // Weapons and off-hands depend on each other, and familiar equipment on the familiar.
+  private static final int[] DOMINANCE_SLOTS = {
+    EquipmentManager.HAT,
+    EquipmentManager.CONTAINER,
+    EquipmentManager.SHIRT,
+    EquipmentManager.PANTS,
+    EquipmentManager.ACCESSORY1,
+  };
+
+  // The direction in which a modifier improves the score
+  private static final int EQUAL = 2;
+
   // Equipment slots, that aren't the primary slot of any item type,
   // that are repurposed here (rather than making the array bigger).
   // Watches have to be handled specially because only one can be
@@ -179,10 +366,12 @@ public class Evaluator {
     Arrays.fill(tiebreaker.min, Double.NEGATIVE_INFINITY);
     Arrays.fill(tiebreaker.max, Double.POSITIVE_INFINITY);
     tiebreaker.parse(Evaluator.TIEBREAKER);
+    tiebreaker.compile();
 
     this.min = tiebreaker.min.clone();
     this.max = tiebreaker.max.clone();
     this.parse(expr);
+    this.compile();
   }
 
   private void addUniqueItems(String name) {
@@ -647,6 +836,56 @@ public class Evaluator {
     this.weight[Modifiers.MEAT_BONUS] += fudge;
   }
 
+  // Scoring only needs to look at the modifiers that are weighted or have a minimum
+  private void compile() {
+    int[] scored = new int[Modifiers.DOUBLE_MODIFIERS];
+    int count = 0;
+    this.predictsStats = false;
+    for (int i = 0; i < Modifiers.DOUBLE_MODIFIERS; ++i) {
+      if (this.weight[i] == 0.0 && this.min[i] == Double.NEGATIVE_INFINITY) continue;
+      scored[count++] = i;
+      switch (i) {
+        case Modifiers.MUS:
+        case Modifiers.MYS:
+        case Modifiers.MOX:
+        case Modifiers.HP:
+        case Modifiers.MP:
+          this.predictsStats = true;
+          break;
+      }
+    }
+    this.scored = Arrays.copyOf(scored, count);
+
+    Arrays.fill(this.relevant, false);
+    this.affectingEffects = null;
+    for (int i : this.scored) {
+      this.relevant[i] = true;
+    }
+    for (int i : Evaluator.DERIVED_FROM) {
+      this.relevant[i] = true;
+    }
+    if (this.predictsStats) {
+      for (int i : Evaluator.PREDICTED_FROM) {
+        this.relevant[i] = true;
+      }
+    }
+    for (int i = 0; i < Modifiers.DOUBLE_MODIFIERS; ++i) {
+      if (IncrementalModifiers.isNonAdditive(i)) {
+        this.relevant[i] = true;
+      }
+    }
+
+    int bonusCount = this.bonuses.size();
+    this.bonusItems = new AdventureResult[bonusCount];
+    this.bonusValues = new double[bonusCount];
+    int j = 0;
+    for (Entry<AdventureResult, Double> entry : this.bonuses.entrySet()) {
+      this.bonusItems[j] = entry.getKey();
+      this.bonusValues[j] = entry.getValue();
+      ++j;
+    }
+  }
+
   private AdventureResult pickPlumberTool(int primeIndex, boolean have) {
     AdventureResult hammer = ItemPool.get(ItemPool.HAMMER);
     boolean haveHammer = InventoryManager.hasItem(hammer);
@@ -683,16 +922,30 @@ public class Evaluator {
                 : haveHammer ? hammer : haveFireFlower ? fireFlower : workBoots;
   }
 
+  // A copy for one task of a parallel search to score with.  Scoring leaves its results
+  // and scratch space in the evaluator, so tasks can't share one.
+  Evaluator copy() {
+    try {
+      Evaluator copy = (Evaluator) super.clone();
+      copy.predicted = new int[Modifiers.DERIVED_MODIFIERS];
+      if (this.tiebreaker != null) {
+        copy.tiebreaker = this.tiebreaker.copy();
+      }
+      return copy;
+    } catch (CloneNotSupportedException e) {
+      return null;
+    }
+  }
+
   public double getScore(Modifiers mods, AdventureResult[] equipment) {
     this.failed = false;
     this.exceeded = false;
-    int[] predicted = mods.predict();
+    int[] predicted = this.predictsStats ? mods.predict(this.predicted) : null;
 
     double score = 0.0;
-    for (int i = 0; i < Modifiers.DOUBLE_MODIFIERS; ++i) {
+    for (int i : this.scored) {
       double weight = this.weight[i];
       double min = this.min[i];
-      if (weight == 0.0 && min == Double.NEGATIVE_INFINITY) continue;
       double val = mods.get(i);
       double max = this.max[i];
       switch (i) {
@@ -772,10 +1025,13 @@ public class Evaluator {
       if (val < min) this.failed = true;
       score += weight * Math.min(val, max);
     }
-    if (!this.bonuses.isEmpty()) {
+    if (this.bonusItems.length > 0) {
       for (AdventureResult item : equipment) {
-        if (this.bonuses.containsKey(item)) {
-          score += this.bonuses.get(item);
+        for (int j = 0; j < this.bonusItems.length; ++j) {
+          if (this.bonusItems[j].equals(item)) {
+            score += this.bonusValues[j];
+            break;
+          }
         }
       }
     }
@@ -816,6 +1072,139 @@ public class Evaluator {
     return this.getScore(mods, new AdventureResult[0]);
   }
 
+  // An upper bound on how much wearing this item in this slot can add to the score,
+  // used to prune the search.  Only items that contribute nothing but their own
+  // modifiers can be bounded; anything else returns infinity.
+  double getMaximumGain(AdventureResult item, int slot) {
+    if (this.clownosity > 0 || this.raveosity > 0 || this.surgeonosity > 0) {
+      return Double.POSITIVE_INFINITY;
+    }
+
+    int itemId = item.getItemId();
+    if (!IncrementalModifiers.isAdditive(itemId)) {
+      return Double.POSITIVE_INFINITY;
+    }
+
+    double[] delta = new double[Modifiers.DOUBLE_MODIFIERS];
+    Modifiers mods = Modifiers.getItemModifiers(itemId);
+    if (mods != null) {
+      if (!mods.getString(Modifiers.FLOOR_BUFFED_MUSCLE).equals("")
+          || !mods.getString(Modifiers.FLOOR_BUFFED_MYST).equals("")
+          || !mods.getString(Modifiers.FLOOR_BUFFED_MOXIE).equals("")) {
+        return Double.POSITIVE_INFINITY;
+      }
+      for (int i = 0; i < Modifiers.DOUBLE_MODIFIERS; ++i) {
+        delta[i] = mods.get(i);
+      }
+    }
+
+    int power = EquipmentDatabase.getPower(itemId);
+    switch (slot) {
+      case EquipmentManager.OFFHAND:
+        // Only an off-hand weapon adds its power to weapon damage
+        if (ItemDatabase.getConsumptionType(itemId) == KoLConstants.EQUIP_WEAPON) {
+          delta[Modifiers.WEAPON_DAMAGE] += power * 0.15f;
+        }
+        break;
+      case EquipmentManager.WEAPON:
+        delta[Modifiers.WEAPON_DAMAGE] += power * 0.15f;
+        break;
+      case EquipmentManager.HAT:
+      case EquipmentManager.PANTS:
+        delta[Modifiers.DAMAGE_ABSORPTION] +=
+            (KoLCharacter.hasSkill("Tao of the Terrapin") ? 2 : 1) * power;
+        break;
+      case EquipmentManager.SHIRT:
+        delta[Modifiers.DAMAGE_ABSORPTION] += power;
+        break;
+    }
+
+    int baseStat =
+        Math.max(
+            KoLCharacter.getBaseMuscle(),
+            Math.max(KoLCharacter.getBaseMysticality(), KoLCharacter.getBaseMoxie()));
+
+    double gain = 0.0;
+    for (int i : this.scored) {
+      double weight = this.weight[i];
+      if (weight == 0.0) continue;
+      // The range the value getScore() uses for this modifier can move by
+      double low = delta[i];
+      double high = delta[i];
+      switch (i) {
+        case Modifiers.MUS:
+        case Modifiers.MYS:
+        case Modifiers.MOX:
+          // Buffed stats depend on each other through equalizers and floors
+          double change =
+              Evaluator.statChange(delta[Modifiers.MUS], delta[Modifiers.MUS_PCT], baseStat)
+                  + Evaluator.statChange(delta[Modifiers.MYS], delta[Modifiers.MYS_PCT], baseStat)
+                  + Evaluator.statChange(delta[Modifiers.MOX], delta[Modifiers.MOX_PCT], baseStat);
+          low = -change;
+          high = change;
+          break;
+        case Modifiers.HP:
+        case Modifiers.MP:
+          return Double.POSITIVE_INFINITY;
+        case Modifiers.MANA_COST:
+          low = high = delta[i] + delta[Modifiers.STACKABLE_MANA_COST];
+          break;
+        case Modifiers.INITIATIVE:
+          low += Math.min(0.0, delta[Modifiers.INITIATIVE_PENALTY]);
+          high += Math.max(0.0, delta[Modifiers.INITIATIVE_PENALTY]);
+          break;
+        case Modifiers.MEATDROP:
+          low =
+              high =
+                  delta[i]
+                      + delta[Modifiers.SPORADIC_MEATDROP]
+                      + delta[Modifiers.MEAT_BONUS] / 10000.0;
+          low += Math.min(0.0, delta[Modifiers.MEATDROP_PENALTY]);
+          high += Math.max(0.0, delta[Modifiers.MEATDROP_PENALTY]);
+          break;
+        case Modifiers.ITEMDROP:
+          low = high = delta[i] + delta[Modifiers.SPORADIC_ITEMDROP];
+          low += Math.min(0.0, delta[Modifiers.ITEMDROP_PENALTY]);
+          high += Math.max(0.0, delta[Modifiers.ITEMDROP_PENALTY]);
+          break;
+        case Modifiers.WEAPON_DAMAGE:
+          low = high = delta[i] + delta[Modifiers.WEAPON_DAMAGE_PCT];
+          break;
+        case Modifiers.RANGED_DAMAGE:
+          low = high = delta[i] + delta[Modifiers.RANGED_DAMAGE_PCT];
+          break;
+        case Modifiers.SPELL_DAMAGE:
+          low = high = delta[i] + delta[Modifiers.SPELL_DAMAGE_PCT];
+          break;
+        case Modifiers.COLD_RESISTANCE:
+        case Modifiers.HOT_RESISTANCE:
+        case Modifiers.SLEAZE_RESISTANCE:
+        case Modifiers.SPOOKY_RESISTANCE:
+        case Modifiers.STENCH_RESISTANCE:
+          if (mods != null
+              && (mods.getBoolean(i - Modifiers.COLD_RESISTANCE + Modifiers.COLD_IMMUNITY)
+                  || mods.getBoolean(
+                      i - Modifiers.COLD_RESISTANCE + Modifiers.COLD_VULNERABILITY))) {
+            return Double.POSITIVE_INFINITY;
+          }
+          break;
+      }
+      // Capping at the max can only reduce the change
+      gain += weight > 0.0 ? weight * Math.max(0.0, high) : -weight * Math.max(0.0, -low);
+    }
+
+    Double bonus = this.bonuses.get(item);
+    if (bonus != null && bonus > 0.0) {
+      gain += bonus;
+    }
+    return gain;
+  }
+
+  private static double statChange(double flat, double pct, int baseStat) {
+    // Percentages are rounded up when predicting buffed stats
+    return Math.abs(flat) + Math.abs(pct) * baseStat / 100.0 + (pct != 0.0 ? 1.0 : 0.0);
+  }
+
   void checkEquipment(Modifiers mods, AdventureResult[] equipment, int beeosity) {
     boolean outfitSatisfied = this.posOutfits.isEmpty();
     boolean equipSatisfied = this.posEquip.isEmpty();
@@ -863,6 +1252,246 @@ public class Evaluator {
     return 0;
   }
 
+  // Whether gaining the effect could change the score at all.  Effects that only
+  // touch modifiers this expression doesn't look at, directly or through the rest
+  // of the calculation, can be passed over without a full recalculation.
+  boolean mayAffectScore(int effectId) {
+    switch (effectId) {
+        // KoLCharacter.recalculateAdjustments treats these specially
+      case EffectPool.BENDIN_HELL:
+      case EffectPool.BOWLEGGED_SWAGGER:
+      case EffectPool.STEELY_EYED_SQUINT:
+        return true;
+    }
+
+    if (this.affectingEffects == null) {
+      this.affectingEffects = this.findAffectingEffects();
+    }
+    return this.affectingEffects.get(effectId);
+  }
+
+  // Asks the modifier index for the effects which provide a relevant double modifier,
+  // any bitmap or boolean modifier, or a scored string modifier.
+  private BitSet findAffectingEffects() {
+    BitSet effects = new BitSet();
+    for (int i = 0; i < Modifiers.DOUBLE_MODIFIERS; ++i) {
+      if (this.relevant[i]) {
+        Evaluator.addEffects(effects, i);
+      }
+    }
+    int strings =
+        Modifiers.DOUBLE_MODIFIERS + Modifiers.BITMAP_MODIFIERS + Modifiers.BOOLEAN_MODIFIERS;
+    for (int i = Modifiers.DOUBLE_MODIFIERS; i < strings; ++i) {
+      Evaluator.addEffects(effects, i);
+    }
+    for (int i : Evaluator.SCORED_STRINGS) {
+      Evaluator.addEffects(effects, strings + i);
+    }
+    return effects;
+  }
+
+  private static void addEffects(BitSet effects, int index) {
+    for (ModifierIndex.Source source : ModifierIndex.getSources(index)) {
+      if (!source.getType().equals("Effect")) {
+        continue;
+      }
+      if (!source.isVariable() && source.getValue() == 0.0 && index < Modifiers.DOUBLE_MODIFIERS) {
+        continue;
+      }
+      int effectId = source.getId();
+      if (effectId == -1) {
+        effectId = EffectDatabase.getEffectId(source.getName());
+      }
+      if (effectId != -1) {
+        effects.set(effectId);
+      }
+    }
+  }
+
+  // Records, for each modifier, whether raising it can only raise the score (1), can
+  // only lower it (-1), or could do either (EQUAL).
+  private void addDirections(int[] direction) {
+    for (int i : this.scored) {
+      Evaluator.addDirection(direction, i, (int) Math.signum(this.weight[i]));
+      if (this.min[i] != Double.NEGATIVE_INFINITY) {
+        Evaluator.addDirection(direction, i, 1);
+      }
+    }
+    for (int[] pair : Evaluator.DERIVED_PAIRS) {
+      Evaluator.addDirection(direction, pair[1], direction[pair[0]]);
+    }
+    if (this.predictsStats) {
+      // Buffed HP and MP follow the buffed stats, so they all move together
+      int stats = 0;
+      for (int i : Evaluator.PREDICTED_FROM) {
+        stats = Evaluator.combineDirections(stats, direction[i]);
+      }
+      for (int i : Evaluator.PREDICTED_FROM) {
+        direction[i] = stats;
+      }
+    }
+    if (this.clownosity > 0) {
+      Evaluator.addDirection(direction, Modifiers.CLOWNINESS, 1);
+    }
+    if (this.surgeonosity > 0) {
+      Evaluator.addDirection(direction, Modifiers.SURGEONOSITY, 1);
+    }
+  }
+
+  private static void addDirection(int[] direction, int index, int sign) {
+    direction[index] = Evaluator.combineDirections(direction[index], sign);
+  }
+
+  private static int combineDirections(int first, int second) {
+    if (first == 0) return second;
+    if (second == 0 || first == second) return first;
+    return Evaluator.EQUAL;
+  }
+
+  // An item is simple enough to compare if it only ever adds its own modifiers
+  private boolean isComparable(CheckedItem item) {
+    int itemId = item.getItemId();
+    return itemId > 0
+        && !item.conditionalFlag
+        && !this.uniques.contains(item)
+        && !this.bonuses.containsKey(item)
+        && ItemDatabase.getFoldGroup(item.getName()) == null
+        && IncrementalModifiers.isAdditive(itemId);
+  }
+
+  private static double getDominanceValue(int slot, int itemId, Modifiers mods, int index) {
+    double value = mods == null ? 0.0 : mods.get(index);
+    // Mirror the power-based adjustments in KoLCharacter.addItemAdjustment
+    if (index == Modifiers.DAMAGE_ABSORPTION) {
+      int taoFactor = KoLCharacter.hasSkill("Tao of the Terrapin") ? 2 : 1;
+      switch (slot) {
+        case EquipmentManager.HAT:
+        case EquipmentManager.PANTS:
+          value += taoFactor * EquipmentDatabase.getPower(itemId);
+          break;
+        case EquipmentManager.SHIRT:
+          value += EquipmentDatabase.getPower(itemId);
+          break;
+      }
+    }
+    return value;
+  }
+
+  // Whether wearing better in place of worse can never lower the score, the
+  // tiebreaker or any of the other preferences the search uses to choose.
+  private boolean dominates(int slot, CheckedItem better, CheckedItem worse, int[] direction) {
+    int betterId = better.getItemId();
+    int worseId = worse.getItemId();
+    Modifiers betterMods = Modifiers.getItemModifiers(betterId);
+    Modifiers worseMods = Modifiers.getItemModifiers(worseId);
+
+    int betterBits = betterMods == null ? 0 : betterMods.getRawBitmap(0);
+    int worseBits = worseMods == null ? 0 : worseMods.getRawBitmap(0);
+    if (betterBits != worseBits) {
+      return false;
+    }
+    String betterRollover =
+        betterMods == null ? "" : betterMods.getString(Modifiers.ROLLOVER_EFFECT);
+    String worseRollover = worseMods == null ? "" : worseMods.getString(Modifiers.ROLLOVER_EFFECT);
+    if (!betterRollover.equals(worseRollover)) {
+      return false;
+    }
+
+    if ((better.buyableFlag && !worse.buyableFlag)
+        || (better.inventory == 0 && worse.inventory > 0)
+        || (better.initial == 0 && worse.initial > 0)) {
+      return false;
+    }
+
+    for (int i = 0; i < Modifiers.DOUBLE_MODIFIERS; ++i) {
+      if (direction[i] == 0) {
+        continue;
+      }
+      double betterValue = Evaluator.getDominanceValue(slot, betterId, betterMods, i);
+      double worseValue = Evaluator.getDominanceValue(slot, worseId, worseMods, i);
+      switch (direction[i]) {
+        case 1:
+          if (betterValue < worseValue) return false;
+          break;
+        case -1:
+          if (betterValue > worseValue) return false;
+          break;
+        default:
+          if (betterValue != worseValue) return false;
+          break;
+      }
+    }
+    return true;
+  }
+
+  // Removes candidates that other candidates for the same slot are at least as good as
+  // on everything that matters, as long as there are enough of those others to fill
+  // the slot.  Returns how many were removed.
+  int getDominated() {
+    return this.dominated;
+  }
+
+  private int pruneDominated(List<CheckedItem>[] automatic) {
+    if (KoLCharacter.inBeecore()) {
+      return 0;
+    }
+
+    int[] direction = new int[Modifiers.DOUBLE_MODIFIERS];
+    this.addDirections(direction);
+    if (!this.noTiebreaker) {
+      this.tiebreaker.addDirections(direction);
+    }
+
+    // Items a familiar might wear instead can't be counted on to fill a slot
+    Set<AdventureResult> familiarItems = new HashSet<>();
+    for (int slot = EquipmentManager.FAMILIAR; slot < automatic.length; ++slot) {
+      if (slot == EquipmentManager.FAMILIAR || slot >= EquipmentManager.ALL_SLOTS) {
+        familiarItems.addAll(automatic[slot]);
+      }
+    }
+
+    int pruned = 0;
+    for (int slot : Evaluator.DOMINANCE_SLOTS) {
+      List<CheckedItem> items = automatic[slot];
+      int useful = this.maxUseful(slot);
+      Iterator<CheckedItem> i = items.iterator();
+      while (i.hasNext()) {
+        CheckedItem worse = i.next();
+        if (worse.requiredFlag || KoLCharacter.hasEquipped(worse) || !this.isComparable(worse)) {
+          continue;
+        }
+        // Items that meet a constraint are all carried through, however weak
+        // they are, but other automatic items are there for other reasons
+        if (worse.automaticFlag
+            && (worse.getItemId() == ItemPool.SPECIAL_SAUCE_GLOVE
+                || this.checkConstraints(Modifiers.getItemModifiers(worse.getItemId())) != 1)) {
+          continue;
+        }
+
+        int dominators = 0;
+        for (CheckedItem better : items) {
+          if (better == worse
+              || better.getItemId() == worse.getItemId()
+              || familiarItems.contains(better)
+              || !this.isComparable(better)
+              || !this.dominates(slot, better, worse, direction)) {
+            continue;
+          }
+          dominators += better.getCount();
+          if (dominators >= useful) {
+            break;
+          }
+        }
+
+        if (dominators >= useful) {
+          i.remove();
+          ++pruned;
+        }
+      }
+    }
+    return pruned;
+  }
+
   public static boolean checkEffectConstraints(int effectId) {
     // Return true if effect cannot be gained due to current other effects or class
     switch (effectId) {
@@ -974,12 +1603,12 @@ public class Evaluator {
     }
 
     double nullScore = this.getScore(new Modifiers());
+    Candidates considered = Evaluator.getCandidates(equipScope, maxPrice, priceLevel);
 
     BooleanArray usefulOutfits = new BooleanArray();
     Map<AdventureResult, AdventureResult> outfitPieces = new HashMap<>();
-    for (int i = 1; i < EquipmentDatabase.normalOutfits.size(); ++i) {
+    for (int i : considered.outfits) {
       SpecialOutfit outfit = EquipmentDatabase.normalOutfits.get(i);
-      if (outfit == null) continue;
       if (this.negOutfits.contains(outfit.getName())) continue;
       if (this.posOutfits.contains(outfit.getName())) {
         usefulOutfits.set(i, true);
@@ -1055,19 +1684,20 @@ public class Evaluator {
     // than any chefstaff.
     boolean gloveAvailable = false;
 
-    int id = 0;
-    while ((id = EquipmentDatabase.nextEquipmentItemId(id)) != -1) {
-      int slot = EquipmentManager.itemIdToEquipmentType(id);
-      if (slot < 0 || slot >= EquipmentManager.ALL_SLOTS) continue;
-      AdventureResult preItem = ItemPool.get(id, 1);
-      String name = preItem.getName();
+    for (Candidate candidate : considered.equipment) {
+      // Earlier in the batch, the item was found to be unavailable
+      if (candidate.unavailable) continue;
+      int id = candidate.id;
+      int slot = candidate.slot;
+      AdventureResult preItem = candidate.item;
+      String name = candidate.name;
       CheckedItem item = null;
       if (this.negEquip.contains(preItem)) continue;
       if (KoLCharacter.inBeecore()
           && KoLCharacter.getBeeosity(name) > this.beeosity) { // too beechin' all by itself!
         continue;
       }
-      boolean famCanEquip = KoLCharacter.getFamiliar().canEquip(preItem);
+      boolean famCanEquip = candidate.familiarCanEquip;
       if (famCanEquip && slot != EquipmentManager.FAMILIAR) {
         // Modifiers when worn by Hatrack or Scarecrow
         Modifiers familiarMods = new Modifiers();
@@ -1096,7 +1726,7 @@ public class Evaluator {
           familiarMods = new Modifiers();
         }
 
-        item = new CheckedItem(id, equipScope, maxPrice, priceLevel);
+        item = candidate.check(equipScope, maxPrice, priceLevel);
 
         switch (this.checkConstraints(familiarMods)) {
           case -1:
@@ -1127,7 +1757,7 @@ public class Evaluator {
           }
         }
         if (item == null) {
-          item = new CheckedItem(id, equipScope, maxPrice, priceLevel);
+          item = candidate.check(equipScope, maxPrice, priceLevel);
         }
 
         switch (this.checkConstraints(familiarMods)) {
@@ -1143,9 +1773,9 @@ public class Evaluator {
         }
       }
 
-      if (!EquipmentManager.canEquip(id) && !KoLCharacter.hasEquipped(id)) continue;
+      if (!candidate.equippable) continue;
       if (item == null) {
-        item = new CheckedItem(id, equipScope, maxPrice, priceLevel);
+        item = candidate.check(equipScope, maxPrice, priceLevel);
       }
 
       if (item.getCount() == 0) {
@@ -1250,7 +1880,7 @@ public class Evaluator {
               continue;
             }
             if (hoboPowerUseful && name.startsWith("Hodgman's")) {
-              Modifiers.hoboPower = 100.0;
+              Modifiers.setHoboPower(100.0);
               item.automaticFlag = true;
             }
             break;
@@ -1522,7 +2152,7 @@ public class Evaluator {
       // Make sure best is better than secondBest !
       MaximizerSpeculation best = new MaximizerSpeculation();
       MaximizerSpeculation secondBest = new MaximizerSpeculation();
-      CheckedItem item = new CheckedItem(ItemPool.HATSEAT, equipScope, maxPrice, priceLevel);
+      CheckedItem item = CheckedItem.get(ItemPool.HATSEAT, equipScope, maxPrice, priceLevel);
       best.attachment = secondBest.attachment = item;
       best.equipment[EquipmentManager.HAT] = secondBest.equipment[EquipmentManager.HAT] = item;
       best.setEnthroned(bestCarriedFamiliar);
@@ -1537,25 +2167,19 @@ public class Evaluator {
     if (this.carriedFamiliarsNeeded > 0) {
       MaximizerSpeculation best = new MaximizerSpeculation();
       MaximizerSpeculation secondBest = new MaximizerSpeculation();
-      CheckedItem item = new CheckedItem(ItemPool.HATSEAT, equipScope, maxPrice, priceLevel);
+      CheckedItem item = CheckedItem.get(ItemPool.HATSEAT, equipScope, maxPrice, priceLevel);
       best.attachment = secondBest.attachment = item;
       best.equipment[EquipmentManager.HAT] = secondBest.equipment[EquipmentManager.HAT] = item;
       best.setEnthroned(bestCarriedFamiliar);
       secondBest.setEnthroned(secondBestCarriedFamiliar);
 
       // Check each familiar in hat to see if they are worthwhile
-      List<FamiliarData> familiarList = KoLCharacter.getFamiliarList();
-      for (FamiliarData familiar : familiarList) {
-        if (familiar != null
-            && familiar != FamiliarData.NO_FAMILIAR
-            && familiar.canCarry()
-            && StandardRequest.isAllowed("Familiars", familiar.getRace())
-            && !familiar.equals(KoLCharacter.getFamiliar())
+      for (FamiliarData familiar : considered.getCarriable()) {
+        if (!familiar.equals(KoLCharacter.getFamiliar())
             && !this.carriedFamiliars.contains(familiar)
             && !familiar.equals(useCrownFamiliar)
             && !familiar.equals(useBjornFamiliar)
-            && !familiar.equals(bestCarriedFamiliar)
-            && !(KoLCharacter.inBeecore() && KoLCharacter.getBeeosity(familiar.getRace()) > 0)) {
+            && !familiar.equals(bestCarriedFamiliar)) {
           MaximizerSpeculation spec = new MaximizerSpeculation();
           spec.attachment = item;
           spec.equipment[EquipmentManager.HAT] = item;
@@ -1587,12 +2211,12 @@ public class Evaluator {
 
       // Check each card in sleeve to see if they are worthwhile
       for (int c = 4967; c <= 5007; c++) {
-        CheckedItem card = new CheckedItem(c, equipScope, maxPrice, priceLevel);
+        CheckedItem card = CheckedItem.get(c, equipScope, maxPrice, priceLevel);
         AdventureResult equippedCard = EquipmentManager.getEquipment(EquipmentManager.CARDSLEEVE);
         if (card.getCount() > 0 || (equippedCard != null && c == equippedCard.getItemId())) {
           MaximizerSpeculation spec = new MaximizerSpeculation();
           CheckedItem sleeve =
-              new CheckedItem(ItemPool.CARD_SLEEVE, equipScope, maxPrice, priceLevel);
+              CheckedItem.get(ItemPool.CARD_SLEEVE, equipScope, maxPrice, priceLevel);
           spec.attachment = sleeve;
           spec.equipment[EquipmentManager.OFFHAND] = sleeve;
           spec.equipment[EquipmentManager.CARDSLEEVE] = card;
@@ -1614,7 +2238,7 @@ public class Evaluator {
         // Assume best is current edPiece
         MaximizerSpeculation best = new MaximizerSpeculation();
         CheckedItem edPiece =
-            new CheckedItem(ItemPool.CROWN_OF_ED, equipScope, maxPrice, priceLevel);
+            CheckedItem.get(ItemPool.CROWN_OF_ED, equipScope, maxPrice, priceLevel);
         best.attachment = edPiece;
         bestEdPiece = Preferences.getString("edPiece");
         best.equipment[EquipmentManager.HAT] = edPiece;
@@ -1644,7 +2268,7 @@ public class Evaluator {
     if (this.snowsuitNeeded) {
       // Assume best is current Snowsuit
       MaximizerSpeculation best = new MaximizerSpeculation();
-      CheckedItem snowsuit = new CheckedItem(ItemPool.SNOW_SUIT, equipScope, maxPrice, priceLevel);
+      CheckedItem snowsuit = CheckedItem.get(ItemPool.SNOW_SUIT, equipScope, maxPrice, priceLevel);
       best.attachment = snowsuit;
       bestSnowsuit = Preferences.getString("snowsuit");
       best.equipment[EquipmentManager.FAMILIAR] = snowsuit;
@@ -1674,7 +2298,7 @@ public class Evaluator {
       // Assume best is current retro cape
       MaximizerSpeculation best = new MaximizerSpeculation();
       CheckedItem retroCape =
-          new CheckedItem(
+          CheckedItem.get(
               ItemPool.KNOCK_OFF_RETRO_SUPERHERO_CAPE, equipScope, maxPrice, priceLevel);
       best.attachment = retroCape;
       bestRetroCape =
@@ -1712,7 +2336,7 @@ public class Evaluator {
       // Assume best is current backup camera mode
       MaximizerSpeculation best = new MaximizerSpeculation();
       CheckedItem backupCamera =
-          new CheckedItem(ItemPool.BACKUP_CAMERA, equipScope, maxPrice, priceLevel);
+          CheckedItem.get(ItemPool.BACKUP_CAMERA, equipScope, maxPrice, priceLevel);
       best.attachment = backupCamera;
       bestBackupCamera = Preferences.getString("backupCameraMode");
       best.equipment[EquipmentManager.ACCESSORY3] = backupCamera;
@@ -1747,7 +2371,7 @@ public class Evaluator {
 
       // If we currently have nothing equipped, also consider leaving nothing equipped
       if (EquipmentManager.getEquipment(Evaluator.toUseSlot(slot)) == EquipmentRequest.UNEQUIP) {
-        ranked[slot].add(new CheckedItem(-1, equipScope, maxPrice, priceLevel));
+        ranked[slot].add(CheckedItem.get(-1, equipScope, maxPrice, priceLevel));
       }
 
       for (CheckedItem item : checkedItemList) {
@@ -1831,6 +2455,23 @@ public class Evaluator {
       Collections.sort(speculationList[slot]);
     }
 
+    // Price the buyable items each slot will validate first in one batch,
+    // rather than with one mall search after another
+    if (priceLevel > 0) {
+      List<AdventureResult> buyable = new ArrayList<AdventureResult>();
+      for (int slot = 0; slot < speculationList.length; ++slot) {
+        ListIterator<MaximizerSpeculation> sI =
+            speculationList[slot].listIterator(speculationList[slot].size());
+        for (int useful = this.maxUseful(slot); useful > 0 && sI.hasPrevious(); --useful) {
+          CheckedItem item = sI.previous().attachment;
+          if (item.buyableFlag) {
+            buyable.add(item);
+          }
+        }
+      }
+      StoreManager.prefetchMallPrices(buyable);
+    }
+
     // Compare sets which improve with the number of items equipped with the best items in the same
     // spots
 
@@ -2106,7 +2747,7 @@ public class Evaluator {
               break;
             }
           }
-          CheckedItem outfitItem = new CheckedItem(outfitItemId, equipScope, maxPrice, priceLevel);
+          CheckedItem outfitItem = CheckedItem.get(outfitItemId, equipScope, maxPrice, priceLevel);
           outfitSpec.equipment[newSlot] = outfitItem;
         }
         if (outfitSpec.compareTo(compareSpec) <= 0 && !this.posOutfits.contains(outfit.getName())) {
@@ -2246,7 +2887,7 @@ public class Evaluator {
       // Blunt object fix for only having a foldable that might be needed elsewhere
       if (automatic[slot].size() == 1
           && ItemDatabase.getFoldGroup(automatic[slot].get(0).getName()) != null) {
-        automatic[slot].add(new CheckedItem(-1, equipScope, maxPrice, priceLevel));
+        automatic[slot].add(CheckedItem.get(-1, equipScope, maxPrice, priceLevel));
       }
 
       if (this.dump > 0) {
@@ -2254,6 +2895,25 @@ public class Evaluator {
       }
     }
 
+    if (RequestLogger.isDebugging()) {
+      int candidates = 0;
+      for (List<CheckedItem> items : automatic) {
+        candidates += items.size();
+      }
+      int pruned = this.pruneDominated(automatic);
+      this.dominated = pruned;
+      RequestLogger.updateDebugLog(
+          "Maximizer pruned "
+              + pruned
+              + " of "
+              + candidates
+              + " equipment candidates as dominated ("
+              + (candidates == 0 ? 0 : 100 * pruned / candidates)
+              + "%)");
+    } else {
+      this.dominated = this.pruneDominated(automatic);
+    }
+
     automatic[EquipmentManager.ACCESSORY1].addAll(automatic[Evaluator.WATCHES]);
     automatic[EquipmentManager.WEAPON].addAll(automatic[Evaluator.WEAPON_1H]);
     automatic[Evaluator.OFFHAND_MELEE].addAll(automatic[EquipmentManager.OFFHAND]);
@@ -2281,7 +2941,7 @@ public class Evaluator {
 
       Iterator<AdventureResult> i = outfitPieces.keySet().iterator();
       while (i.hasNext()) {
-        id = i.next().getItemId();
+        int id = i.next().getItemId();
         if (EquipmentManager.itemIdToEquipmentType(id) == EquipmentManager.WEAPON
             && EquipmentDatabase.getHands(id) > 1) {
           i.remove();
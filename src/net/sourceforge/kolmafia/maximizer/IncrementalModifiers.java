@@ -0,0 +1,300 @@
+package net.sourceforge.kolmafia.maximizer;
+
+import java.util.HashMap;
+import java.util.Map;
+import net.sourceforge.kolmafia.AdventureResult;
+import net.sourceforge.kolmafia.FamiliarData;
+import net.sourceforge.kolmafia.KoLCharacter;
+import net.sourceforge.kolmafia.Modifiers;
+import net.sourceforge.kolmafia.objectpool.EffectPool;
+import net.sourceforge.kolmafia.objectpool.ItemPool;
+import net.sourceforge.kolmafia.persistence.EquipmentDatabase;
+import net.sourceforge.kolmafia.request.EquipmentRequest;
+import net.sourceforge.kolmafia.session.EquipmentManager;
+
+// Scores maximizer combinations without running all of KoLCharacter.recalculateAdjustments
+// for every one of them.
+//
+// Items whose modifiers are a plain sum - no outfits, synergies, brimstone/cloathing bitmaps,
+// smithsness, hobo power, familiar weight, experience, diminishing or capped modifiers or
+// variable modifiers - are taken out of the hat, container, shirt, pants, holster and
+// accessory slots.  Everything else is fully recalculated once and cached, and the summable
+// items' modifiers are added on top.  Swapping one summable item for another then costs a
+// cache lookup and a handful of additions.
+
+class IncrementalModifiers {
+  // Double modifiers that are not simply summed, or which other parts of the
+  // calculation depend on.
+  private static final int[] NON_ADDITIVE = {
+    Modifiers.COMBAT_RATE,
+    Modifiers.MANA_COST,
+    Modifiers.MUS_LIMIT,
+    Modifiers.MYS_LIMIT,
+    Modifiers.MOX_LIMIT,
+    Modifiers.FAMILIAR_ACTION_BONUS,
+    Modifiers.MONSTER_LEVEL,
+    Modifiers.EXPERIENCE,
+    Modifiers.MUS_EXPERIENCE,
+    Modifiers.MYS_EXPERIENCE,
+    Modifiers.MOX_EXPERIENCE,
+    Modifiers.MUS_EXPERIENCE_PCT,
+    Modifiers.MYS_EXPERIENCE_PCT,
+    Modifiers.MOX_EXPERIENCE_PCT,
+    Modifiers.HOBO_POWER,
+    Modifiers.SMITHSNESS,
+    Modifiers.SLIME_HATES_IT,
+    Modifiers.FAMILIAR_WEIGHT,
+    Modifiers.HIDDEN_FAMILIAR_WEIGHT,
+    Modifiers.FAMILIAR_WEIGHT_PCT,
+    Modifiers.FAMILIAR_WEIGHT_CAP,
+    Modifiers.FAMILIAR_TUNING_MUSCLE,
+    Modifiers.FAMILIAR_TUNING_MYSTICALITY,
+    Modifiers.FAMILIAR_TUNING_MOXIE,
+    Modifiers.VOLLEYBALL_WEIGHT,
+    Modifiers.VOLLEYBALL_EFFECTIVENESS,
+    Modifiers.SOMBRERO_WEIGHT,
+    Modifiers.SOMBRERO_BONUS,
+    Modifiers.SOMBRERO_EFFECTIVENESS,
+    Modifiers.LEPRECHAUN_WEIGHT,
+    Modifiers.LEPRECHAUN_EFFECTIVENESS,
+    Modifiers.FAIRY_WEIGHT,
+    Modifiers.FAIRY_EFFECTIVENESS,
+    Modifiers.HP_REGEN_MIN,
+    Modifiers.HP_REGEN_MAX,
+    Modifiers.MP_REGEN_MIN,
+    Modifiers.MP_REGEN_MAX,
+  };
+
+  // String modifiers that Modifiers.add() or the calculation look at
+  private static final int[] CALCULATED_STRINGS = {
+    Modifiers.CLASS,
+    Modifiers.INTRINSIC_EFFECT,
+    Modifiers.STAT_TUNING,
+    Modifiers.EQUALIZE,
+    Modifiers.EQUALIZE_MUSCLE,
+    Modifiers.EQUALIZE_MYST,
+    Modifiers.EQUALIZE_MOXIE,
+  };
+
+  private static final boolean[] nonAdditive = new boolean[Modifiers.DOUBLE_MODIFIERS];
+
+  static {
+    for (int index : IncrementalModifiers.NON_ADDITIVE) {
+      IncrementalModifiers.nonAdditive[index] = true;
+    }
+  }
+
+  // Slots whose items only contribute their own modifiers
+  private static final int[] SUMMABLE_SLOTS = {
+    EquipmentManager.HAT,
+    EquipmentManager.HOLSTER,
+    EquipmentManager.CONTAINER,
+    EquipmentManager.SHIRT,
+    EquipmentManager.PANTS,
+    EquipmentManager.ACCESSORY1,
+    EquipmentManager.ACCESSORY2,
+    EquipmentManager.ACCESSORY3,
+  };
+
+  // Don't let the cache of full calculations grow without bound
+  private static final int MAX_BASES = 4096;
+
+  private final Map<String, Modifiers> bases = new HashMap<>();
+  private final Map<Integer, Boolean> summable = new HashMap<>();
+  private final boolean usable;
+  private final int taoFactor;
+
+  IncrementalModifiers(MaximizerSpeculation spec) {
+    this.taoFactor = KoLCharacter.hasSkill("Tao of the Terrapin") ? 2 : 1;
+
+    // Item modifiers are filtered in these paths, and these effects
+    // re-add the accumulated item drop, damage and initiative at the end.
+    this.usable =
+        !KoLCharacter.inNoobcore()
+            && !KoLCharacter.inGLover()
+            && !spec.hasEffect(EffectPool.get(EffectPool.BENDIN_HELL))
+            && !spec.hasEffect(EffectPool.get(EffectPool.BOWLEGGED_SWAGGER))
+            && !spec.hasEffect(EffectPool.get(EffectPool.STEELY_EYED_SQUINT));
+  }
+
+  static boolean isNonAdditive(int index) {
+    return IncrementalModifiers.nonAdditive[index];
+  }
+
+  boolean isUsable() {
+    return this.usable;
+  }
+
+  // Returns the modifiers for the speculation with the given equipment, or null
+  // if they must be recalculated from scratch.
+  Modifiers calculate(MaximizerSpeculation spec, AdventureResult[] equipment) {
+    if (!this.usable) {
+      return null;
+    }
+
+    // The broken champagne bottle doubles the accumulated item drop at the end
+    if (IncrementalModifiers.isChampagne(equipment[EquipmentManager.WEAPON])
+        || IncrementalModifiers.isChampagne(equipment[EquipmentManager.OFFHAND])
+        || IncrementalModifiers.isChampagne(equipment[EquipmentManager.FAMILIAR])) {
+      return null;
+    }
+
+    AdventureResult[] remaining = equipment.clone();
+    AdventureResult[] summed = new AdventureResult[EquipmentManager.ALL_SLOTS];
+    for (int slot : IncrementalModifiers.SUMMABLE_SLOTS) {
+      AdventureResult item = remaining[slot];
+      if (item != null && item != EquipmentRequest.UNEQUIP && this.isSummable(item.getItemId())) {
+        summed[slot] = item;
+        remaining[slot] = EquipmentRequest.UNEQUIP;
+      }
+    }
+
+    String key = IncrementalModifiers.getKey(spec, remaining);
+    Modifiers base = this.bases.get(key);
+    if (base == null) {
+      if (this.bases.size() >= IncrementalModifiers.MAX_BASES) {
+        this.bases.clear();
+      }
+      base = spec.calculate(remaining);
+      this.bases.put(key, base);
+    }
+
+    Modifiers mods = new Modifiers(base);
+    for (int slot : IncrementalModifiers.SUMMABLE_SLOTS) {
+      AdventureResult item = summed[slot];
+      if (item != null) {
+        this.addItem(mods, slot, item.getItemId());
+      }
+    }
+    return mods;
+  }
+
+  private static boolean isChampagne(AdventureResult item) {
+    return item != null && item.getItemId() == ItemPool.BROKEN_CHAMPAGNE;
+  }
+
+  private static String getKey(MaximizerSpeculation spec, AdventureResult[] equipment) {
+    StringBuilder key = new StringBuilder();
+    for (int slot = 0; slot < EquipmentManager.ALL_SLOTS; ++slot) {
+      AdventureResult item = equipment[slot];
+      key.append(item == null ? "" : String.valueOf(item.getItemId()));
+      key.append(',');
+    }
+    IncrementalModifiers.appendFamiliar(key, spec.getFamiliar());
+    IncrementalModifiers.appendFamiliar(key, spec.getEnthroned());
+    IncrementalModifiers.appendFamiliar(key, spec.getBjorned());
+    key.append(spec.getEdPiece()).append('\t');
+    key.append(spec.getSnowsuit()).append('\t');
+    key.append(spec.getCustom()).append('\t');
+    key.append(spec.getHorsery()).append('\t');
+    key.append(spec.getBoomBox()).append('\t');
+    key.append(spec.getRetroCape()).append('\t');
+    key.append(spec.getBackupCamera());
+    return key.toString();
+  }
+
+  private static void appendFamiliar(StringBuilder key, FamiliarData familiar) {
+    if (familiar != null) {
+      key.append(familiar.getId());
+      key.append(':');
+      key.append(familiar.getWeight());
+    }
+    key.append(',');
+  }
+
+  private boolean isSummable(int itemId) {
+    Boolean summable = this.summable.get(itemId);
+    if (summable == null) {
+      summable = IncrementalModifiers.isAdditive(itemId);
+      this.summable.put(itemId, summable);
+    }
+    return summable;
+  }
+
+  static boolean isAdditive(int itemId) {
+    switch (itemId) {
+        // Items that KoLCharacter.addItemAdjustment or recalculateAdjustments
+        // treat specially
+      case ItemPool.STICKER_SWORD:
+      case ItemPool.STICKER_CROSSBOW:
+      case ItemPool.CARD_SLEEVE:
+      case ItemPool.FOLDER_HOLDER:
+      case ItemPool.COWBOY_BOOTS:
+      case ItemPool.HATSEAT:
+      case ItemPool.BUDDY_BJORN:
+      case ItemPool.VAMPYRIC_CLOAKE:
+      case ItemPool.CROWN_OF_ED:
+      case ItemPool.KNOCK_OFF_RETRO_SUPERHERO_CAPE:
+      case ItemPool.BACKUP_CAMERA:
+      case ItemPool.SNOW_SUIT:
+      case ItemPool.MAKESHIFT_GARBAGE_SHIRT:
+        return false;
+    }
+
+    if (EquipmentDatabase.getOutfitWithItem(itemId) != -1) {
+      return false;
+    }
+
+    Modifiers imod = Modifiers.getItemModifiers(itemId);
+    if (imod == null) {
+      return true;
+    }
+
+    if (imod.variable
+        || imod.getBoolean(Modifiers.UNARMED)
+        || imod.getBoolean(Modifiers.NONSTACKABLE_WATCH)) {
+      return false;
+    }
+
+    // Boolean modifiers are simply OR-ed in, but other bitmaps count things
+    for (int i = Modifiers.BOOLEANS + 1; i < Modifiers.BITMAP_MODIFIERS; ++i) {
+      if (imod.getRawBitmap(i) != 0) {
+        return false;
+      }
+    }
+
+    for (int index : IncrementalModifiers.CALCULATED_STRINGS) {
+      if (!imod.getString(index).equals("")) {
+        return false;
+      }
+    }
+
+    for (int i = 0; i < Modifiers.DOUBLE_MODIFIERS; ++i) {
+      // Prismatic Damage is derived from the elemental damages on demand
+      if (i == Modifiers.PRISMATIC_DAMAGE) {
+        continue;
+      }
+      if (IncrementalModifiers.nonAdditive[i] && imod.get(i) != 0.0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private void addItem(Modifiers mods, int slot, int itemId) {
+    mods.add(Modifiers.getItemModifiers(itemId));
+
+    // Mirror the power-based adjustments in KoLCharacter.addItemAdjustment
+    switch (slot) {
+      case EquipmentManager.HAT:
+        mods.add(
+            Modifiers.DAMAGE_ABSORPTION,
+            this.taoFactor * EquipmentDatabase.getPower(itemId),
+            "Item:hat power");
+        break;
+
+      case EquipmentManager.PANTS:
+        mods.add(
+            Modifiers.DAMAGE_ABSORPTION,
+            this.taoFactor * EquipmentDatabase.getPower(itemId),
+            "Item:pants power");
+        break;
+
+      case EquipmentManager.SHIRT:
+        mods.add(
+            Modifiers.DAMAGE_ABSORPTION, EquipmentDatabase.getPower(itemId), "Item:shirt power");
+        break;
+    }
+  }
+}
@@ -1,10 +1,15 @@
 package net.sourceforge.kolmafia.maximizer;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import net.java.dev.spellcast.utilities.LockableListModel;
 import net.sourceforge.kolmafia.AdventureResult;
 import net.sourceforge.kolmafia.FamiliarData;
@@ -12,6 +17,7 @@ import net.sourceforge.kolmafia.KoLCharacter;
 import net.sourceforge.kolmafia.KoLConstants;
 import net.sourceforge.kolmafia.KoLmafia;
 import net.sourceforge.kolmafia.KoLmafiaCLI;
+import net.sourceforge.kolmafia.ModifierIndex;
 import net.sourceforge.kolmafia.Modifiers;
 import net.sourceforge.kolmafia.RequestLogger;
 import net.sourceforge.kolmafia.moods.MoodManager;
@@ -71,11 +77,45 @@ public class Maximizer {
   };
 
   static MaximizerSpeculation best;
+  private static Map<String, AdventureResult> batchBoostItems = null;
+  private static Modifiers batchSpec = null;
   static int bestChecked;
+  static int bestPruned;
   static long bestUpdate;
 
+  // If non-zero, the time at which the equipment search settles for the best
+  // combination it has found so far
+  static long deadline = 0;
+
+  private static final List<MaximizerListener> listeners = new CopyOnWriteArrayList<>();
+
+  public static void addListener(MaximizerListener listener) {
+    Maximizer.listeners.add(listener);
+  }
+
+  public static void removeListener(MaximizerListener listener) {
+    Maximizer.listeners.remove(listener);
+  }
+
+  static void fireImproved(MaximizerSpeculation best) {
+    for (MaximizerListener listener : Maximizer.listeners) {
+      listener.improved(best);
+    }
+  }
+
   public static boolean maximize(
       String maximizerString, int maxPrice, int priceLevel, boolean isSpeculationOnly) {
+    return Maximizer.maximize(maximizerString, maxPrice, priceLevel, isSpeculationOnly, 0);
+  }
+
+  // With a positive timeLimit, in milliseconds, the equipment search returns the
+  // best combination found by then rather than insisting on the optimal one.
+  public static boolean maximize(
+      String maximizerString,
+      int maxPrice,
+      int priceLevel,
+      boolean isSpeculationOnly,
+      long timeLimit) {
     MaximizerFrame.expressionSelect.setSelectedItem(maximizerString);
     int equipScope = isSpeculationOnly ? 0 : -1;
 
@@ -85,18 +125,62 @@ public class Maximizer {
 
     KoLmafiaCLI.isExecutingCheckOnlyCommand = false;
 
-    Maximizer.maximize(equipScope, maxPrice, priceLevel, false, 0);
+    Maximizer.deadline = timeLimit > 0 ? System.currentTimeMillis() + timeLimit : 0;
+    try {
+      Maximizer.maximize(equipScope, maxPrice, priceLevel, false, 0);
+    } finally {
+      Maximizer.deadline = 0;
+    }
 
     if (!KoLmafia.permitsContinue()) {
       return false;
     }
 
     Modifiers mods = Maximizer.best.calculate();
-    Modifiers.overrideModifier("Generated:_spec", mods);
+    if (Maximizer.batchBoostItems != null) {
+      // Changing it throws away the modifier index, so a batch sets it once, when done
+      Maximizer.batchSpec = mods;
+    } else {
+      Modifiers.overrideModifier("Generated:_spec", mods);
+    }
 
     return !Maximizer.best.failed;
   }
 
+  // Simulates each expression in turn, returning the suggestions for each.  Item
+  // availability, the equipment, outfits and familiars to consider, and the items behind
+  // each boost are looked up once for the whole batch rather than once per expression.
+  public static Map<String, List<Boost>> maximizeBatch(
+      List<String> expressions, int maxPrice, int priceLevel) {
+    Map<String, List<Boost>> results = new LinkedHashMap<>();
+
+    CheckedItem.beginBatch();
+    Evaluator.beginBatch();
+    Maximizer.batchBoostItems = new HashMap<>();
+    Maximizer.batchSpec = null;
+    try {
+      for (String expression : expressions) {
+        // An expression that can't be parsed gets no suggestions
+        if (!Maximizer.maximize(expression, maxPrice, priceLevel, true)
+            && !KoLmafia.permitsContinue()) {
+          results.put(expression, new ArrayList<>());
+          continue;
+        }
+        results.put(expression, new ArrayList<>(Maximizer.boosts));
+      }
+    } finally {
+      CheckedItem.endBatch();
+      Evaluator.endBatch();
+      Maximizer.batchBoostItems = null;
+      if (Maximizer.batchSpec != null) {
+        Modifiers.overrideModifier("Generated:_spec", Maximizer.batchSpec);
+        Maximizer.batchSpec = null;
+      }
+    }
+
+    return results;
+  }
+
   public static void maximize(
       int equipScope,
       int maxPrice,
@@ -108,12 +192,39 @@ public class Maximizer {
     RequestLogger.printLine("Maximizer: " + maxMe);
     RequestLogger.updateSessionLog("Maximizer: " + maxMe);
     KoLConstants.maximizerMList.addItem(maxMe);
+
+    String key = MaximizerCache.getKey(maxMe, equipScope, maxPrice, priceLevel, includeAll, filter);
+    MaximizerCache.Result cached = MaximizerCache.get(key);
+    if (cached != null) {
+      RequestLogger.updateDebugLog("Using cached maximizer results");
+      // Parsing the expression is cheap next to the search it saves
+      Maximizer.eval = new Evaluator(maxMe);
+      Maximizer.best = cached.best.copyEquipment();
+      Maximizer.boosts.clear();
+      Maximizer.boosts.addAll(cached.boosts);
+      return;
+    }
+
+    // Interrupted or failed searches are not worth remembering
+    if (Maximizer.search(maxMe, equipScope, maxPrice, priceLevel, includeAll, filter)
+        && KoLmafia.permitsContinue()) {
+      MaximizerCache.store(key);
+    }
+  }
+
+  private static boolean search(
+      String maxMe,
+      int equipScope,
+      int maxPrice,
+      int priceLevel,
+      boolean includeAll,
+      EnumMap<KoLConstants.filterType, Boolean> filter) {
     Maximizer.eval = new Evaluator(maxMe);
     Integer filterCount = Math.toIntExact(filter.values().stream().filter(v -> v).count());
 
     // parsing error
     if (!KoLmafia.permitsContinue() || !filter.containsValue(true)) {
-      return;
+      return false;
     }
 
     // ensure current modifiers are up-to-date
@@ -130,6 +241,7 @@ public class Maximizer {
         Maximizer.firstTime ? "Maximizing (1st time may take a while)..." : "Maximizing...");
     Maximizer.firstTime = false;
 
+    boolean complete = true;
     Maximizer.boosts.clear();
     if (filter.getOrDefault(KoLConstants.filterType.EQUIP, false)) {
       Maximizer.best = new MaximizerSpeculation();
@@ -138,12 +250,22 @@ public class Maximizer {
       // due to some newly-added constraint (such as +melee):
       Maximizer.best.failed = true;
       Maximizer.bestChecked = 0;
+      Maximizer.bestPruned = 0;
       Maximizer.bestUpdate = System.currentTimeMillis() + 5000;
       try {
         Maximizer.eval.enumerateEquipment(equipScope, maxPrice, priceLevel);
       } catch (MaximizerExceededException e) {
         Maximizer.boosts.add(
             new Boost("", "(maximum achieved, no further combinations checked)", -1, null, 0.0));
+      } catch (MaximizerTimeoutException e) {
+        complete = false;
+        Maximizer.boosts.add(
+            new Boost(
+                "",
+                "<font color=red>(hit time limit, optimality not guaranteed)</font>",
+                -1,
+                null,
+                0.0));
       } catch (MaximizerLimitException e) {
         Maximizer.boosts.add(
             new Boost(
@@ -154,6 +276,7 @@ public class Maximizer {
                 0.0));
       } catch (MaximizerInterruptedException e) {
         KoLmafia.forceContinue();
+        complete = false;
         Maximizer.boosts.add(
             new Boost(
                 "",
@@ -187,10 +310,13 @@ public class Maximizer {
 
     // Show only equipment
     if (filter.getOrDefault(KoLConstants.filterType.EQUIP, true) && filterCount == 1) {
-      return;
+      return complete;
     }
 
-    Iterator<String> i = Modifiers.getAllModifiers();
+    Map<Integer, MaximizerSpeculation> effectSpecs =
+        Maximizer.prefetchBoostPrices(current, maxPrice, priceLevel, filter);
+
+    Iterator<String> i = Maximizer.getBoostLookups().iterator();
     while (i.hasNext()) {
       String lookup = i.next();
 
@@ -222,7 +348,7 @@ public class Maximizer {
         // Iterate over items to see if we have access to them
         int count = 0;
         for (int itemId : itemList) {
-          CheckedItem checkedItem = new CheckedItem(itemId, equipScope, maxPrice, priceLevel);
+          CheckedItem checkedItem = CheckedItem.get(itemId, equipScope, maxPrice, priceLevel);
           // We won't include unavailable items, as this just gets far too large
           String cmd, text;
           int price = 0;
@@ -327,7 +453,7 @@ public class Maximizer {
           continue;
         }
         // Check if we have access to item
-        CheckedItem checkedItem = new CheckedItem(itemId, equipScope, maxPrice, priceLevel);
+        CheckedItem checkedItem = CheckedItem.get(itemId, equipScope, maxPrice, priceLevel);
         // We won't include unavailable items, as this just gets far too large
         String cmd, text;
         int price = 0;
@@ -473,14 +599,25 @@ public class Maximizer {
 
       double delta;
       boolean isSpecial = false;
-      MaximizerSpeculation spec = new MaximizerSpeculation();
+      MaximizerSpeculation spec = effectSpecs.get(effectId);
       AdventureResult effect = EffectPool.get(effectId);
       name = effect.getName();
       boolean hasEffect = KoLConstants.activeEffects.contains(effect);
       Iterator<String> sources;
 
+      // Don't recalculate everything for an effect that can't change the score
+      if (!hasEffect && !Maximizer.eval.mayAffectScore(effectId)) {
+        continue;
+      }
+
+      if (spec == null) {
+        spec = new MaximizerSpeculation();
+        if (!hasEffect) {
+          spec.addEffect(effect);
+        }
+      }
+
       if (!hasEffect) {
-        spec.addEffect(effect);
         delta = spec.getScore() - current;
         if ((spec.getModifiers().getRawBitmap(Modifiers.MUTEX_VIOLATIONS)
                 & ~KoLCharacter.currentRawBitmapModifier(Modifiers.MUTEX_VIOLATIONS))
@@ -532,7 +669,7 @@ public class Maximizer {
       boolean orFlag = false;
       while (sources.hasNext()) {
         if (!KoLmafia.permitsContinue()) {
-          return;
+          return false;
         }
 
         String cmd, text;
@@ -616,15 +753,7 @@ public class Maximizer {
           }
 
           String iName = cmd.substring(cmd.indexOf(" ") + 3).trim();
-          if (cmd.startsWith("use ")) {
-            item = ItemFinder.getFirstMatchingItem(iName, false, Match.USE);
-          } else if (cmd.startsWith("chew ")) {
-            item = ItemFinder.getFirstMatchingItem(iName, false, Match.SPLEEN);
-          } else if (cmd.startsWith("drink ")) {
-            item = ItemFinder.getFirstMatchingItem(iName, false, Match.BOOZE);
-          } else if (cmd.startsWith("eat ")) {
-            item = ItemFinder.getFirstMatchingItem(iName, false, Match.FOOD);
-          }
+          item = Maximizer.getBoostItem(cmd);
 
           if (item != null) {
             int itemId = item.getItemId();
@@ -1342,7 +1471,7 @@ public class Maximizer {
             if (KoLCharacter.canInteract()) {
               showScope = 2;
             }
-            CheckedItem checkedItem = new CheckedItem(itemId, showScope, maxPrice, priceLevel);
+            CheckedItem checkedItem = CheckedItem.get(itemId, showScope, maxPrice, priceLevel);
             if (checkedItem.inventory > 0) {
             } else if (checkedItem.initial > 0) {
               String method = InventoryManager.simRetrieveItem(item, equipScope == -1, false);
@@ -1565,6 +1694,7 @@ public class Maximizer {
     }
 
     Maximizer.boosts.sort();
+    return complete;
   }
 
   // convert the old method to use the new method, in case it gets called from elsewhere...
@@ -1743,7 +1873,7 @@ public class Maximizer {
       }
       text = text + " (";
 
-      CheckedItem checkedItem = new CheckedItem(itemId, equipScope, maxPrice, priceLevel);
+      CheckedItem checkedItem = CheckedItem.get(itemId, equipScope, maxPrice, priceLevel);
 
       int price = 0;
 
@@ -1911,6 +2041,126 @@ public class Maximizer {
     return equipScope;
   }
 
+  // Returns the item consumed by a use, chew, drink or eat command
+  private static AdventureResult getBoostItem(final String cmd) {
+    if (Maximizer.batchBoostItems == null) {
+      return Maximizer.findBoostItem(cmd);
+    }
+    if (!Maximizer.batchBoostItems.containsKey(cmd)) {
+      Maximizer.batchBoostItems.put(cmd, Maximizer.findBoostItem(cmd));
+    }
+    return Maximizer.batchBoostItems.get(cmd);
+  }
+
+  private static AdventureResult findBoostItem(final String cmd) {
+    String iName = cmd.substring(cmd.indexOf(" ") + 3).trim();
+    if (cmd.startsWith("use ")) {
+      return ItemFinder.getFirstMatchingItem(iName, false, Match.USE);
+    } else if (cmd.startsWith("chew ")) {
+      return ItemFinder.getFirstMatchingItem(iName, false, Match.SPLEEN);
+    } else if (cmd.startsWith("drink ")) {
+      return ItemFinder.getFirstMatchingItem(iName, false, Match.BOOZE);
+    } else if (cmd.startsWith("eat ")) {
+      return ItemFinder.getFirstMatchingItem(iName, false, Match.FOOD);
+    }
+    return null;
+  }
+
+  // The modifier lookups the boost pass looks through.  In Noobcore any skill or item might
+  // be absorbed, so that is all of them; otherwise only horsery, boombox and effects.
+  private static List<String> getBoostLookups() {
+    List<String> lookups = new ArrayList<>();
+    if (KoLCharacter.inNoobcore()) {
+      Iterator<String> i = Modifiers.getAllModifiers();
+      while (i.hasNext()) {
+        lookups.add(i.next());
+      }
+      return lookups;
+    }
+    lookups.addAll(ModifierIndex.getLookups("Horsery"));
+    lookups.addAll(ModifierIndex.getLookups("BoomBox"));
+    lookups.addAll(ModifierIndex.getLookups("Effect"));
+    return lookups;
+  }
+
+  // Scores every effect the character doesn't have, and looks up the mall prices of the
+  // items granting the useful ones in a single batch, so that the boost pass finds them
+  // already cached.  The scored speculations are returned for the boost pass to reuse.
+  private static Map<Integer, MaximizerSpeculation> prefetchBoostPrices(
+      double current,
+      int maxPrice,
+      int priceLevel,
+      EnumMap<KoLConstants.filterType, Boolean> filter) {
+    Map<Integer, MaximizerSpeculation> effectSpecs = new HashMap<>();
+    if (priceLevel <= 0) {
+      return effectSpecs;
+    }
+
+    boolean currentPrices = Preferences.getBoolean("maximizerCurrentMallPrices");
+    List<AdventureResult> items = new ArrayList<>();
+
+    for (String lookup : ModifierIndex.getLookups("Effect")) {
+      int effectId = EffectDatabase.getEffectId(lookup.substring(7));
+      if (effectId == -1) {
+        continue;
+      }
+      AdventureResult effect = EffectPool.get(effectId);
+      if (KoLConstants.activeEffects.contains(effect) || !Maximizer.eval.mayAffectScore(effectId)) {
+        continue;
+      }
+
+      MaximizerSpeculation spec = new MaximizerSpeculation();
+      spec.addEffect(effect);
+      effectSpecs.put(effectId, spec);
+      if (spec.getScore() - current <= 0.0
+          && Maximizer.eval.checkConstraints(Modifiers.getEffectModifiers(effectId)) != 1) {
+        continue;
+      }
+
+      Iterator<String> sources = EffectDatabase.getAllActions(effectId);
+      while (sources.hasNext()) {
+        String cmd = sources.next();
+        KoLConstants.filterType type;
+        if (cmd.startsWith("use ")) {
+          type = KoLConstants.filterType.USABLE;
+        } else if (cmd.startsWith("chew ")) {
+          type = KoLConstants.filterType.SPLEEN;
+        } else if (cmd.startsWith("drink ")) {
+          type = KoLConstants.filterType.BOOZE;
+        } else if (cmd.startsWith("eat ")) {
+          type = KoLConstants.filterType.FOOD;
+        } else {
+          continue;
+        }
+        if (!filter.getOrDefault(type, false)) {
+          continue;
+        }
+
+        AdventureResult item = Maximizer.getBoostItem(cmd);
+        if (item == null) {
+          continue;
+        }
+        int itemId = item.getItemId();
+        int price = MallPriceDatabase.getPrice(itemId);
+        if (!ItemDatabase.isTradeable(itemId) || price > maxPrice * 2) {
+          continue;
+        }
+        // A recent historical price will do
+        if (!currentPrices && price > 0 && MallPriceDatabase.getAge(itemId) <= 7.0f) {
+          continue;
+        }
+        // Items on hand are only priced at the highest price level
+        if (priceLevel < 2 && InventoryManager.getAccessibleCount(itemId) > 0) {
+          continue;
+        }
+        items.add(item);
+      }
+    }
+
+    StoreManager.prefetchMallPrices(items);
+    return effectSpecs;
+  }
+
   private static boolean excludedTCRSItem(int itemId) {
     switch (itemId) {
       case ItemPool.DIETING_PILL:
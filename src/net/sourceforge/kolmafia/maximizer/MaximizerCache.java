@@ -0,0 +1,191 @@
+package net.sourceforge.kolmafia.maximizer;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.sourceforge.kolmafia.AdventureResult;
+import net.sourceforge.kolmafia.FamiliarData;
+import net.sourceforge.kolmafia.KoLAdventure;
+import net.sourceforge.kolmafia.KoLCharacter;
+import net.sourceforge.kolmafia.KoLConstants;
+import net.sourceforge.kolmafia.RequestLogger;
+import net.sourceforge.kolmafia.listener.CharacterListener;
+import net.sourceforge.kolmafia.listener.CharacterListenerRegistry;
+import net.sourceforge.kolmafia.preferences.Preferences;
+import net.sourceforge.kolmafia.session.EquipmentManager;
+
+// Remembers the results of recent maximizations, so that a script which asks for
+// the same simulation several times a turn gets the answer without another search.
+//
+// Results are keyed by the expression and options together with a fingerprint of
+// the character state the maximizer looks at: equipment, familiars, effects, inventory,
+// closet, storage, campground, location, stats, consumption and every preference, since
+// the modifiers of many things are read from preferences such as _voteModifier.  A
+// character status update empties the cache.
+//
+// Only the suggestions and the best combination's equipment are kept, not the search.
+
+public class MaximizerCache {
+  // Preferences which the maximizer itself changes, and which don't change what it suggests
+  private static final Set<String> IGNORED_PREFERENCES = Set.of("maximizerMRUList");
+
+  private static final Map<String, Result> results =
+      new LinkedHashMap<String, Result>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+          return this.size() > Preferences.getInteger("maximizerCacheSize");
+        }
+      };
+
+  private static int hits = 0;
+  private static int misses = 0;
+
+  private static final CharacterListener characterListener =
+      new CharacterListener(MaximizerCache::invalidate);
+
+  static {
+    CharacterListenerRegistry.addCharacterListener(MaximizerCache.characterListener);
+  }
+
+  private MaximizerCache() {}
+
+  static class Result {
+    final List<Boost> boosts;
+    final MaximizerSpeculation best;
+
+    Result(List<Boost> boosts, MaximizerSpeculation best) {
+      this.boosts = boosts;
+      this.best = best;
+    }
+  }
+
+  static synchronized Result get(final String key) {
+    Result result = MaximizerCache.results.get(key);
+    if (result == null) {
+      MaximizerCache.misses++;
+    } else {
+      MaximizerCache.hits++;
+    }
+    return result;
+  }
+
+  static synchronized void put(final String key, final Result result) {
+    if (Preferences.getInteger("maximizerCacheSize") > 0) {
+      MaximizerCache.results.put(key, result);
+    }
+  }
+
+  public static synchronized void invalidate() {
+    if (!MaximizerCache.results.isEmpty()) {
+      RequestLogger.updateDebugLog(
+          "Discarding " + MaximizerCache.results.size() + " maximizer results");
+      MaximizerCache.results.clear();
+    }
+  }
+
+  public static synchronized int size() {
+    return MaximizerCache.results.size();
+  }
+
+  public static synchronized int getHits() {
+    return MaximizerCache.hits;
+  }
+
+  public static synchronized int getMisses() {
+    return MaximizerCache.misses;
+  }
+
+  public static synchronized void resetCounters() {
+    MaximizerCache.hits = 0;
+    MaximizerCache.misses = 0;
+  }
+
+  static String getKey(
+      final String expression,
+      final int equipScope,
+      final int maxPrice,
+      final int priceLevel,
+      final boolean includeAll,
+      final EnumMap<KoLConstants.filterType, Boolean> filter) {
+    StringBuilder key = new StringBuilder();
+    key.append(expression.trim().replaceAll("\\s+", " ")).append('\n');
+    key.append(equipScope).append(',');
+    key.append(maxPrice).append(',');
+    key.append(priceLevel).append(',');
+    key.append(includeAll).append(',');
+    key.append(filter).append('\n');
+
+    for (AdventureResult item : EquipmentManager.currentEquipment()) {
+      key.append(item == null ? -1 : item.getItemId()).append(',');
+    }
+    key.append('\n');
+
+    MaximizerCache.appendFamiliar(key, KoLCharacter.getFamiliar());
+    MaximizerCache.appendFamiliar(key, KoLCharacter.getEnthroned());
+    MaximizerCache.appendFamiliar(key, KoLCharacter.getBjorned());
+    key.append('\n');
+
+    synchronized (KoLConstants.activeEffects) {
+      for (AdventureResult effect : KoLConstants.activeEffects) {
+        key.append(effect.getEffectId()).append(':').append(effect.getCount()).append(',');
+      }
+    }
+    key.append('\n');
+
+    KoLAdventure location = KoLCharacter.getSelectedLocation();
+    key.append(location == null ? "" : location.getAdventureName()).append('\n');
+
+    key.append(MaximizerCache.getHash(KoLConstants.inventory)).append(',');
+    key.append(MaximizerCache.getHash(KoLConstants.closet)).append(',');
+    key.append(MaximizerCache.getHash(KoLConstants.storage)).append(',');
+    key.append(MaximizerCache.getHash(KoLConstants.campground)).append(',');
+    key.append(KoLConstants.availableSkills.size()).append(',');
+    key.append(KoLCharacter.getCurrentRun()).append(',');
+    key.append(KoLCharacter.getAdventuresLeft()).append(',');
+    key.append(KoLCharacter.getLevel()).append(',');
+    key.append(KoLCharacter.getTotalMuscle()).append(',');
+    key.append(KoLCharacter.getTotalMysticality()).append(',');
+    key.append(KoLCharacter.getTotalMoxie()).append(',');
+    key.append(KoLCharacter.getCurrentHP()).append(',');
+    key.append(KoLCharacter.getCurrentMP()).append(',');
+    key.append(KoLCharacter.getAvailableMeat()).append(',');
+    key.append(KoLCharacter.getStorageMeat()).append(',');
+    key.append(KoLCharacter.getFullness()).append(',');
+    key.append(KoLCharacter.getInebriety()).append(',');
+    key.append(KoLCharacter.getSpleenUse()).append(',');
+    key.append(KoLCharacter.canInteract()).append(',');
+    key.append(KoLCharacter.getAscensionClass()).append(',');
+    key.append(KoLCharacter.getPath()).append('\n');
+
+    key.append(Preferences.getValuesHash(MaximizerCache.IGNORED_PREFERENCES));
+
+    return key.toString();
+  }
+
+  // Much cheaper than a maximization, even with a full inventory
+  private static int getHash(final List<AdventureResult> items) {
+    int hash = 0;
+    synchronized (items) {
+      for (AdventureResult item : items) {
+        hash = 31 * hash + item.getItemId();
+        hash = 31 * hash + item.getCount();
+      }
+    }
+    return hash;
+  }
+
+  private static void appendFamiliar(final StringBuilder key, final FamiliarData familiar) {
+    if (familiar != null) {
+      key.append(familiar.getId()).append(':').append(familiar.getWeight());
+    }
+    key.append(',');
+  }
+
+  static void store(final String key) {
+    MaximizerCache.put(
+        key, new Result(new ArrayList<Boost>(Maximizer.boosts), Maximizer.best.copyEquipment()));
+  }
+}
@@ -0,0 +1,10 @@
+package net.sourceforge.kolmafia.maximizer;
+
+// Told about each combination which beats the best one the equipment search has found so far.
+// The search always calls this on the thread which started it, in the order the improvements
+// were found, while the search is still running; implementations should only look at the
+// combination they are given.
+
+public interface MaximizerListener {
+  void improved(MaximizerSpeculation best);
+}
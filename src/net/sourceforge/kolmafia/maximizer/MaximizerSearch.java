@@ -0,0 +1,273 @@
+package net.sourceforge.kolmafia.maximizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.sourceforge.kolmafia.AdventureResult;
+import net.sourceforge.kolmafia.FamiliarData;
+import net.sourceforge.kolmafia.KoLmafia;
+import net.sourceforge.kolmafia.Modifiers;
+import net.sourceforge.kolmafia.StaticEntity;
+
+// Searches the equipment combinations for each familiar and outfit as its own fork-join task.
+//
+// Every task scores with its own copy of the evaluator and its own Modifiers context, and
+// keeps its own best combination.  The tasks' bests are reduced in the order the serial
+// search visits them, so the winner is the one the serial search would have picked.  The
+// thread which started the search waits for the tasks, passing on improvements and progress
+// and checking whether it has been told to stop, as it would in a serial search.
+
+class MaximizerSearch {
+  private static ForkJoinPool pool = null;
+
+  private final List<Branch> branches = new ArrayList<>();
+  private final MaximizerSpeculation initial;
+  private final List<FamiliarData> enthronedFamiliars;
+  private final AdventureResult bestCard;
+  private final FamiliarData useCrownFamiliar;
+  private final FamiliarData useBjornFamiliar;
+
+  private final AtomicInteger checked = new AtomicInteger();
+  private final AtomicInteger pruned = new AtomicInteger();
+
+  // New bests found by the tasks, for the searching thread to pass on
+  private final Queue<MaximizerSpeculation> improvements = new ConcurrentLinkedQueue<>();
+  private MaximizerSpeculation leader;
+
+  // Index of the first branch that achieved the maximum possible score.
+  // Later branches are abandoned, exactly as the serial search never visits them.
+  private volatile int stopAt = Integer.MAX_VALUE;
+
+  // Set if the combination limit or time limit was hit, or the search was interrupted
+  private volatile MaximizerInterruptedException halted = null;
+
+  MaximizerSearch(
+      List<FamiliarData> enthronedFamiliars,
+      AdventureResult bestCard,
+      FamiliarData useCrownFamiliar,
+      FamiliarData useBjornFamiliar) {
+    this.initial = Maximizer.best;
+    this.leader = Maximizer.best;
+    this.enthronedFamiliars = enthronedFamiliars;
+    this.bestCard = bestCard;
+    this.useCrownFamiliar = useCrownFamiliar;
+    this.useBjornFamiliar = useBjornFamiliar;
+  }
+
+  private static synchronized ForkJoinPool getPool() {
+    if (MaximizerSearch.pool == null) {
+      MaximizerSearch.pool =
+          new ForkJoinPool(
+              Runtime.getRuntime().availableProcessors(),
+              pool -> {
+                ForkJoinWorkerThread thread =
+                    new ForkJoinWorkerThread(pool) {
+                      @Override
+                      protected void onStart() {
+                        super.onStart();
+                        StaticEntity.useOwnContinuationState();
+                      }
+                    };
+                thread.setName("Maximizer search");
+                thread.setDaemon(true);
+                return thread;
+              },
+              null,
+              false);
+    }
+    return MaximizerSearch.pool;
+  }
+
+  // Searches from the speculation's current equipment and familiar as a task of its own
+  void addBranch(MaximizerSpeculation spec, List<CheckedItem>[] possibles) {
+    this.branches.add(new Branch(this, this.branches.size(), spec, possibles.clone()));
+  }
+
+  void run() throws MaximizerInterruptedException {
+    // Work out everything a comparison with the initial combination reads, so the
+    // tasks only ever read it
+    this.initial.getTiebreaker();
+
+    ForkJoinPool pool = MaximizerSearch.getPool();
+    for (Branch branch : this.branches) {
+      pool.execute(branch);
+    }
+
+    for (Branch branch : this.branches) {
+      this.await(branch);
+    }
+    this.report();
+
+    MaximizerSpeculation best = this.initial;
+    for (Branch branch : this.branches) {
+      if (branch.index > this.stopAt) {
+        break;
+      }
+      if (branch.error != null) {
+        throw branch.error;
+      }
+      if (branch.best != this.initial && branch.best.compareTo(best) > 0) {
+        best = branch.best;
+      }
+    }
+    Maximizer.best = best;
+    Maximizer.bestChecked = this.checked.get();
+    Maximizer.bestPruned = this.pruned.get();
+
+    if (this.halted != null) {
+      throw this.halted;
+    }
+    if (this.stopAt != Integer.MAX_VALUE) {
+      throw this.branches.get(this.stopAt).exception;
+    }
+  }
+
+  private void await(Branch branch) {
+    while (!branch.isDone()) {
+      this.report();
+      if (!KoLmafia.permitsContinue()) {
+        this.halt(null, new MaximizerInterruptedException());
+      }
+      try {
+        branch.get(100, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        // Still searching
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        this.halt(null, new MaximizerInterruptedException());
+        branch.join();
+      } catch (ExecutionException e) {
+        this.halt(null, new MaximizerInterruptedException());
+        throw new RuntimeException(e.getCause());
+      }
+    }
+  }
+
+  // Passes on the new bests and progress on the searching thread
+  private void report() {
+    MaximizerSpeculation spec;
+    while ((spec = this.improvements.poll()) != null) {
+      if (spec.compareTo(this.leader) > 0) {
+        this.leader = spec;
+        // Maximizer.best only tracks the leader for progress reports;
+        // the real winner is picked when the branches are reduced.
+        Maximizer.best = spec;
+        Maximizer.fireImproved(spec);
+      }
+    }
+
+    Maximizer.bestChecked = this.checked.get();
+    Maximizer.bestPruned = this.pruned.get();
+    long t = System.currentTimeMillis();
+    if (t > Maximizer.bestUpdate) {
+      MaximizerSpeculation.showProgress();
+      Maximizer.bestUpdate = t + 5000;
+    }
+  }
+
+  private synchronized void halt(Branch branch, MaximizerInterruptedException e) {
+    if (e instanceof MaximizerExceededException) {
+      this.stopAt = Math.min(this.stopAt, branch.index);
+    } else if (this.halted == null) {
+      this.halted = e;
+    }
+  }
+
+  static class Branch extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final MaximizerSearch search;
+    private final int index;
+    private final MaximizerSpeculation spec;
+    private final List<CheckedItem>[] possibles;
+    private final Evaluator eval;
+    private final Modifiers.Context context;
+
+    private MaximizerSpeculation best;
+    private MaximizerInterruptedException exception;
+    private RuntimeException error;
+    private boolean cancelled = false;
+
+    Branch(
+        MaximizerSearch search,
+        int index,
+        MaximizerSpeculation spec,
+        List<CheckedItem>[] possibles) {
+      this.search = search;
+      this.index = index;
+      this.possibles = possibles;
+      this.eval = Maximizer.eval.copy();
+      this.context = Modifiers.copyContext();
+      this.best = search.initial;
+      this.spec = spec.copyForBranch(this);
+    }
+
+    Evaluator getEvaluator() {
+      return this.eval;
+    }
+
+    MaximizerSpeculation getBest() {
+      return this.best;
+    }
+
+    int getChecked() {
+      return this.search.checked.get();
+    }
+
+    void prune() {
+      this.search.pruned.incrementAndGet();
+    }
+
+    @Override
+    protected void compute() {
+      Modifiers.Context previous = Modifiers.setContext(this.context);
+      try {
+        this.spec.tryFamiliarItems(
+            this.search.enthronedFamiliars,
+            this.possibles,
+            this.search.bestCard,
+            this.search.useCrownFamiliar,
+            this.search.useBjornFamiliar);
+      } catch (MaximizerInterruptedException e) {
+        this.exception = e;
+        if (!this.cancelled) {
+          this.search.halt(this, e);
+        }
+      } catch (RuntimeException e) {
+        this.error = e;
+        this.search.halt(this, new MaximizerInterruptedException());
+      } finally {
+        Modifiers.setContext(previous);
+      }
+    }
+
+    // Called for every complete combination in this branch
+    void offer(MaximizerSpeculation spec) {
+      if (spec.compareTo(this.best) > 0) {
+        // Work out everything a comparison reads, so that the copy can be
+        // compared on the searching thread
+        spec.getTiebreaker();
+        this.best = spec.copyResult();
+        this.search.improvements.add(this.best);
+      }
+      this.search.checked.incrementAndGet();
+    }
+
+    // Whether the branch should stop: the search has been halted, or an earlier
+    // branch achieved the maximum possible score
+    boolean shouldStop() {
+      if (this.index > this.search.stopAt || this.search.halted != null) {
+        this.cancelled = true;
+      }
+      return this.cancelled;
+    }
+  }
+}
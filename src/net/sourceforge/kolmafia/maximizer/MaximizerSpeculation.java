@@ -1,5 +1,6 @@
 package net.sourceforge.kolmafia.maximizer;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import net.sourceforge.kolmafia.AdventureResult;
@@ -31,6 +32,14 @@ public class MaximizerSpeculation extends Speculation
   public boolean failed = false;
   public CheckedItem attachment;
   private boolean foldables = false;
+  // Set while tryAll is handing out the branches of a parallel search
+  private MaximizerSearch search = null;
+  // Set when this speculation explores one branch of a parallel search
+  private MaximizerSearch.Branch branch = null;
+  // Shared by all the speculations of one search, or one branch of a parallel search
+  private IncrementalModifiers incremental = null;
+  // Upper bounds on how much each slot can add to the score, or null if unknown
+  private double[] slotBounds = null;
 
   @Override
   public Object clone() {
@@ -43,6 +52,40 @@ public class MaximizerSpeculation extends Speculation
     }
   }
 
+  // A copy to keep as the best found so far. The search's working state is left behind, so
+  // that it can be collected once the search is over.
+  MaximizerSpeculation copyResult() {
+    MaximizerSpeculation copy = (MaximizerSpeculation) this.clone();
+    copy.search = null;
+    copy.branch = null;
+    copy.incremental = null;
+    copy.slotBounds = null;
+    return copy;
+  }
+
+  // A copy to explore one branch of a parallel search, with working state of its own
+  MaximizerSpeculation copyForBranch(MaximizerSearch.Branch branch) {
+    MaximizerSpeculation copy = (MaximizerSpeculation) this.clone();
+    copy.search = null;
+    copy.branch = branch;
+    copy.incremental = new IncrementalModifiers(copy);
+    return copy;
+  }
+
+  private Evaluator getEvaluator() {
+    return this.branch != null ? this.branch.getEvaluator() : Maximizer.eval;
+  }
+
+  // A copy of just the equipment and its settings, for the cache of results. The modifiers
+  // are worked out again when they are next needed.
+  MaximizerSpeculation copyEquipment() {
+    MaximizerSpeculation copy = this.copyResult();
+    copy.attachment = null;
+    copy.mods = null;
+    copy.calculated = false;
+    return copy;
+  }
+
   @Override
   public String toString() {
     if (this.attachment != null) {
@@ -51,6 +94,30 @@ public class MaximizerSpeculation extends Speculation
     return super.toString();
   }
 
+  @Override
+  public Modifiers calculate() {
+    Modifiers mods =
+        this.incremental == null ? null : this.incremental.calculate(this, this.equipment);
+    if (mods == null) {
+      return super.calculate();
+    }
+    this.mods = mods;
+    this.calculated = true;
+    return mods;
+  }
+
+  // Fully calculate the modifiers with some other equipment
+  Modifiers calculate(AdventureResult[] equipment) {
+    AdventureResult[] saved = this.equipment;
+    this.equipment = equipment;
+    try {
+      return super.calculate();
+    } finally {
+      this.equipment = saved;
+      this.calculated = false;
+    }
+  }
+
   public void setUnscored() {
     this.scored = false;
     this.calculated = false;
@@ -59,19 +126,20 @@ public class MaximizerSpeculation extends Speculation
   public double getScore() {
     if (this.scored) return this.score;
     if (!this.calculated) this.calculate();
-    this.score = Maximizer.eval.getScore(this.mods, this.equipment);
+    Evaluator eval = this.getEvaluator();
+    this.score = eval.getScore(this.mods, this.equipment);
     if (KoLCharacter.inBeecore()) {
       this.beeosity = KoLCharacter.getBeeosity(this.equipment);
     }
-    Maximizer.eval.checkEquipment(this.mods, this.equipment, this.beeosity);
-    this.failed = Maximizer.eval.failed;
+    eval.checkEquipment(this.mods, this.equipment, this.beeosity);
+    this.failed = eval.failed;
     if ((this.mods.getRawBitmap(Modifiers.MUTEX_VIOLATIONS)
             & ~KoLCharacter.currentRawBitmapModifier(Modifiers.MUTEX_VIOLATIONS))
         != 0) { // We're speculating about something that would create a
       // mutex problem that the player didn't already have.
       this.failed = true;
     }
-    this.exceeded = Maximizer.eval.exceeded;
+    this.exceeded = eval.exceeded;
     this.scored = true;
     return this.score;
   }
@@ -79,7 +147,7 @@ public class MaximizerSpeculation extends Speculation
   public double getTiebreaker() {
     if (this.tiebreakered) return this.tiebreaker;
     if (!this.calculated) this.calculate();
-    this.tiebreaker = Maximizer.eval.getTiebreaker(this.mods);
+    this.tiebreaker = this.getEvaluator().getTiebreaker(this.mods);
     this.tiebreakered = true;
     this.simplicity = 0;
     for (int slot = 0; slot < EquipmentManager.ALL_SLOTS; ++slot) {
@@ -202,6 +270,13 @@ public class MaximizerSpeculation extends Speculation
       FamiliarData useBjornFamiliar)
       throws MaximizerInterruptedException {
     this.foldables = Preferences.getBoolean("maximizerFoldables");
+    this.incremental = new IncrementalModifiers(this);
+    this.slotBounds =
+        this.incremental.isUsable() ? MaximizerSpeculation.getSlotBounds(possibles) : null;
+    if (Preferences.getBoolean("maximizerParallelSearch")) {
+      this.search =
+          new MaximizerSearch(enthronedFamiliars, bestCard, useCrownFamiliar, useBjornFamiliar);
+    }
     this.tryOutfits(
         enthronedFamiliars,
         usefulOutfits,
@@ -222,6 +297,11 @@ public class MaximizerSpeculation extends Speculation
           useCrownFamiliar,
           useBjornFamiliar);
     }
+    if (this.search != null) {
+      MaximizerSearch search = this.search;
+      this.search = null;
+      search.run();
+    }
   }
 
   public void tryOutfits(
@@ -240,7 +320,7 @@ public class MaximizerSpeculation extends Speculation
       pieceloop:
       for (int idx = pieces.length - 1; ; --idx) {
         if (idx == -1) { // all pieces successfully put on
-          this.tryFamiliarItems(
+          this.searchFamiliarItems(
               enthronedFamiliars, possibles, bestCard, useCrownFamiliar, useBjornFamiliar);
           break;
         }
@@ -297,6 +377,22 @@ public class MaximizerSpeculation extends Speculation
       this.restore(mark);
     }
 
+    this.searchFamiliarItems(
+        enthronedFamiliars, possibles, bestCard, useCrownFamiliar, useBjornFamiliar);
+  }
+
+  // In a parallel search, each familiar and outfit is searched as a task of its own
+  private void searchFamiliarItems(
+      List<FamiliarData> enthronedFamiliars,
+      List<CheckedItem>[] possibles,
+      AdventureResult bestCard,
+      FamiliarData useCrownFamiliar,
+      FamiliarData useBjornFamiliar)
+      throws MaximizerInterruptedException {
+    if (this.search != null) {
+      this.search.addBranch(this, possibles);
+      return;
+    }
     this.tryFamiliarItems(
         enthronedFamiliars, possibles, bestCard, useCrownFamiliar, useBjornFamiliar);
   }
@@ -497,6 +593,7 @@ public class MaximizerSpeculation extends Speculation
       AdventureResult bestCard,
       FamiliarData useCrownFamiliar)
       throws MaximizerInterruptedException {
+    if (this.cannotBeatBest()) return;
     Object mark = this.mark();
     if (this.equipment[EquipmentManager.HAT] == null) {
       List<CheckedItem> possible = possibles[EquipmentManager.HAT];
@@ -596,6 +693,7 @@ public class MaximizerSpeculation extends Speculation
 
   public void tryPants(List<CheckedItem>[] possibles, AdventureResult bestCard)
       throws MaximizerInterruptedException {
+    if (this.cannotBeatBest()) return;
     Object mark = this.mark();
     if (this.equipment[EquipmentManager.PANTS] == null) {
       List<CheckedItem> possible = possibles[EquipmentManager.PANTS];
@@ -659,6 +757,7 @@ public class MaximizerSpeculation extends Speculation
 
   public void tryWeapons(List<CheckedItem>[] possibles, AdventureResult bestCard)
       throws MaximizerInterruptedException {
+    if (this.cannotBeatBest()) return;
     Object mark = this.mark();
     boolean chefstaffable =
         KoLCharacter.hasSkill("Spirit of Rigatoni") || KoLCharacter.isJarlsberg();
@@ -705,7 +804,7 @@ public class MaximizerSpeculation extends Speculation
       }
 
       // if ( any && <no unarmed items in shortlists> ) return;
-      if (Maximizer.eval.melee < -1 || Maximizer.eval.melee > 1) {
+      if (this.getEvaluator().melee < -1 || this.getEvaluator().melee > 1) {
         return;
       }
       this.equipment[EquipmentManager.WEAPON] = EquipmentRequest.UNEQUIP;
@@ -784,32 +883,42 @@ public class MaximizerSpeculation extends Speculation
     this.calculated = false;
     this.scored = false;
     this.tiebreakered = false;
-    if (Maximizer.best == null) {
-      RequestLogger.updateSessionLog(
-          "Maximizer about to throw LimitExceeded because of null best.");
-      // this isn't really what is happening but trying to understand why this is happening, first.
-      throw new MaximizerLimitException();
-    }
-    if (this.compareTo(Maximizer.best) > 0) {
-      Maximizer.best = (MaximizerSpeculation) this.clone();
-    }
-    Maximizer.bestChecked++;
-    long t = System.currentTimeMillis();
-    if (t > Maximizer.bestUpdate) {
-      MaximizerSpeculation.showProgress();
-      Maximizer.bestUpdate = t + 5000;
+    if (this.branch != null) {
+      this.branch.offer(this);
+    } else {
+      if (Maximizer.best == null) {
+        RequestLogger.updateSessionLog(
+            "Maximizer about to throw LimitExceeded because of null best.");
+        // this isn't really what is happening but trying to understand why this is happening,
+        // first.
+        throw new MaximizerLimitException();
+      }
+      if (this.compareTo(Maximizer.best) > 0) {
+        Maximizer.best = this.copyResult();
+        Maximizer.fireImproved(Maximizer.best);
+      }
+      Maximizer.bestChecked++;
+      long t = System.currentTimeMillis();
+      if (t > Maximizer.bestUpdate) {
+        MaximizerSpeculation.showProgress();
+        Maximizer.bestUpdate = t + 5000;
+      }
     }
     this.restore(mark);
-    if (!KoLmafia.permitsContinue()) {
+    if (this.branch != null ? this.branch.shouldStop() : !KoLmafia.permitsContinue()) {
       throw new MaximizerInterruptedException();
     }
     if (this.exceeded) {
       throw new MaximizerExceededException();
     }
     long comboLimit = Preferences.getLong("maximizerCombinationLimit");
-    if (comboLimit != 0 && Maximizer.bestChecked >= comboLimit) {
+    int checked = this.branch != null ? this.branch.getChecked() : Maximizer.bestChecked;
+    if (comboLimit != 0 && checked >= comboLimit) {
       throw new MaximizerLimitException();
     }
+    if (Maximizer.deadline != 0 && System.currentTimeMillis() >= Maximizer.deadline) {
+      throw new MaximizerTimeoutException();
+    }
   }
 
   private static int getMutex(AdventureResult item) {
@@ -853,10 +962,104 @@ public class MaximizerSpeculation extends Speculation
     }
   }
 
+  private static double[] getSlotBounds(List<CheckedItem>[] possibles) {
+    double[] bounds = new double[EquipmentManager.FAMILIAR + 1];
+    Arrays.fill(bounds, Double.POSITIVE_INFINITY);
+    for (int slot = 0; slot < EquipmentManager.FAMILIAR; ++slot) {
+      switch (slot) {
+        case EquipmentManager.ACCESSORY2:
+        case EquipmentManager.ACCESSORY3:
+          bounds[slot] = bounds[EquipmentManager.ACCESSORY1];
+          break;
+        case EquipmentManager.WEAPON:
+        case EquipmentManager.OFFHAND:
+          // Expert Panhandling depends on the class of the mainhand weapon
+          if (KoLCharacter.hasSkill("Expert Panhandling")) {
+            break;
+          }
+          bounds[slot] = MaximizerSpeculation.getSlotBound(possibles[slot], slot);
+          if (slot == EquipmentManager.OFFHAND) {
+            bounds[slot] =
+                Math.max(
+                    bounds[slot],
+                    Math.max(
+                        MaximizerSpeculation.getSlotBound(possibles[Evaluator.OFFHAND_MELEE], slot),
+                        MaximizerSpeculation.getSlotBound(
+                            possibles[Evaluator.OFFHAND_RANGED], slot)));
+          }
+          break;
+        default:
+          bounds[slot] = MaximizerSpeculation.getSlotBound(possibles[slot], slot);
+          break;
+      }
+    }
+    return bounds;
+  }
+
+  private static double getSlotBound(List<CheckedItem> possible, int slot) {
+    // Leaving the slot empty is always possible
+    double bound = 0.0;
+    for (CheckedItem item : possible) {
+      bound = Math.max(bound, Maximizer.eval.getMaximumGain(item, slot));
+    }
+    return bound;
+  }
+
+  // Branch and bound: returns true if no way of filling the remaining empty
+  // slots can beat the best combination found so far.
+  private boolean cannotBeatBest() {
+    if (this.slotBounds == null) {
+      return false;
+    }
+
+    AdventureResult[] equipment = this.equipment.clone();
+    // Allow for the rollover effect fudge factor and rounding
+    double bound = 0.02;
+    for (int slot = 0; slot <= EquipmentManager.FAMILIAR; ++slot) {
+      if (equipment[slot] == null) {
+        bound += this.slotBounds[slot];
+        equipment[slot] = EquipmentRequest.UNEQUIP;
+      }
+    }
+    if (bound == Double.POSITIVE_INFINITY) {
+      return false;
+    }
+
+    // A branch of a parallel search only knows the best it has found itself
+    MaximizerSpeculation leader = this.branch != null ? this.branch.getBest() : Maximizer.best;
+    double best = leader.getScore();
+    if (leader.failed) {
+      return false;
+    }
+
+    Modifiers mods = this.incremental.calculate(this, equipment);
+    if (mods == null) {
+      mods = this.calculate(equipment);
+    }
+    // Unarmed modifiers would be lost by equipping a weapon or offhand
+    if (mods.getBoolean(Modifiers.UNARMED)
+        && (this.equipment[EquipmentManager.WEAPON] == null
+            || this.equipment[EquipmentManager.OFFHAND] == null)) {
+      return false;
+    }
+
+    if (this.getEvaluator().getScore(mods, equipment) + bound >= best) {
+      return false;
+    }
+    if (this.branch != null) {
+      this.branch.prune();
+    } else {
+      Maximizer.bestPruned++;
+    }
+    return true;
+  }
+
   public static void showProgress() {
     StringBuilder msg = new StringBuilder();
     msg.append(Maximizer.bestChecked);
-    msg.append(" combinations checked, best score ");
+    msg.append(" combinations checked, ");
+    msg.append(Maximizer.bestPruned);
+    msg.append(" pruned, best score ");
     double score = Maximizer.best.getScore();
     msg.append(KoLConstants.FLOAT_FORMAT.format(score));
     if (Maximizer.best.failed) {
@@ -0,0 +1,5 @@
+package net.sourceforge.kolmafia.maximizer;
+
+public class MaximizerTimeoutException extends MaximizerInterruptedException {
+  private static final long serialVersionUID = 1L;
+}
@@ -73,6 +73,34 @@ public class Concoction implements Comparable<Concoction> {
   public int visibleTotal;
   public int freeTotal;
 
+  // What the last refresh started from and worked out, so that the next one can tell whether
+  // this concoction's starting quantities changed, and put back its results if nothing it
+  // depends on did.
+  private boolean started = false;
+  private int lastInitial;
+  private int lastPrice;
+  private int lastStartCreatable;
+  private int lastStartTotal;
+  private int lastTotal;
+  private int lastCreatable;
+  private int lastVisibleTotal;
+  private int lastFreeTotal;
+
+  // Whether the last refresh found that none of this can be had at all
+  private boolean unobtainable = false;
+
+  // The quantities the item lists last showed, so that a refresh need only repaint the rows
+  // whose quantities changed
+  private boolean shown = false;
+  private int shownInitial;
+  private int shownPrice;
+  private int shownTotal;
+  private int shownCreatable;
+  private int shownPullable;
+  private int shownVisibleTotal;
+  private int shownFreeTotal;
+  private int shownQueued;
+
   public boolean special;
   public boolean hotdog;
   public boolean fancydog;
@@ -566,6 +594,7 @@ public class Concoction implements Comparable<Concoction> {
 
   public void setPurchaseRequest(final PurchaseRequest purchaseRequest) {
     this.purchaseRequest = purchaseRequest;
+    ConcoctionGraph.invalidate();
   }
 
   public boolean hasIngredients(final AdventureResult[] ingredients) {
@@ -744,6 +773,66 @@ public class Concoction implements Comparable<Concoction> {
     }
   }
 
+  // Whether the starting quantities differ from those of the last refresh
+  public boolean startChanged() {
+    return !this.started
+        || this.initial != this.lastInitial
+        || this.price != this.lastPrice
+        || this.creatable != this.lastStartCreatable
+        || this.total != this.lastStartTotal;
+  }
+
+  public boolean priceChanged() {
+    return !this.started || this.price != this.lastPrice;
+  }
+
+  public void rememberStart() {
+    this.started = true;
+    this.lastInitial = this.initial;
+    this.lastPrice = this.price;
+    this.lastStartCreatable = this.creatable;
+    this.lastStartTotal = this.total;
+  }
+
+  public void rememberCalculations() {
+    this.lastTotal = this.total;
+    this.lastCreatable = this.creatable;
+    this.lastVisibleTotal = this.visibleTotal;
+    this.lastFreeTotal = this.freeTotal;
+  }
+
+  public void restoreCalculations() {
+    this.total = this.lastTotal;
+    this.creatable = this.lastCreatable;
+    this.visibleTotal = this.lastVisibleTotal;
+    this.freeTotal = this.lastFreeTotal;
+  }
+
+  // Whether any quantity the item lists show has changed since this was last called
+  public boolean shownChanged() {
+    boolean changed =
+        !this.shown
+            || this.initial != this.shownInitial
+            || this.price != this.shownPrice
+            || this.total != this.shownTotal
+            || this.creatable != this.shownCreatable
+            || this.pullable != this.shownPullable
+            || this.visibleTotal != this.shownVisibleTotal
+            || this.freeTotal != this.shownFreeTotal
+            || this.queued != this.shownQueued;
+
+    this.shown = true;
+    this.shownInitial = this.initial;
+    this.shownPrice = this.price;
+    this.shownTotal = this.total;
+    this.shownCreatable = this.creatable;
+    this.shownPullable = this.pullable;
+    this.shownVisibleTotal = this.visibleTotal;
+    this.shownFreeTotal = this.freeTotal;
+    this.shownQueued = this.queued;
+    return changed;
+  }
+
   public void setPullable(final int pullable) {
     this.pullable = pullable;
     this.total += pullable;
@@ -761,6 +850,7 @@ public class Concoction implements Comparable<Concoction> {
   public void resetIngredients() {
     this.ingredients.clear();
     this.ingredientArray = new AdventureResult[0];
+    ConcoctionGraph.invalidate();
   }
 
   public void addIngredient(final AdventureResult ingredient) {
@@ -779,6 +869,7 @@ public class Concoction implements Comparable<Concoction> {
 
     this.ingredientArray = new AdventureResult[this.ingredients.size()];
     this.ingredients.toArray(this.ingredientArray);
+    ConcoctionGraph.invalidate();
   }
 
   // Allow an arbitrary parameter to be set, to indicate creation details
@@ -797,6 +888,7 @@ public class Concoction implements Comparable<Concoction> {
 
   public void setMixingMethod(final CraftingType mixingMethod) {
     this.mixingMethod = mixingMethod;
+    ConcoctionGraph.invalidate();
   }
 
   public EnumSet<CraftingRequirements> getRequirements() {
@@ -811,6 +903,88 @@ public class Concoction implements Comparable<Concoction> {
     return this.ingredientArray;
   }
 
+  // Works out how many of this can be had, skipping the search for one which can't be had
+  // at all.  The concoctions it uses must have been looked at first; see findUnobtainable.
+
+  public void calculate() {
+    if (this.unobtainable) {
+      this.total = 0;
+      this.creatable = 0;
+      this.visibleTotal = 0;
+      this.freeTotal = 0;
+      return;
+    }
+
+    this.calculate2();
+    this.calculate3();
+  }
+
+  // Works out which of a group of concoctions can't be had at all, once the concoctions they
+  // use from outside the group have been.  Concoctions in the group may use one another, so
+  // a concoction counts only once something it is sure to need has been found unobtainable.
+
+  public static void findUnobtainable(final Concoction[] group) {
+    for (Concoction c : group) {
+      c.unobtainable = false;
+    }
+
+    boolean found = true;
+    while (found) {
+      found = false;
+      for (Concoction c : group) {
+        if (!c.unobtainable && c.cannotBeHad()) {
+          c.unobtainable = true;
+          found = true;
+        }
+      }
+    }
+  }
+
+  // Whether canMake is sure to return 0 however much is asked for: there is none on hand, none
+  // can be bought, and the recipe can't be used or one of its ingredients can't be had either.
+  // Anything canMake treats specially before looking at the ingredients counts as obtainable.
+
+  private boolean cannotBeHad() {
+    if (this.concoction == null
+        || this.speakeasy
+        || this.initial != 0
+        || this.price > 0
+        || this.purchaseRequest != null
+        || this.mixingMethod == null) {
+      return false;
+    }
+
+    switch (this.mixingMethod) {
+      case COINMASTER:
+      case FLOUNDRY:
+      case BARREL:
+      case SPACEGATE:
+      case FANTASY_REALM:
+        return false;
+      case NOCREATE:
+        return true;
+    }
+
+    if (!ConcoctionDatabase.isPermittedMethod(this.mixingMethod, this.mixingRequirements)
+        || Preferences.getBoolean("unknownRecipe" + this.getItemId())) {
+      return true;
+    }
+
+    // canMake stops looking at ingredients when one is bought from a Coin Master with this
+    boolean unobtainable = false;
+    for (AdventureResult ingredient : this.ingredientArray) {
+      Concoction c = ConcoctionPool.get(ingredient);
+      if (c == null) {
+        continue;
+      }
+      if (c.mixingMethod == CraftingType.COINMASTER) {
+        return false;
+      }
+      unobtainable |= c.unobtainable;
+    }
+    return unobtainable;
+  }
+
   public void calculate2() {
     if (this.speakeasy) {
       return;
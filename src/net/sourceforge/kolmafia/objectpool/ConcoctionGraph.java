@@ -0,0 +1,280 @@
+package net.sourceforge.kolmafia.objectpool;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.sourceforge.kolmafia.AdventureResult;
+import net.sourceforge.kolmafia.KoLConstants.CraftingType;
+import net.sourceforge.kolmafia.persistence.ConcoctionDatabase;
+import net.sourceforge.kolmafia.preferences.Preferences;
+
+// Which concoctions each concoction's quantity is worked out from.
+//
+// Concoction.calculate2 and calculate3 look at the quantities on hand of the ingredients they
+// reach, directly or through other recipes, at the limits on meat, adventures, stills, tome
+// summons and extrudes, and at which crafting methods are permitted.  So if only quantities on
+// hand have changed, ConcoctionDatabase need only work out again the concoctions which changed,
+// the concoctions which use those, and so on up.
+//
+// A few crafting methods also look at things which aren't quantities, such as what is in the
+// clan Floundry or which Source terminal files are known; those concoctions are worked out on
+// every refresh.  Coin Master trades don't need to be: whether the Coin Master is open and how
+// many tokens are banked are looked at on every refresh before any concoction is worked out,
+// and go into the trade's starting quantities, so a trade whose count changes is among the
+// concoctions which changed.
+//
+// The graph also orders the concoctions so that each comes after the ones it uses, with any
+// which use one another, such as meat paste and meat stacks, grouped together.  That lets a
+// refresh find everything which can't be had at all in one pass from the bottom up, without
+// searching for how many of it could be made.
+//
+// The graph is built on each full refresh and thrown away whenever a recipe changes.
+
+public class ConcoctionGraph {
+  // Concoction -> the concoctions which use it
+  private static Map<Concoction, List<Concoction>> users = null;
+
+  // Concoctions which depend on more than their inputs
+  private static Set<Concoction> volatiles = null;
+
+  // Groups of concoctions which use one another, each after the groups it uses
+  private static List<Concoction[]> groups = null;
+
+  private static int builds = 0;
+
+  private ConcoctionGraph() {}
+
+  public static synchronized void invalidate() {
+    ConcoctionGraph.users = null;
+    ConcoctionGraph.volatiles = null;
+    ConcoctionGraph.groups = null;
+  }
+
+  public static synchronized boolean isBuilt() {
+    return ConcoctionGraph.users != null;
+  }
+
+  public static synchronized int getBuilds() {
+    return ConcoctionGraph.builds;
+  }
+
+  // The given concoctions, the concoctions which depend on them in any way, and the ones which
+  // must be worked out every time
+  public static synchronized Set<Concoction> getAffected(final Collection<Concoction> changed) {
+    ConcoctionGraph.build();
+
+    List<Concoction> seeds = new ArrayList<>(changed);
+    seeds.addAll(ConcoctionGraph.volatiles);
+    return ConcoctionGraph.getDependents(seeds);
+  }
+
+  // The given concoctions and the concoctions which depend on them in any way
+  public static synchronized Set<Concoction> getDependents(final Collection<Concoction> changed) {
+    ConcoctionGraph.build();
+
+    Set<Concoction> affected = Collections.newSetFromMap(new IdentityHashMap<>());
+    Deque<Concoction> queue = new ArrayDeque<>();
+    for (Concoction c : changed) {
+      if (affected.add(c)) {
+        queue.add(c);
+      }
+    }
+
+    while (!queue.isEmpty()) {
+      List<Concoction> users = ConcoctionGraph.users.get(queue.remove());
+      if (users == null) {
+        continue;
+      }
+      for (Concoction user : users) {
+        if (affected.add(user)) {
+          queue.add(user);
+        }
+      }
+    }
+
+    return affected;
+  }
+
+  // Every concoction in the pool, in groups which use one another, each group after the
+  // groups it uses
+  public static synchronized List<Concoction[]> getGroups() {
+    ConcoctionGraph.build();
+    return ConcoctionGraph.groups;
+  }
+
+  public static synchronized void build() {
+    if (ConcoctionGraph.users != null) {
+      return;
+    }
+
+    Map<Concoction, List<Concoction>> inputs = new IdentityHashMap<>();
+    Map<Concoction, List<Concoction>> users = new IdentityHashMap<>();
+    Set<Concoction> volatiles = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    for (Concoction c : ConcoctionPool.concoctions()) {
+      List<Concoction> used = ConcoctionGraph.getInputs(c);
+      inputs.put(c, used);
+      for (Concoction input : used) {
+        users.computeIfAbsent(input, k -> new ArrayList<>()).add(c);
+      }
+      if (ConcoctionGraph.isVolatile(c)) {
+        volatiles.add(c);
+      }
+    }
+
+    ConcoctionGraph.users = users;
+    ConcoctionGraph.volatiles = volatiles;
+    ConcoctionGraph.groups = new Grouper(inputs).getGroups();
+    ConcoctionGraph.builds++;
+  }
+
+  // Tarjan's strongly connected components, which come out with each group after the groups
+  // it reaches.  The limits aren't in the pool and use nothing, so they are left out.
+  private static class Grouper {
+    private final Map<Concoction, List<Concoction>> inputs;
+    private final Map<Concoction, Integer> index = new IdentityHashMap<>();
+    private final Map<Concoction, Integer> lowlink = new IdentityHashMap<>();
+    private final Set<Concoction> onStack = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Deque<Concoction> stack = new ArrayDeque<>();
+    private final List<Concoction[]> groups = new ArrayList<>();
+
+    Grouper(final Map<Concoction, List<Concoction>> inputs) {
+      this.inputs = inputs;
+    }
+
+    List<Concoction[]> getGroups() {
+      for (Concoction c : this.inputs.keySet()) {
+        if (!this.index.containsKey(c)) {
+          this.visit(c);
+        }
+      }
+      return this.groups;
+    }
+
+    private void visit(final Concoction c) {
+      int index = this.index.size();
+      this.index.put(c, index);
+      this.lowlink.put(c, index);
+      this.stack.push(c);
+      this.onStack.add(c);
+
+      for (Concoction input : this.inputs.get(c)) {
+        if (!this.inputs.containsKey(input)) {
+          continue;
+        }
+        if (!this.index.containsKey(input)) {
+          this.visit(input);
+          this.lowlink.put(c, Math.min(this.lowlink.get(c), this.lowlink.get(input)));
+        } else if (this.onStack.contains(input)) {
+          this.lowlink.put(c, Math.min(this.lowlink.get(c), this.index.get(input)));
+        }
+      }
+
+      if (this.lowlink.get(c) != index) {
+        return;
+      }
+
+      List<Concoction> group = new ArrayList<>();
+      Concoction member;
+      do {
+        member = this.stack.pop();
+        this.onStack.remove(member);
+        group.add(member);
+      } while (member != c);
+      this.groups.add(group.toArray(new Concoction[0]));
+    }
+  }
+
+  // Everything Concoction.canMake might look at while working out this concoction
+  static List<Concoction> getInputs(final Concoction c) {
+    List<Concoction> inputs = new ArrayList<>();
+
+    for (AdventureResult ingredient : c.getIngredients()) {
+      ConcoctionGraph.addInput(inputs, ConcoctionPool.get(ingredient));
+
+      // ConcoctionDatabase.getIngredients swaps these for one another
+      int alternate = ConcoctionGraph.getAlternate(ingredient.getItemId());
+      if (alternate != -1) {
+        ConcoctionGraph.addInput(inputs, ConcoctionPool.get(alternate));
+      }
+    }
+
+    if (c.price > 0) {
+      inputs.add(ConcoctionDatabase.meatLimit);
+    }
+
+    CraftingType method = c.getMixingMethod();
+    if (method == CraftingType.COMBINE || method == CraftingType.ACOMBINE) {
+      ConcoctionGraph.addInput(inputs, ConcoctionPool.get(ItemPool.MEAT_PASTE));
+    }
+
+    if (ConcoctionDatabase.getAdventureUsage(method) != 0) {
+      if (method == CraftingType.SMITH || method == CraftingType.SSMITH) {
+        inputs.add(ConcoctionDatabase.adventureSmithingLimit);
+        inputs.add(ConcoctionDatabase.turnFreeSmithingLimit);
+      } else {
+        inputs.add(ConcoctionDatabase.adventureLimit);
+        inputs.add(ConcoctionDatabase.turnFreeLimit);
+      }
+    }
+
+    if (method == CraftingType.STILL) {
+      inputs.add(ConcoctionDatabase.stillsLimit);
+    } else if (method == CraftingType.CLIPART) {
+      inputs.add(ConcoctionDatabase.clipArtLimit);
+    } else if (method == CraftingType.TERMINAL) {
+      inputs.add(ConcoctionDatabase.extrudeLimit);
+    }
+
+    return inputs;
+  }
+
+  private static void addInput(final List<Concoction> inputs, final Concoction input) {
+    if (input != null) {
+      inputs.add(input);
+    }
+  }
+
+  private static int getAlternate(final int itemId) {
+    switch (itemId) {
+      case ItemPool.SCHLITZ:
+        return ItemPool.WILLER;
+      case ItemPool.WILLER:
+        return ItemPool.SCHLITZ;
+      case ItemPool.KETCHUP:
+        return ItemPool.CATSUP;
+      case ItemPool.CATSUP:
+        return ItemPool.KETCHUP;
+      case ItemPool.DYSPEPSI_COLA:
+        return ItemPool.CLOACA_COLA;
+      case ItemPool.CLOACA_COLA:
+        return ItemPool.DYSPEPSI_COLA;
+      case ItemPool.TITANIUM_UMBRELLA:
+        return ItemPool.GOATSKIN_UMBRELLA;
+      case ItemPool.GOATSKIN_UMBRELLA:
+        return ItemPool.TITANIUM_UMBRELLA;
+    }
+    return -1;
+  }
+
+  private static boolean isVolatile(final Concoction c) {
+    CraftingType method = c.getMixingMethod();
+    if (method != null) {
+      switch (method) {
+        case FLOUNDRY:
+        case BARREL:
+        case TERMINAL:
+        case FANTASY_REALM:
+        case JARLS:
+          return true;
+      }
+    }
+    return Preferences.containsDefault("unknownRecipe" + c.getItemId());
+  }
+}
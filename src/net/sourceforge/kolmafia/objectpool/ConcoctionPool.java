@@ -79,6 +79,7 @@ public class ConcoctionPool {
 
     // Rebuild values next time it is needed
     ConcoctionPool.values = null;
+    ConcoctionGraph.invalidate();
   }
 
   public static int idToRow(int itemId) {
@@ -2,11 +2,14 @@ package net.sourceforge.kolmafia.persistence;
 
 import java.io.BufferedReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 import net.java.dev.spellcast.utilities.LockableListModel;
 import net.java.dev.spellcast.utilities.SortedListModel;
@@ -26,6 +29,7 @@ import net.sourceforge.kolmafia.StaticEntity;
 import net.sourceforge.kolmafia.VYKEACompanionData;
 import net.sourceforge.kolmafia.listener.NamedListenerRegistry;
 import net.sourceforge.kolmafia.objectpool.Concoction;
+import net.sourceforge.kolmafia.objectpool.ConcoctionGraph;
 import net.sourceforge.kolmafia.objectpool.ConcoctionPool;
 import net.sourceforge.kolmafia.objectpool.EffectPool;
 import net.sourceforge.kolmafia.objectpool.IntegerPool;
@@ -122,6 +126,24 @@ public class ConcoctionDatabase {
       new Concoction(null, CraftingType.NOCREATE);
   public static final Concoction meatLimit = new Concoction(null, CraftingType.NOCREATE);
 
+  private static final Concoction[] LIMITS = {
+    ConcoctionDatabase.stillsLimit,
+    ConcoctionDatabase.clipArtLimit,
+    ConcoctionDatabase.extrudeLimit,
+    ConcoctionDatabase.adventureLimit,
+    ConcoctionDatabase.adventureSmithingLimit,
+    ConcoctionDatabase.adventureJewelcraftingLimit,
+    ConcoctionDatabase.turnFreeLimit,
+    ConcoctionDatabase.turnFreeSmithingLimit,
+    ConcoctionDatabase.meatLimit,
+  };
+
+  // What the crafting methods looked like at the last refresh. If any of it
+  // changes, every concoction is worked out again.
+  private static List<Object> lastCalculationState = null;
+  private static int lastShownLevel = -1;
+  private static int lastRecalculated = 0;
+
   public static final SortedListModelArray<AdventureResult> knownUses =
       new SortedListModelArray<AdventureResult>();
 
@@ -1256,10 +1278,7 @@ public class ConcoctionDatabase {
     // created any other way, making sure that it's a permitted
     // mixture before doing the calculation.
 
-    for (Concoction item : ConcoctionPool.concoctions()) {
-      item.calculate2();
-      item.calculate3();
-    }
+    Set<Concoction> dependents = ConcoctionDatabase.calculateConcoctions();
 
     // Now, to update the list of creatables without removing
     // all creatable items.	 We do this by determining the
@@ -1271,9 +1290,17 @@ public class ConcoctionDatabase {
             && !KoLCharacter.isHardcore()
             && ConcoctionDatabase.getPullsBudgeted() > ConcoctionDatabase.queuedPullsUsed;
 
+    // The rows to repaint: those whose quantities changed, and those which depend on something
+    // which did, since the adventures they show crafting will take depend on their ingredients
+    List<Concoction> changedUsables = new ArrayList<Concoction>();
+    List<CreateItemRequest> changedCreatables = new ArrayList<CreateItemRequest>();
+
     for (Concoction item : ConcoctionPool.concoctions()) {
       AdventureResult ar = item.getItem();
       if (ar == null) {
+        if (item.shownChanged() || dependents == null || dependents.contains(item)) {
+          changedUsables.add(item);
+        }
         continue;
       }
 
@@ -1290,6 +1317,11 @@ public class ConcoctionDatabase {
         item.setPullable(0);
       }
 
+      boolean shownChanged = item.shownChanged() || dependents == null || dependents.contains(item);
+      if (shownChanged) {
+        changedUsables.add(item);
+      }
+
       CreateItemRequest instance = CreateItemRequest.getInstance(ar, false);
 
       if (instance == null) {
@@ -1312,9 +1344,19 @@ public class ConcoctionDatabase {
         ConcoctionDatabase.creatableList.add(instance);
         item.setPossible(true);
         changeDetected = true;
+      } else if (shownChanged) {
+        changedCreatables.add(instance);
       }
     }
 
+    // Repaint everything if anything besides quantities may have changed what the rows show
+    int level = KoLCharacter.getLevel();
+    boolean repaintAll =
+        dependents == null
+            || ConcoctionDatabase.recalculateAdventureRange
+            || level != ConcoctionDatabase.lastShownLevel;
+    ConcoctionDatabase.lastShownLevel = level;
+
     if (ConcoctionDatabase.recalculateAdventureRange) {
       ConsumablesDatabase.calculateAdventureRanges();
       ConcoctionDatabase.recalculateAdventureRange = false;
@@ -1324,18 +1366,167 @@ public class ConcoctionDatabase {
       ConcoctionDatabase.queuedSpleen.touch();
     }
 
-    ConcoctionDatabase.creatableList.sort();
-    ConcoctionDatabase.usableList.sort();
+    // The creatable list is kept in order by name as requests are added. The order of the
+    // usable list depends on adventure ranges and, when sorting by room, on how full the
+    // character is, so it is sorted again only if something has moved.
+    boolean resorted = !ConcoctionDatabase.usableList.isSorted();
+    if (resorted) {
+      ConcoctionDatabase.usableList.sort();
+    }
 
     // Now tell the GUI about the changes
-    ConcoctionDatabase.creatableList.updateFilter(changeDetected);
-    ConcoctionDatabase.usableList.updateFilter(changeDetected);
+    ConcoctionDatabase.creatableList.updateFilter(false);
+    ConcoctionDatabase.usableList.updateFilter(false);
+
+    if (repaintAll) {
+      ConcoctionDatabase.creatableList.touch();
+    } else {
+      ConcoctionDatabase.creatableList.touch(changedCreatables);
+    }
+    if (!resorted) {
+      if (repaintAll) {
+        ConcoctionDatabase.usableList.touch();
+      } else {
+        ConcoctionDatabase.usableList.touch(changedUsables);
+      }
+    }
     ConcoctionDatabase.queuedFood.updateFilter(changeDetected);
     ConcoctionDatabase.queuedBooze.updateFilter(changeDetected);
     ConcoctionDatabase.queuedSpleen.updateFilter(changeDetected);
     ConcoctionDatabase.queuedPotions.updateFilter(changeDetected);
   }
 
+  // Works out how many of each concoction can be made. Only concoctions which
+  // depend on something that changed since the last refresh are worked out
+  // again; the rest keep what they had. See ConcoctionGraph.
+  //
+  // Returns the concoctions which depend on something that changed, or null if
+  // everything was worked out again.
+
+  private static Set<Concoction> calculateConcoctions() {
+    Collection<Concoction> concoctions = ConcoctionPool.concoctions();
+
+    List<Object> state = ConcoctionDatabase.getCalculationState();
+    boolean full = !state.equals(ConcoctionDatabase.lastCalculationState);
+    ConcoctionDatabase.lastCalculationState = state;
+
+    List<Concoction> changed = new ArrayList<Concoction>();
+    for (Concoction item : concoctions) {
+      if (item.startChanged()) {
+        changed.add(item);
+        // A price brings in the meat limit
+        full |= item.priceChanged();
+      }
+      item.rememberStart();
+    }
+    for (Concoction limit : ConcoctionDatabase.LIMITS) {
+      if (limit.startChanged()) {
+        changed.add(limit);
+      }
+      limit.rememberStart();
+    }
+
+    if (full) {
+      // Prices and adventure usage decide which limits a concoction looks at
+      ConcoctionGraph.invalidate();
+    } else if (!ConcoctionGraph.isBuilt()) {
+      // A recipe changed
+      full = true;
+    }
+
+    Set<Concoction> affected = full ? null : ConcoctionGraph.getAffected(changed);
+
+    // Work from the bottom up, so that whatever can't be had at all is known before anything
+    // which uses it. A group of concoctions which use one another is affected as a whole.
+    int recalculated = 0;
+    for (Concoction[] group : ConcoctionGraph.getGroups()) {
+      if (affected != null && !affected.contains(group[0])) {
+        for (Concoction item : group) {
+          item.restoreCalculations();
+        }
+        continue;
+      }
+
+      Concoction.findUnobtainable(group);
+      for (Concoction item : group) {
+        item.calculate();
+        item.rememberCalculations();
+        ++recalculated;
+      }
+    }
+    ConcoctionDatabase.lastRecalculated = recalculated;
+
+    if (affected != null && Preferences.getBoolean("debugConcoctionRefresh")) {
+      ConcoctionDatabase.checkCalculations(concoctions);
+    }
+
+    return full ? null : ConcoctionGraph.getDependents(changed);
+  }
+
+  private static List<Object> getCalculationState() {
+    return Arrays.asList(
+        EnumSet.copyOf(ConcoctionDatabase.PERMIT_METHOD),
+        EnumSet.copyOf(ConcoctionDatabase.REQUIREMENT_MET),
+        new HashMap<CraftingType, Integer>(ConcoctionDatabase.ADVENTURE_USAGE),
+        KoLCharacter.inBeecore(),
+        KoLCharacter.inGLover(),
+        KoLCharacter.knollAvailable(),
+        KoLCharacter.inZombiecore());
+  }
+
+  // Works out every concoction again and reports any which the incremental
+  // refresh got wrong. The full results are kept.
+
+  private static void checkCalculations(final Collection<Concoction> concoctions) {
+    int mismatches = 0;
+    for (Concoction item : concoctions) {
+      int total = item.total;
+      int creatable = item.creatable;
+      int visibleTotal = item.visibleTotal;
+      int freeTotal = item.freeTotal;
+
+      item.calculate2();
+      item.calculate3();
+      item.rememberCalculations();
+
+      if (total != item.total
+          || creatable != item.creatable
+          || visibleTotal != item.visibleTotal
+          || freeTotal != item.freeTotal) {
+        ++mismatches;
+        RequestLogger.printLine(
+            "Concoction refresh: "
+                + item.getName()
+                + " had total "
+                + total
+                + ", creatable "
+                + creatable
+                + ", free "
+                + freeTotal
+                + " but should have total "
+                + item.total
+                + ", creatable "
+                + item.creatable
+                + ", free "
+                + item.freeTotal);
+      }
+    }
+
+    if (mismatches > 0) {
+      RequestLogger.printLine(
+          "Concoction refresh: "
+              + mismatches
+              + " of "
+              + ConcoctionDatabase.lastRecalculated
+              + " recalculated concoctions were wrong");
+    }
+  }
+
+  // How many concoctions the last refresh worked out, rather than kept
+  public static int getLastRecalculated() {
+    return ConcoctionDatabase.lastRecalculated;
+  }
+
   /** Reset concoction stat gains when you've logged in a new character. */
   public static final void resetConcoctionStatGains() {
     for (Concoction item : ConcoctionPool.concoctions()) {
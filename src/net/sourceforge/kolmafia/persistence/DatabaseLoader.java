@@ -0,0 +1,218 @@
+package net.sourceforge.kolmafia.persistence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import net.sourceforge.kolmafia.Modifiers;
+import net.sourceforge.kolmafia.StaticEntity;
+import net.sourceforge.kolmafia.utilities.FileUtilities;
+
+// Loads the databases at startup, rather than whenever something first touches them.
+//
+// Each database names the data files it reads and the databases it looks things up in while
+// loading.  Every file is read and split on a pool of threads at once, while the databases
+// themselves are initialized one after another in dependency order, each waiting only for
+// its own files.  The static initializers reach into one another, KoLCharacter and
+// Preferences too freely to run them on several threads without risking a deadlock between
+// class initializations.
+//
+// QuestDatabase is left out: it fills in the player's name as it loads.
+
+public class DatabaseLoader {
+  private static class Load {
+    private final Class<?> database;
+    private final String[] files;
+    private final Class<?>[] requires;
+    private long nanos = 0;
+
+    Load(final Class<?> database, final String[] files, final Class<?>... requires) {
+      this.database = database;
+      this.files = files;
+      this.requires = requires;
+    }
+
+    String getName() {
+      return this.database.getSimpleName();
+    }
+  }
+
+  private static final Load[] LOADS = {
+    new Load(ItemDatabase.class, new String[] {"items.txt", "foldgroups.txt"}),
+    new Load(EffectDatabase.class, new String[] {"statuseffects.txt"}),
+    new Load(SkillDatabase.class, new String[] {"classskills.txt"}, EffectDatabase.class),
+    new Load(
+        EquipmentDatabase.class,
+        new String[] {"equipment.txt", "outfits.txt", "pulverize.txt"},
+        ItemDatabase.class),
+    new Load(
+        ConsumablesDatabase.class,
+        new String[] {"fullness.txt", "inebriety.txt", "spleenhit.txt", "nonfilling.txt"},
+        ItemDatabase.class),
+    new Load(
+        FamiliarDatabase.class,
+        new String[] {"familiars.txt", "fambattle.txt"},
+        ItemDatabase.class),
+    new Load(
+        MonsterDatabase.class,
+        new String[] {"monsters.txt"},
+        ItemDatabase.class,
+        EffectDatabase.class),
+    new Load(
+        AdventureDatabase.class,
+        new String[] {"zonelist.txt", "adventures.txt", "combats.txt"},
+        MonsterDatabase.class),
+    new Load(NPCStoreDatabase.class, new String[] {"npcstores.txt"}, ItemDatabase.class),
+    new Load(CoinmastersDatabase.class, new String[] {"coinmasters.txt"}, ItemDatabase.class),
+    new Load(
+        ConcoctionDatabase.class,
+        new String[] {"concoctions.txt"},
+        ItemDatabase.class,
+        ConsumablesDatabase.class,
+        EquipmentDatabase.class,
+        NPCStoreDatabase.class),
+    new Load(
+        Modifiers.class,
+        new String[] {"modifiers.txt"},
+        ItemDatabase.class,
+        EffectDatabase.class,
+        SkillDatabase.class,
+        FamiliarDatabase.class),
+  };
+
+  private static boolean loaded = false;
+  private static long nanos = 0;
+  private static int threads = 0;
+
+  private DatabaseLoader() {}
+
+  public static synchronized void load() {
+    if (DatabaseLoader.loaded) {
+      return;
+    }
+    DatabaseLoader.loaded = true;
+
+    long start = System.nanoTime();
+    List<Load> order = DatabaseLoader.getOrder();
+
+    DatabaseLoader.threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    ExecutorService pool =
+        Executors.newFixedThreadPool(
+            DatabaseLoader.threads,
+            runnable -> {
+              Thread thread = new Thread(runnable, "DatabaseLoader");
+              thread.setDaemon(true);
+              return thread;
+            });
+
+    try {
+      for (Load load : order) {
+        for (String file : load.files) {
+          FileUtilities.prefetch(file, pool);
+        }
+      }
+
+      for (Load load : order) {
+        long loadStart = System.nanoTime();
+        try {
+          Class.forName(load.database.getName(), true, load.database.getClassLoader());
+        } catch (ClassNotFoundException e) {
+          StaticEntity.printStackTrace(e);
+        }
+        load.nanos = System.nanoTime() - loadStart;
+      }
+    } finally {
+      // Anything already loaded before we started will read its files afresh when reset
+      FileUtilities.clearPrefetched();
+      pool.shutdown();
+    }
+
+    DatabaseLoader.nanos = System.nanoTime() - start;
+  }
+
+  // The databases in an order which loads everything a database requires before it
+  static List<Load> getOrder() {
+    Map<Class<?>, Load> loads = new HashMap<>();
+    for (Load load : DatabaseLoader.LOADS) {
+      loads.put(load.database, load);
+    }
+
+    List<Load> order = new ArrayList<>();
+    Map<Load, Boolean> visited = new HashMap<>();
+    for (Load load : DatabaseLoader.LOADS) {
+      DatabaseLoader.visit(load, loads, visited, order);
+    }
+    return order;
+  }
+
+  private static void visit(
+      final Load load,
+      final Map<Class<?>, Load> loads,
+      final Map<Load, Boolean> visited,
+      final List<Load> order) {
+    Boolean done = visited.get(load);
+    if (done != null) {
+      if (!done) {
+        throw new IllegalStateException("Databases require each other: " + load.getName());
+      }
+      return;
+    }
+
+    visited.put(load, false);
+    for (Class<?> database : load.requires) {
+      Load required = loads.get(database);
+      if (required == null) {
+        throw new IllegalStateException(
+            load.getName() + " requires unknown database " + database.getSimpleName());
+      }
+      DatabaseLoader.visit(required, loads, visited, order);
+    }
+    visited.put(load, true);
+    order.add(load);
+  }
+
+  static List<String> getOrderNames() {
+    List<String> names = new ArrayList<>();
+    for (Load load : DatabaseLoader.getOrder()) {
+      names.add(load.getName());
+    }
+    return names;
+  }
+
+  static List<String> getRequiredNames(final String name) {
+    List<String> names = new ArrayList<>();
+    for (Load load : DatabaseLoader.LOADS) {
+      if (load.getName().equals(name)) {
+        for (Class<?> database : load.requires) {
+          names.add(database.getSimpleName());
+        }
+      }
+    }
+    return names;
+  }
+
+  public static synchronized long getMillis() {
+    return DatabaseLoader.nanos / 1000000L;
+  }
+
+  // How long each database took, in the order they were loaded.  A database which another
+  // one touched while loading is counted in that one's time.
+  public static synchronized String getReport() {
+    StringBuilder report = new StringBuilder();
+    report.append("Loaded databases in ");
+    report.append(DatabaseLoader.getMillis());
+    report.append(" ms, reading files on ");
+    report.append(DatabaseLoader.threads);
+    report.append(" threads");
+    for (Load load : DatabaseLoader.getOrder()) {
+      report.append("\n  ");
+      report.append(load.getName());
+      report.append(": ");
+      report.append(load.nanos / 1000000L);
+      report.append(" ms");
+    }
+    return report.toString();
+  }
+}
@@ -304,6 +304,15 @@ public class HolidayDatabase {
     return HolidayDatabase.GRIMACE_PHASE + 1;
   }
 
+  /**
+   * Returns a value which changes whenever the phase of either moon or the position of the
+   * Hamburglar changes.
+   */
+  public static final int getMoonState() {
+    return (HolidayDatabase.RONALD_PHASE * 16 + HolidayDatabase.GRIMACE_PHASE) * 16
+        + HolidayDatabase.HAMBURGLAR_POSITION;
+  }
+
   public static final int getHamburglarPosition(final Date time) {
     long currentTime = time.getTime();
     long timeDifference = currentTime - HolidayDatabase.COLLISION;
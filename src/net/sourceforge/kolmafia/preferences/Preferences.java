@@ -3,9 +3,13 @@ package net.sourceforge.kolmafia.preferences;
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -18,6 +22,13 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import net.java.dev.spellcast.utilities.DataUtilities;
 import net.sourceforge.kolmafia.KoLCharacter;
 import net.sourceforge.kolmafia.KoLConstants;
@@ -38,20 +49,128 @@ public class Preferences {
 
   private static final Object lock = new Object(); // used to synch io
 
+  // With saveSettingsOnSet, a changed file is written by a background thread shortly after it
+  // changes or when a request sequence ends, so that a request which changes dozens of
+  // preferences writes each file once.  Logging out, switching users and shutting down write
+  // anything still pending.
+  private static final long FLUSH_DELAY = 1000L;
+
+  private static final ScheduledExecutorService flusher =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "Preferences flusher");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  // These are guarded by lock
+  private static boolean globalDirty = false;
+  private static boolean userDirty = false;
+  private static ScheduledFuture<?> pendingFlush = null;
+  private static final Map<File, Long> writtenVersions = new HashMap<>();
+
+  // Orders the snapshots of a file taken on different threads
+  private static final AtomicLong saveVersion = new AtomicLong();
+
   private static final byte[] LINE_BREAK_AS_BYTES = KoLConstants.LINE_BREAK.getBytes();
 
   private static final String[] characterMap = new String[65536];
 
+  // A preference as it is written to the file, along with whatever types it has been read as.
+  // A change replaces the Value rather than altering it, and each typed value is parsed at most
+  // once; they are immutable, so two threads racing to parse the same one is harmless.
+  private static final class Value {
+    private final String string;
+    private Boolean booleanValue;
+    private Integer integerValue;
+    private Long longValue;
+    private Float floatValue;
+    private Double doubleValue;
+
+    Value(final String string) {
+      this(string, null);
+    }
+
+    Value(final String string, final Object object) {
+      this.string = string == null ? "" : string;
+      if (object instanceof Boolean) {
+        this.booleanValue = (Boolean) object;
+      } else if (object instanceof Integer) {
+        this.integerValue = (Integer) object;
+      } else if (object instanceof Long) {
+        this.longValue = (Long) object;
+      } else if (object instanceof Float) {
+        this.floatValue = (Float) object;
+      } else if (object instanceof Double) {
+        this.doubleValue = (Double) object;
+      }
+    }
+
+    boolean getBoolean() {
+      Boolean value = this.booleanValue;
+      if (value == null) {
+        value = Boolean.valueOf(this.string);
+        this.booleanValue = value;
+      }
+      return value;
+    }
+
+    int getInteger() {
+      Integer value = this.integerValue;
+      if (value == null) {
+        value = IntegerPool.get(StringUtilities.parseInt(this.string));
+        this.integerValue = value;
+      }
+      return value;
+    }
+
+    long getLong() {
+      Long value = this.longValue;
+      if (value == null) {
+        value = StringUtilities.parseLong(this.string);
+        this.longValue = value;
+      }
+      return value;
+    }
+
+    float getFloat() {
+      Float value = this.floatValue;
+      if (value == null) {
+        value = StringUtilities.parseFloat(this.string);
+        this.floatValue = value;
+      }
+      return value;
+    }
+
+    double getDouble() {
+      Double value = this.doubleValue;
+      if (value == null) {
+        value = StringUtilities.parseDouble(this.string);
+        this.doubleValue = value;
+      }
+      return value;
+    }
+
+    @Override
+    public String toString() {
+      return this.string;
+    }
+  }
+
+  // Preferences are read far more often than they change, and almost never in order, so
+  // lookups go to a hash map.  Only writing the file and getMap sort them.
   private static final HashMap<String, String> globalNames = new HashMap<>();
-  private static final SortedMap<String, Object> globalValues =
-      Collections.synchronizedSortedMap(new TreeMap<>());
+  private static final Map<String, Value> globalValues = new ConcurrentHashMap<>();
   private static File globalPropertiesFile = null;
 
   private static final HashMap<String, String> userNames = new HashMap<>();
-  private static final SortedMap<String, Object> userValues =
-      Collections.synchronizedSortedMap(new TreeMap<>());
+  private static final Map<String, Value> userValues = new ConcurrentHashMap<>();
   private static File userPropertiesFile = null;
 
+  // The preferences read on each thread which is recording its reads
+  private static final ThreadLocal<Reads> reads = new ThreadLocal<>();
+  private static final AtomicInteger recordingThreads = new AtomicInteger();
+
   private static final Set<String> defaultsSet = new HashSet<>();
   private static final Set<String> perUserGlobalSet = new HashSet<>();
   private static final Set<String> legacyDailies =
@@ -404,6 +523,8 @@ public class Preferences {
 
     // Read GLOBAL_prefs.txt into globalNames and globalValues
     Preferences.loadGlobalPreferences();
+
+    Runtime.getRuntime().addShutdownHook(new Thread(Preferences::flush, "Preferences flush"));
   }
 
   private static void initializeMaps() {
@@ -465,11 +586,14 @@ public class Preferences {
 
   /** Resets all settings so that the given user is represented whenever settings are modified. */
   public static final synchronized void reset(final String username) {
-    Preferences.saveToFile(Preferences.globalPropertiesFile, Preferences.globalValues);
-
-    // Prevent anybody from manipulating the user map until we are
-    // done bulk-loading it.
+    // Prevent anybody from manipulating or flushing the user map until
+    // we are done bulk-loading it.
     synchronized (Preferences.userValues) {
+      // Write out anything still pending for the previous user
+      Preferences.flush();
+
+      Preferences.saveToFile(Preferences.globalPropertiesFile, Preferences.globalValues);
+
       if (username == null || username.equals("")) {
         if (Preferences.userPropertiesFile != null) {
           Preferences.saveToFile(Preferences.userPropertiesFile, Preferences.userValues);
@@ -515,7 +639,7 @@ public class Preferences {
       // continue;
 
       String value = (String) entry.getValue();
-      Preferences.globalValues.put(key, value);
+      Preferences.globalValues.put(key, new Value(value));
     }
 
     // For all global properties in defaults.txt which were not in
@@ -525,7 +649,7 @@ public class Preferences {
       if (!Preferences.globalValues.containsKey(key)) {
         // System.out.println( "Adding new built-in global setting: " + key );
         String value = entry.getValue();
-        Preferences.globalValues.put(key, value);
+        Preferences.globalValues.put(key, new Value(value));
       }
     }
   }
@@ -546,7 +670,7 @@ public class Preferences {
       String key = (String) currentEntry.getKey();
       String value = (String) currentEntry.getValue();
 
-      Preferences.userValues.put(key, value);
+      Preferences.userValues.put(key, new Value(value));
     }
 
     for (Entry<String, String> entry : Preferences.userNames.entrySet()) {
@@ -561,13 +685,11 @@ public class Preferences {
       //
       // If it had a value in the GLOBAL map, use that (this
       // is how we migrate a preference from GLOBAL to user)
-      String value =
-          Preferences.globalValues.containsKey(key)
-              ? (String) Preferences.globalValues.get(key)
-              : entry.getValue();
+      Value global = Preferences.globalValues.get(key);
+      String value = global != null ? global.string : entry.getValue();
 
       // System.out.println( "Adding new built-in user setting: " + key );
-      Preferences.userValues.put(key, value);
+      Preferences.userValues.put(key, new Value(value));
     }
   }
 
@@ -659,19 +781,11 @@ public class Preferences {
   }
 
   public static final String getString(final String name, final boolean global) {
-    Object value = null;
+    Map<String, Value> map = global ? Preferences.globalValues : Preferences.userValues;
+    Value value = map.get(name);
+    Preferences.recordRead(map, name, value);
 
-    if (global) {
-      if (Preferences.globalValues.containsKey(name)) {
-        value = Preferences.globalValues.get(name);
-      }
-    } else {
-      if (Preferences.userValues.containsKey(name)) {
-        value = Preferences.userValues.get(name);
-      }
-    }
-
-    return value == null ? "" : value.toString();
+    return value == null ? "" : value.string;
   }
 
   public static final String getDefault(final String name) {
@@ -690,22 +804,19 @@ public class Preferences {
     // Remove only properties which do not have defaults
     if (global) {
       if (!Preferences.globalNames.containsKey(name)) {
-        // We are changing the structure of the map.
-        // globalValues is a synchronized map.
-
         Preferences.globalValues.remove(name);
         if (Preferences.getBoolean("saveSettingsOnSet")) {
-          Preferences.saveToFile(Preferences.globalPropertiesFile, Preferences.globalValues);
+          Preferences.markDirty(true);
         }
       }
     } else {
       if (!Preferences.userNames.containsKey(name)) {
-        // We are changing the structure of the map.
-        // userValues is a synchronized map.
-
-        Preferences.userValues.remove(name);
+        // Not while reset is loading the map
+        synchronized (Preferences.userValues) {
+          Preferences.userValues.remove(name);
+        }
         if (Preferences.getBoolean("saveSettingsOnSet")) {
-          Preferences.saveToFile(Preferences.userPropertiesFile, Preferences.userValues);
+          Preferences.markDirty(false);
         }
       }
     }
@@ -730,6 +841,85 @@ public class Preferences {
     return !property.startsWith("saveState") && !property.equals("externalEditor");
   }
 
+  // A hash of every preference's value but the ignored ones, for callers which remember
+  // results worked out from any number of preferences
+  public static int getValuesHash(final Set<String> ignored) {
+    return Preferences.getValuesHash(Preferences.globalValues, ignored)
+        + 31 * Preferences.getValuesHash(Preferences.userValues, ignored);
+  }
+
+  private static int getValuesHash(final Map<String, Value> values, final Set<String> ignored) {
+    // Added up, so that it doesn't matter which order the map gives them in
+    int hash = 0;
+    for (Entry<String, Value> entry : values.entrySet()) {
+      String name = entry.getKey();
+      if (!ignored.contains(name)) {
+        hash += name.hashCode() ^ entry.getValue().string.hashCode();
+      }
+    }
+    return hash;
+  }
+
+  // The preferences a thread read between startRecordingReads and stopRecordingReads, for
+  // callers which remember results worked out from whichever preferences they happened to read
+  public static final class Reads {
+    private final Map<String, Value> globalValues = new HashMap<>();
+    private final Map<String, Value> userValues = new HashMap<>();
+    private Reads previous;
+
+    private void add(final Map<String, Value> map, final String key, final Value value) {
+      Map<String, Value> values =
+          map == Preferences.globalValues ? this.globalValues : this.userValues;
+      if (!values.containsKey(key)) {
+        values.put(key, value);
+      }
+    }
+
+    // Whether every preference read still has the value it was read with
+    public boolean unchanged() {
+      return Reads.unchanged(this.globalValues, Preferences.globalValues)
+          && Reads.unchanged(this.userValues, Preferences.userValues);
+    }
+
+    private static boolean unchanged(
+        final Map<String, Value> read, final Map<String, Value> current) {
+      for (Entry<String, Value> entry : read.entrySet()) {
+        // A change replaces the Value, so the one read is still there if nothing changed
+        if (current.get(entry.getKey()) != entry.getValue()) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  public static Reads startRecordingReads() {
+    Reads reads = new Reads();
+    reads.previous = Preferences.reads.get();
+    Preferences.reads.set(reads);
+    Preferences.recordingThreads.incrementAndGet();
+    return reads;
+  }
+
+  public static void stopRecordingReads(final Reads reads) {
+    Preferences.recordingThreads.decrementAndGet();
+    Preferences.reads.set(reads.previous);
+  }
+
+  public static boolean isRecordingReads() {
+    return Preferences.recordingThreads.get() > 0;
+  }
+
+  private static void recordRead(
+      final Map<String, Value> map, final String key, final Value value) {
+    if (Preferences.recordingThreads.get() > 0) {
+      Reads reads = Preferences.reads.get();
+      if (reads != null) {
+        reads.add(map, key, value);
+      }
+    }
+  }
+
   public static final void setString(final String name, final String value) {
     setString(null, name, value);
   }
@@ -831,107 +1021,45 @@ public class Preferences {
   // key "<name>.<user>"
 
   public static final String getString(final String user, final String name) {
-    Object value = Preferences.getObject(user, name);
-
-    if (value == null) {
-      return "";
-    }
-
-    return value.toString();
+    Value value = Preferences.getValue(user, name);
+    return value == null ? "" : value.string;
   }
 
   public static final boolean getBoolean(final String user, final String name) {
-    Map<String, Object> map = Preferences.getMap(name);
-    Object value = Preferences.getObject(map, user, name);
-
-    if (value == null) {
-      return false;
-    }
-
-    if (!(value instanceof Boolean)) {
-      value = Boolean.valueOf(value.toString());
-      map.put(name, value);
-    }
-
-    return (Boolean) value;
+    Value value = Preferences.getValue(user, name);
+    return value != null && value.getBoolean();
   }
 
   public static final int getInteger(final String user, final String name) {
-    Map<String, Object> map = Preferences.getMap(name);
-    Object value = Preferences.getObject(map, user, name);
-
-    if (value == null) {
-      return 0;
-    }
-
-    if (!(value instanceof Integer)) {
-      value = IntegerPool.get(StringUtilities.parseInt(value.toString()));
-      map.put(name, value);
-    }
-
-    return (Integer) value;
+    Value value = Preferences.getValue(user, name);
+    return value == null ? 0 : value.getInteger();
   }
 
   public static final long getLong(final String user, final String name) {
-    Map<String, Object> map = Preferences.getMap(name);
-    Object value = Preferences.getObject(map, user, name);
-
-    if (value == null) {
-      return 0;
-    }
-
-    if (!(value instanceof Long)) {
-      value = StringUtilities.parseLong(value.toString());
-      map.put(name, value);
-    }
-
-    return (Long) value;
+    Value value = Preferences.getValue(user, name);
+    return value == null ? 0 : value.getLong();
   }
 
   public static final float getFloat(final String user, final String name) {
-    Map<String, Object> map = Preferences.getMap(name);
-    Object value = Preferences.getObject(map, user, name);
-
-    if (value == null) {
-      return 0.0f;
-    }
-
-    if (!(value instanceof Float)) {
-      value = StringUtilities.parseFloat(value.toString());
-      map.put(name, value);
-    }
-
-    return (Float) value;
+    Value value = Preferences.getValue(user, name);
+    return value == null ? 0.0f : value.getFloat();
   }
 
   public static final double getDouble(final String user, final String name) {
-    Map<String, Object> map = Preferences.getMap(name);
-    Object value = Preferences.getObject(map, user, name);
-
-    if (value == null) {
-      return 0.0;
-    }
-
-    if (!(value instanceof Double)) {
-      value = StringUtilities.parseDouble(value.toString());
-      map.put(name, value);
-    }
-
-    return (Double) value;
+    Value value = Preferences.getValue(user, name);
+    return value == null ? 0.0 : value.getDouble();
   }
 
-  private static Map<String, Object> getMap(final String name) {
+  private static Map<String, Value> getMap(final String name) {
     return Preferences.isGlobalProperty(name) ? Preferences.globalValues : Preferences.userValues;
   }
 
-  private static Object getObject(final String user, final String name) {
-    return Preferences.getObject(Preferences.getMap(name), user, name);
-  }
-
-  private static Object getObject(
-      final Map<String, Object> map, final String user, final String name) {
+  private static Value getValue(final String user, final String name) {
     String key = Preferences.propertyName(user, name);
-    return map.get(key);
+    Map<String, Value> map = Preferences.getMap(name);
+    Value value = map.get(key);
+    Preferences.recordRead(map, key, value);
+    return value;
   }
 
   public static final TreeMap<String, String> getMap(boolean defaults, boolean user) {
@@ -939,7 +1067,7 @@ public class Preferences {
       return new TreeMap<>(user ? userNames : globalNames);
     } else {
       TreeMap<String, String> map = new TreeMap<>();
-      Map<String, Object> srcmap = user ? userValues : globalValues;
+      Map<String, Value> srcmap = user ? userValues : globalValues;
       for (String pref : srcmap.keySet()) {
         map.put(pref, getString(pref));
       }
@@ -954,38 +1082,41 @@ public class Preferences {
     }
   }
 
+  // The stored string is what counts, so a value which reads the same but was written
+  // differently, such as "007" for 7, is rewritten as it would be written now.
+
   public static final void setBoolean(final String user, final String name, final boolean value) {
-    boolean old = Preferences.getBoolean(user, name);
-    if (old != value) {
-      Preferences.setObject(user, name, value ? "true" : "false", value);
+    String string = value ? "true" : "false";
+    if (!Preferences.getString(user, name).equals(string)) {
+      Preferences.setObject(user, name, string, value);
     }
   }
 
   public static final void setInteger(final String user, final String name, final int value) {
-    int old = Preferences.getInteger(user, name);
-    if (old != value) {
-      Preferences.setObject(user, name, String.valueOf(value), IntegerPool.get(value));
+    String string = String.valueOf(value);
+    if (!Preferences.getString(user, name).equals(string)) {
+      Preferences.setObject(user, name, string, IntegerPool.get(value));
     }
   }
 
   public static final void setLong(final String user, final String name, final long value) {
-    long old = Preferences.getLong(user, name);
-    if (old != value) {
-      Preferences.setObject(user, name, String.valueOf(value), value);
+    String string = String.valueOf(value);
+    if (!Preferences.getString(user, name).equals(string)) {
+      Preferences.setObject(user, name, string, value);
     }
   }
 
   public static final void setFloat(final String user, final String name, final float value) {
-    float old = Preferences.getFloat(user, name);
-    if (old != value) {
-      Preferences.setObject(user, name, String.valueOf(value), value);
+    String string = String.valueOf(value);
+    if (!Preferences.getString(user, name).equals(string)) {
+      Preferences.setObject(user, name, string, value);
     }
   }
 
   public static final void setDouble(final String user, final String name, final double value) {
-    double old = Preferences.getDouble(user, name);
-    if (old != value) {
-      Preferences.setObject(user, name, String.valueOf(value), value);
+    String string = String.valueOf(value);
+    if (!Preferences.getString(user, name).equals(string)) {
+      Preferences.setObject(user, name, string, value);
     }
   }
 
@@ -1006,20 +1137,23 @@ public class Preferences {
     if (Preferences.isGlobalProperty(name)) {
       String actualName = Preferences.propertyName(user, name);
 
-      // We might be changing the structure of the map.
-      // globalValues is a synchronized map.
-
-      Preferences.globalValues.put(actualName, object);
+      Preferences.globalValues.put(actualName, new Value(value, object));
       if (Preferences.getBoolean("saveSettingsOnSet")) {
-        Preferences.saveToFile(Preferences.globalPropertiesFile, Preferences.globalValues);
+        Preferences.markDirty(true);
       }
-    } else if (Preferences.userPropertiesFile != null) {
-      // We might be changing the structure of the map.
-      // userValues is a synchronized map.
+    } else {
+      boolean stored = false;
 
-      Preferences.userValues.put(name, object);
-      if (Preferences.getBoolean("saveSettingsOnSet")) {
-        Preferences.saveToFile(Preferences.userPropertiesFile, Preferences.userValues);
+      // Not while reset is loading the map
+      synchronized (Preferences.userValues) {
+        if (Preferences.userPropertiesFile != null) {
+          Preferences.userValues.put(name, new Value(value, object));
+          stored = true;
+        }
+      }
+
+      if (stored && Preferences.getBoolean("saveSettingsOnSet")) {
+        Preferences.markDirty(false);
       }
     }
 
@@ -1034,47 +1168,138 @@ public class Preferences {
     return user == null ? name : name + "." + Preferences.baseUserName(user);
   }
 
-  private static void saveToFile(File file, Map<String, Object> data) {
-    if (!Preferences.saveSettingsToFile) {
-      return;
+  private static void markDirty(final boolean global) {
+    synchronized (lock) {
+      if (global) {
+        Preferences.globalDirty = true;
+      } else {
+        Preferences.userDirty = true;
+      }
+
+      if (Preferences.pendingFlush == null) {
+        Preferences.pendingFlush =
+            Preferences.flusher.schedule(
+                Preferences::flush, Preferences.FLUSH_DELAY, TimeUnit.MILLISECONDS);
+      }
     }
+  }
 
-    // See Collections.synchronizedSortedMap
-    //
-    // We are essentially iterating over the map. Not exactly - we
-    // are iterating over the entrySet - but let's keep the map and
-    // the file in synch atomically
+  // Writes any changed files without waiting for the flusher
+  public static void flush() {
+    // Not while reset is switching users, lest one user's values go into the other's file
+    synchronized (Preferences.userValues) {
+      boolean global;
+      boolean user;
+
+      synchronized (lock) {
+        global = Preferences.globalDirty;
+        user = Preferences.userDirty;
+        Preferences.globalDirty = false;
+        Preferences.userDirty = false;
+        if (Preferences.pendingFlush != null) {
+          Preferences.pendingFlush.cancel(false);
+          Preferences.pendingFlush = null;
+        }
+      }
 
-    synchronized (lock) {
-      // Determine the contents of the file by
-      // actually printing them.
+      if (global) {
+        Preferences.saveToFile(Preferences.globalPropertiesFile, Preferences.globalValues);
+      }
 
-      ByteArrayOutputStream ostream = new ByteArrayOutputStream();
+      if (user) {
+        Preferences.saveToFile(Preferences.userPropertiesFile, Preferences.userValues);
+      }
+    }
+  }
 
-      try {
-        for (Entry<String, Object> current : data.entrySet()) {
-          ostream.write(
-              Preferences.encodeProperty(current.getKey(), current.getValue().toString())
-                  .getBytes());
-          ostream.write(LINE_BREAK_AS_BYTES);
-        }
-      } catch (IOException e) {
-        System.out.println(e.getMessage() + " trying to write preferences as byte array.");
+  // Called when a request sequence ends: write changed files now, rather than after the delay
+  public static void flushSoon() {
+    synchronized (lock) {
+      if (!Preferences.globalDirty && !Preferences.userDirty) {
+        return;
       }
 
-      OutputStream fstream = DataUtilities.getOutputStream(file);
+      if (Preferences.pendingFlush != null) {
+        Preferences.pendingFlush.cancel(false);
+      }
+      Preferences.pendingFlush =
+          Preferences.flusher.schedule(Preferences::flush, 0, TimeUnit.MILLISECONDS);
+    }
+  }
 
-      try {
-        ostream.writeTo(fstream);
-      } catch (IOException e) {
-        System.out.println(e.getMessage() + " trying to write preferences as stream.");
+  public static boolean isFlushPending() {
+    synchronized (lock) {
+      return Preferences.globalDirty || Preferences.userDirty;
+    }
+  }
+
+  private static void saveToFile(File file, Map<String, Value> data) {
+    if (!Preferences.saveSettingsToFile || file == null) {
+      return;
+    }
+
+    // Determine the contents of the file by
+    // actually printing them.
+
+    ByteArrayOutputStream ostream = new ByteArrayOutputStream();
+    long version;
+
+    // The map does not stand still while we copy it.  Anything changed after the version is
+    // taken has marked the file dirty again, so it will be in a later write if not this one.
+
+    version = Preferences.saveVersion.incrementAndGet();
+    SortedMap<String, Value> sorted = new TreeMap<>(data);
+
+    try {
+      for (Entry<String, Value> current : sorted.entrySet()) {
+        ostream.write(
+            Preferences.encodeProperty(current.getKey(), current.getValue().string).getBytes());
+        ostream.write(LINE_BREAK_AS_BYTES);
       }
+    } catch (IOException e) {
+      System.out.println(e.getMessage() + " trying to write preferences as byte array.");
+    }
 
+    synchronized (lock) {
+      // Another thread already wrote a later copy
+      Long written = Preferences.writtenVersions.get(file);
+      if (written != null && written > version) {
+        return;
+      }
+      Preferences.writtenVersions.put(file, version);
+
+      Preferences.writeFile(file, ostream);
+    }
+  }
+
+  // Writes to a temporary file and renames it over the old one, so that the file is
+  // never left half written.
+  private static void writeFile(File file, ByteArrayOutputStream contents) {
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (!parent.exists()) {
+      parent.mkdirs();
+    }
+
+    File temp = new File(parent, file.getName() + ".tmp");
+    try (OutputStream fstream = new FileOutputStream(temp)) {
+      contents.writeTo(fstream);
+    } catch (IOException e) {
+      System.out.println(e.getMessage() + " trying to write preferences as stream.");
+      return;
+    }
+
+    try {
       try {
-        fstream.close();
-      } catch (IOException e) {
-        System.out.println(e.getMessage() + " trying to close preferences stream.");
+        Files.move(
+            temp.toPath(),
+            file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
       }
+    } catch (IOException e) {
+      System.out.println(e.getMessage() + " trying to replace preferences file.");
     }
   }
 
@@ -1112,11 +1337,7 @@ public class Preferences {
   }
 
   public static void resetDailies() {
-    // See Collections.synchronizedSortedMap
-    //
-    // userValues is a synchronized map, but we are doing a mass
-    // change to it.
-
+    // We are doing a mass change to the user map
     synchronized (Preferences.userValues) {
       Iterator<String> it = Preferences.userValues.keySet().iterator();
       while (it.hasNext()) {
@@ -1132,33 +1353,26 @@ public class Preferences {
           Preferences.setString(name, val);
         }
       }
+    }
 
-      if (Preferences.getBoolean("saveSettingsOnSet")) {
-        Preferences.saveToFile(Preferences.userPropertiesFile, Preferences.userValues);
-      }
+    if (Preferences.getBoolean("saveSettingsOnSet")) {
+      Preferences.markDirty(false);
     }
   }
 
   public static void resetGlobalDailies() {
-    // See Collections.synchronizedSortedMap
-    //
-    // globalValues is a synchronized map, but we are doing a mass
-    // change to it.
-
-    synchronized (Preferences.globalValues) {
-      for (String name : Preferences.globalValues.keySet()) {
-        if (isDaily(name)) {
-          String val = Preferences.globalNames.get(name);
-          if (val == null) val = "";
-          Preferences.setString(name, val);
-        }
+    for (String name : Preferences.globalValues.keySet()) {
+      if (isDaily(name)) {
+        String val = Preferences.globalNames.get(name);
+        if (val == null) val = "";
+        Preferences.setString(name, val);
       }
+    }
 
-      Preferences.setLong("lastGlobalCounterDay", KoLCharacter.getRollover());
+    Preferences.setLong("lastGlobalCounterDay", KoLCharacter.getRollover());
 
-      if (Preferences.getBoolean("saveSettingsOnSet")) {
-        Preferences.saveToFile(Preferences.globalPropertiesFile, Preferences.globalValues);
-      }
+    if (Preferences.getBoolean("saveSettingsOnSet")) {
+      Preferences.markDirty(true);
     }
   }
 
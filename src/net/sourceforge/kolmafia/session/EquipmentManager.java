@@ -2036,7 +2036,7 @@ public class EquipmentManager {
           return Integer.MAX_VALUE;
         }
         hitStat = KoLCharacter.getAdjustedMuscle();
-        if (Modifiers.unarmed && KoLCharacter.hasSkill("Master of the Surprising Fist")) {
+        if (Modifiers.isUnarmed() && KoLCharacter.hasSkill("Master of the Surprising Fist")) {
           hitStat += 20;
         }
         return hitStat;
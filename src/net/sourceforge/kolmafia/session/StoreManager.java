@@ -2,14 +2,22 @@ package net.sourceforge.kolmafia.session;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import net.java.dev.spellcast.utilities.LockableListModel;
@@ -20,11 +28,13 @@ import net.sourceforge.kolmafia.KoLConstants.MafiaState;
 import net.sourceforge.kolmafia.KoLmafia;
 import net.sourceforge.kolmafia.RequestLogger;
 import net.sourceforge.kolmafia.RequestThread;
+import net.sourceforge.kolmafia.StaticEntity;
 import net.sourceforge.kolmafia.objectpool.IntegerPool;
 import net.sourceforge.kolmafia.objectpool.ItemPool;
 import net.sourceforge.kolmafia.persistence.ItemDatabase;
 import net.sourceforge.kolmafia.persistence.MallPriceDatabase;
 import net.sourceforge.kolmafia.persistence.NPCStoreDatabase;
+import net.sourceforge.kolmafia.preferences.Preferences;
 import net.sourceforge.kolmafia.request.AutoMallRequest;
 import net.sourceforge.kolmafia.request.AutoSellRequest;
 import net.sourceforge.kolmafia.request.CoinMasterPurchaseRequest;
@@ -702,7 +712,7 @@ public abstract class StoreManager {
     }
   }
 
-  public static final void maybeUpdateMallPrice(
+  public static final synchronized void maybeUpdateMallPrice(
       final AdventureResult item, final ArrayList<PurchaseRequest> results) {
     if (StoreManager.mallPrices.get(item.getItemId()) == 0) {
       StoreManager.updateMallPrice(item, results);
@@ -714,7 +724,7 @@ public abstract class StoreManager {
     return StoreManager.updateMallPrice(item, results, false);
   }
 
-  public static final int updateMallPrice(
+  public static final synchronized int updateMallPrice(
       final AdventureResult item,
       final ArrayList<PurchaseRequest> results,
       final boolean deferred) {
@@ -795,6 +805,118 @@ public abstract class StoreManager {
     return count;
   }
 
+  // Mall searches made ahead of time run on this pool.  Each of its threads has its own
+  // continuation state, so a search which fails is reported with its results rather than
+  // stopping the session, or the caller taking an empty search for the item's price.
+  private static ExecutorService mallSearchPool = null;
+
+  private static class MallSearch {
+    private final ArrayList<PurchaseRequest> results;
+    private final boolean failed;
+
+    MallSearch(final ArrayList<PurchaseRequest> results, final boolean failed) {
+      this.results = results;
+      this.failed = failed;
+    }
+  }
+
+  private static synchronized ExecutorService getMallSearchPool() {
+    if (StoreManager.mallSearchPool == null) {
+      StoreManager.mallSearchPool =
+          Executors.newFixedThreadPool(
+              Math.max(1, Preferences.getInteger("mallSearchThreadPoolSize")),
+              runnable -> {
+                Thread thread =
+                    new Thread(
+                        () -> {
+                          StaticEntity.useOwnContinuationState();
+                          runnable.run();
+                        },
+                        "Mall search");
+                thread.setDaemon(true);
+                return thread;
+              });
+    }
+    return StoreManager.mallSearchPool;
+  }
+
+  /**
+   * Looks up the mall prices of all of the given items which are not yet known this session,
+   * issuing up to mallSearchThreadPoolSize searches at a time. The results land in the same caches
+   * that getMallPrice uses, so later calls for these items do not search the mall. An item whose
+   * search fails is left for getMallPrice to search again.
+   */
+  public static void prefetchMallPrices(final Collection<? extends AdventureResult> items) {
+    StoreManager.prefetchMallPrices(items, name -> StoreManager.searchMall("\"" + name + "\"", 0));
+  }
+
+  static void prefetchMallPrices(
+      final Collection<? extends AdventureResult> items,
+      final Function<String, ArrayList<PurchaseRequest>> searcher) {
+    Map<Integer, AdventureResult> wanted = new LinkedHashMap<Integer, AdventureResult>();
+    synchronized (StoreManager.class) {
+      for (AdventureResult item : items) {
+        int itemId = item.getItemId();
+        if (itemId < 1
+            || wanted.containsKey(itemId)
+            || StoreManager.mallPrices.get(itemId) != 0
+            || (!ItemDatabase.isTradeable(itemId) && !NPCStoreDatabase.contains(itemId, true))) {
+          continue;
+        }
+        wanted.put(itemId, ItemPool.get(itemId, 1));
+      }
+    }
+
+    // A single search gains nothing from a thread pool
+    if (wanted.size() < 2 || GenericRequest.abortIfInFightOrChoice()) {
+      return;
+    }
+
+    KoLmafia.updateDisplay("Searching the mall for " + wanted.size() + " prices...");
+
+    List<Callable<MallSearch>> searches = new ArrayList<Callable<MallSearch>>();
+    for (Integer id : wanted.keySet()) {
+      String name = ItemDatabase.getItemDataName(id);
+      searches.add(
+          () -> {
+            StaticEntity.setContinuationState(MafiaState.CONTINUE);
+            ArrayList<PurchaseRequest> results = searcher.apply(name);
+            return new MallSearch(results, !KoLmafia.permitsContinue());
+          });
+    }
+
+    try {
+      // invokeAll returns after every search has completed, in the order they were submitted
+      List<Future<MallSearch>> futures = StoreManager.getMallSearchPool().invokeAll(searches);
+      Iterator<AdventureResult> it = wanted.values().iterator();
+      for (Future<MallSearch> future : futures) {
+        AdventureResult item = it.next();
+        MallSearch search = future.get();
+        if (search.failed) {
+          continue;
+        }
+
+        // Flush CoinMasterPurchaseRequests
+        ArrayList<PurchaseRequest> results = search.results;
+        results.removeIf(result -> result instanceof CoinMasterPurchaseRequest);
+
+        // The same lock as getMallPrice, which reads these caches
+        synchronized (StoreManager.class) {
+          StoreManager.mallSearches.remove(item.getItemId());
+          StoreManager.mallSearches.put(item.getItemId(), results);
+          StoreManager.updateMallPrice(item, results, true);
+        }
+      }
+    } catch (InterruptedException e) {
+      // Leave the prices found so far, and let the caller see the interrupt
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      StaticEntity.printStackTrace(e);
+    } finally {
+      MallPriceDatabase.writePrices();
+    }
+  }
+
   public static int getMallPrices(String category) {
     return getMallPrices(category, "");
   }
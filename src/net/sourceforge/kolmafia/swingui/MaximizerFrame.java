@@ -22,6 +22,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.JTabbedPane;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import net.java.dev.spellcast.utilities.DataUtilities;
@@ -33,6 +34,7 @@ import net.sourceforge.kolmafia.listener.Listener;
 import net.sourceforge.kolmafia.listener.NamedListenerRegistry;
 import net.sourceforge.kolmafia.maximizer.Boost;
 import net.sourceforge.kolmafia.maximizer.Maximizer;
+import net.sourceforge.kolmafia.maximizer.MaximizerListener;
 import net.sourceforge.kolmafia.maximizer.MaximizerSpeculation;
 import net.sourceforge.kolmafia.persistence.ConcoctionDatabase;
 import net.sourceforge.kolmafia.preferences.Preferences;
@@ -141,14 +143,35 @@ public class MaximizerFrame extends GenericFrame implements ListSelectionListene
   }
 
   public void maximize() {
-    Maximizer.maximize(
-        this.equipmentSelect.getSelectedIndex(),
-        InputFieldUtilities.getValue(this.maxPriceField),
-        this.mallSelect.getSelectedIndex(),
-        Preferences.getBoolean("maximizerIncludeAll"),
-        this.activeFilters);
-
-    this.valueChanged(null);
+    // Show the best equipment score as the search finds it
+    MaximizerListener listener =
+        best -> {
+          String text =
+              "Best so far: "
+                  + KoLConstants.FLOAT_FORMAT.format(best.getScore())
+                  + (best.failed ? " (FAILED)" : "");
+          SwingUtilities.invokeLater(
+              () -> {
+                if (this.listTitle != null) {
+                  this.listTitle.setText(text);
+                }
+              });
+        };
+
+    Maximizer.addListener(listener);
+    try {
+      Maximizer.maximize(
+          this.equipmentSelect.getSelectedIndex(),
+          InputFieldUtilities.getValue(this.maxPriceField),
+          this.mallSelect.getSelectedIndex(),
+          Preferences.getBoolean("maximizerIncludeAll"),
+          this.activeFilters);
+    } finally {
+      Maximizer.removeListener(listener);
+    }
+
+    // After any progress updates still waiting to be shown
+    SwingUtilities.invokeLater(() -> this.valueChanged(null));
   }
 
   private class MaximizerPanel extends GenericPanel implements ItemListener, ActionListener {
@@ -51,6 +51,7 @@ import net.sourceforge.kolmafia.KoLmafiaASH;
 import net.sourceforge.kolmafia.KoLmafiaCLI;
 import net.sourceforge.kolmafia.KoLmafiaGUI;
 import net.sourceforge.kolmafia.ModifierExpression;
+import net.sourceforge.kolmafia.ModifierIndex;
 import net.sourceforge.kolmafia.Modifiers;
 import net.sourceforge.kolmafia.Modifiers.Modifier;
 import net.sourceforge.kolmafia.MonsterData;
@@ -70,6 +71,7 @@ import net.sourceforge.kolmafia.combat.Macrofier;
 import net.sourceforge.kolmafia.combat.MonsterStatusTracker;
 import net.sourceforge.kolmafia.maximizer.Boost;
 import net.sourceforge.kolmafia.maximizer.Maximizer;
+import net.sourceforge.kolmafia.maximizer.MaximizerListener;
 import net.sourceforge.kolmafia.moods.Mood;
 import net.sourceforge.kolmafia.moods.MoodManager;
 import net.sourceforge.kolmafia.moods.MoodTrigger;
@@ -204,6 +206,17 @@ public abstract class RuntimeLibrary {
             DataTypes.SKILL_TYPE
           });
 
+  private static final RecordType modifierSourceRec =
+      new RecordType(
+          "{string type; string name; float value; boolean variable;}",
+          new String[] {"type", "name", "value", "variable"},
+          new Type[] {
+            DataTypes.STRING_TYPE,
+            DataTypes.STRING_TYPE,
+            DataTypes.FLOAT_TYPE,
+            DataTypes.BOOLEAN_TYPE
+          });
+
   private static final RecordType svnInfoRec =
       new RecordType(
           "{string url; int revision; string last_changed_author; int last_changed_rev; string last_changed_date;}",
@@ -1859,6 +1872,15 @@ public abstract class RuntimeLibrary {
     params = new Type[] {DataTypes.STRING_TYPE, DataTypes.BOOLEAN_TYPE};
     functions.add(new LibraryFunction("maximize", DataTypes.BOOLEAN_TYPE, params));
 
+    params = new Type[] {DataTypes.STRING_TYPE, DataTypes.BOOLEAN_TYPE, DataTypes.INT_TYPE};
+    functions.add(new LibraryFunction("maximize", DataTypes.BOOLEAN_TYPE, params));
+
+    params =
+        new Type[] {
+          DataTypes.STRING_TYPE, DataTypes.BOOLEAN_TYPE, DataTypes.INT_TYPE, DataTypes.STRING_TYPE
+        };
+    functions.add(new LibraryFunction("maximize", DataTypes.BOOLEAN_TYPE, params));
+
     params =
         new Type[] {
           DataTypes.STRING_TYPE, DataTypes.INT_TYPE, DataTypes.INT_TYPE, DataTypes.BOOLEAN_TYPE
@@ -1875,6 +1897,19 @@ public abstract class RuntimeLibrary {
         };
     functions.add(new LibraryFunction("maximize", maximizerResultsArray, params));
 
+    params =
+        new Type[] {
+          new AggregateType(DataTypes.STRING_TYPE, 0),
+          DataTypes.INT_TYPE,
+          DataTypes.INT_TYPE,
+          DataTypes.BOOLEAN_TYPE
+        };
+    functions.add(
+        new LibraryFunction(
+            "maximize_batch",
+            new AggregateType(maximizerResultsArray, DataTypes.STRING_TYPE),
+            params));
+
     params = new Type[] {DataTypes.STRING_TYPE};
     functions.add(new LibraryFunction("monster_eval", DataTypes.FLOAT_TYPE, params));
 
@@ -2331,6 +2366,10 @@ public abstract class RuntimeLibrary {
     params = new Type[] {DataTypes.EFFECT_TYPE, DataTypes.STRING_TYPE};
     functions.add(new LibraryFunction("stat_modifier", DataTypes.STAT_TYPE, params));
 
+    params = new Type[] {DataTypes.STRING_TYPE};
+    functions.add(
+        new LibraryFunction("modifier_sources", new AggregateType(modifierSourceRec, 0), params));
+
     // Quest status inquiries
 
     params = new Type[] {};
@@ -7129,12 +7168,59 @@ public abstract class RuntimeLibrary {
         isSpeculateOnlyValue);
   }
 
+  public static Value maximize(
+      ScriptRuntime controller,
+      final Value maximizerStringValue,
+      final Value isSpeculateOnlyValue,
+      final Value timeLimitValue) {
+    String maximizerString = maximizerStringValue.toString();
+    boolean isSpeculateOnly = isSpeculateOnlyValue.intValue() != 0;
+    long timeLimit = timeLimitValue.intValue();
+
+    return new Value(Maximizer.maximize(maximizerString, 0, 0, isSpeculateOnly, timeLimit));
+  }
+
+  private static Value maximizeWithCallback(
+      ScriptRuntime controller,
+      final Value maximizerStringValue,
+      final Value isSpeculateOnlyValue,
+      final Value timeLimitValue,
+      final Value callbackValue) {
+    String callback = callbackValue.toString();
+    if (callback.equals("")) {
+      return maximize(controller, maximizerStringValue, isSpeculateOnlyValue, timeLimitValue);
+    }
+
+    // Calls void callback( float score, familiar fam ) with each combination
+    // which beats the best found so far, on the script's own thread.
+    MaximizerListener listener =
+        best -> {
+          Object[] parameters = new Object[2];
+          parameters[0] = String.valueOf(best.getScore());
+          parameters[1] = DataTypes.makeFamiliarValue(best.getFamiliar().getId(), true).toString();
+          controller.execute(callback, parameters, false);
+        };
+
+    Maximizer.addListener(listener);
+    try {
+      return maximize(controller, maximizerStringValue, isSpeculateOnlyValue, timeLimitValue);
+    } finally {
+      Maximizer.removeListener(listener);
+    }
+  }
+
   public static Value maximize(
       ScriptRuntime controller,
       final Value maximizerStringValue,
       final Value maxPriceValue,
       final Value priceLevelValue,
       final Value isSpeculateOnlyValue) {
+    // maximize(string, boolean, int, string) binds to this method, too
+    if (maxPriceValue.getType().equals(DataTypes.BOOLEAN_TYPE)) {
+      return maximizeWithCallback(
+          controller, maximizerStringValue, maxPriceValue, priceLevelValue, isSpeculateOnlyValue);
+    }
+
     String maximizerString = maximizerStringValue.toString();
     int maxPrice = (int) maxPriceValue.intValue();
     int priceLevel = (int) priceLevelValue.intValue();
@@ -7158,8 +7244,39 @@ public abstract class RuntimeLibrary {
 
     Maximizer.maximize(maximizerString, maxPrice, priceLevel, isSpeculateOnly);
 
-    List<Boost> m = Maximizer.boosts;
+    return RuntimeLibrary.makeMaximizerResults(Maximizer.boosts, showEquip);
+  }
 
+  public static Value maximize_batch(
+      ScriptRuntime controller,
+      final Value expressionsValue,
+      final Value maxPriceValue,
+      final Value priceLevelValue,
+      final Value showEquipment) {
+    AggregateValue aggregate = (AggregateValue) expressionsValue;
+    List<String> expressions = new ArrayList<>();
+    for (Value key : aggregate.keys()) {
+      expressions.add(aggregate.aref(key).toString());
+    }
+    int maxPrice = (int) maxPriceValue.intValue();
+    int priceLevel = (int) priceLevelValue.intValue();
+    boolean showEquip = showEquipment.intValue() == 1;
+
+    Map<String, List<Boost>> results = Maximizer.maximizeBatch(expressions, maxPrice, priceLevel);
+
+    AggregateType type =
+        new AggregateType(new AggregateType(maximizerResults, 0), DataTypes.STRING_TYPE);
+    MapValue value = new MapValue(type);
+    for (Entry<String, List<Boost>> entry : results.entrySet()) {
+      value.aset(
+          new Value(entry.getKey()),
+          RuntimeLibrary.makeMaximizerResults(entry.getValue(), showEquip));
+    }
+
+    return value;
+  }
+
+  private static Value makeMaximizerResults(final List<Boost> m, final boolean showEquip) {
     int lastEquipIndex = 0;
 
     if (!showEquip) {
@@ -8698,6 +8815,23 @@ public abstract class RuntimeLibrary {
     return new Value(DataTypes.parseSkillValue(Modifiers.getStringModifier(type, name, mod), true));
   }
 
+  public static Value modifier_sources(ScriptRuntime controller, final Value modifier) {
+    List<ModifierIndex.Source> sources = ModifierIndex.getSources(modifier.toString());
+    AggregateType type = new AggregateType(RuntimeLibrary.modifierSourceRec, sources.size());
+    ArrayValue value = new ArrayValue(type);
+    for (int i = 0; i < sources.size(); ++i) {
+      ModifierIndex.Source source = sources.get(i);
+      RecordValue rec = (RecordValue) value.aref(new Value(i));
+
+      rec.aset(0, new Value(source.getType()), null);
+      rec.aset(1, new Value(source.getName()), null);
+      rec.aset(2, new Value(source.getValue()), null);
+      rec.aset(3, DataTypes.makeBooleanValue(source.isVariable()), null);
+    }
+
+    return value;
+  }
+
   public static Value stat_modifier(
       ScriptRuntime controller, final Value arg, final Value modifier) {
     String type = RuntimeLibrary.getModifierType(arg);
@@ -0,0 +1,38 @@
+package net.sourceforge.kolmafia.textui.command;
+
+import net.sourceforge.kolmafia.AdjustmentsCache;
+import net.sourceforge.kolmafia.KoLConstants;
+import net.sourceforge.kolmafia.RequestLogger;
+
+public class AdjustmentsCommand extends AbstractCommand {
+  public AdjustmentsCommand() {
+    this.usage = " [reset] - show or reset counts of skipped modifier recalculations.";
+  }
+
+  @Override
+  public void run(final String cmd, final String parameters) {
+    if (parameters.trim().equals("reset")) {
+      AdjustmentsCache.resetCounters();
+      RequestLogger.printLine("Recalculation counters reset.");
+      return;
+    }
+
+    int hits = AdjustmentsCache.getHits();
+    int misses = AdjustmentsCache.getMisses();
+    long checkMillis = AdjustmentsCache.getCheckNanos() / 1000000L;
+    long recalculateMillis = AdjustmentsCache.getRecalculateNanos() / 1000000L;
+
+    RequestLogger.printLine(
+        "Modifier recalculations: "
+            + KoLConstants.COMMA_FORMAT.format(hits + misses)
+            + " requested, "
+            + KoLConstants.COMMA_FORMAT.format(hits)
+            + " skipped, "
+            + KoLConstants.COMMA_FORMAT.format(misses)
+            + " performed in "
+            + KoLConstants.COMMA_FORMAT.format(recalculateMillis)
+            + " ms; checking for changes took "
+            + KoLConstants.COMMA_FORMAT.format(checkMillis)
+            + " ms");
+  }
+}
@@ -4,12 +4,13 @@ import net.sourceforge.kolmafia.KoLConstants.MafiaState;
 import net.sourceforge.kolmafia.KoLmafia;
 import net.sourceforge.kolmafia.RequestLogger;
 import net.sourceforge.kolmafia.listener.ListenerRegistry;
+import net.sourceforge.kolmafia.listener.PreferenceListenerRegistry;
 import net.sourceforge.kolmafia.textui.ScriptRuntime;
 
 public class DebugRequestCommand extends AbstractCommand {
   public DebugRequestCommand() {
     this.usage =
-        " [on] | off | ? | note | trace [ [on] | off | ? ] | ash [ [on] | off ] | listener [ [on] | off ] - start or stop logging of debugging data.";
+        " [on] | off | ? | note | trace [ [on] | off | ? ] | ash [ [on] | off ] | listener [ [on] | off | ? ] - start or stop logging of debugging data.";
   }
 
   @Override
@@ -53,6 +54,8 @@ public class DebugRequestCommand extends AbstractCommand {
         ListenerRegistry.setLogging(true);
       } else if (command.equals("off")) {
         ListenerRegistry.setLogging(false);
+      } else if (command.equals("?")) {
+        RequestLogger.printLine(PreferenceListenerRegistry.getPreferenceListenerReport());
       }
     } else if (command.equals("note")) {
       String debugNote = parameters.substring(command.length()).trim();
@@ -1,26 +1,39 @@
 package net.sourceforge.kolmafia.textui.command;
 
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import net.sourceforge.kolmafia.KoLConstants.MafiaState;
 import net.sourceforge.kolmafia.KoLmafia;
 import net.sourceforge.kolmafia.KoLmafiaCLI;
 import net.sourceforge.kolmafia.RequestLogger;
 import net.sourceforge.kolmafia.maximizer.Maximizer;
+import net.sourceforge.kolmafia.utilities.StringUtilities;
 
 public class ModifierMaximizeCommand extends AbstractCommand {
   public ModifierMaximizeCommand() {
-    this.usage = "[?] [+|-|<weight>] <keyword>, ... - run the Modifier Maximizer.";
+    this.usage =
+        "[?] [within <msec>] [+|-|<weight>] <keyword>, ... - run the Modifier Maximizer, optionally settling for the best equipment found in the given time.";
   }
 
+  private static final Pattern WITHIN_PATTERN = Pattern.compile("^within\\s+(\\d+)\\s+(.*)$");
+
   @Override
-  public void run(final String command, final String parameters) {
+  public void run(final String command, String parameters) {
     boolean isSpeculateOnly = KoLmafiaCLI.isExecutingCheckOnlyCommand;
+    long timeLimit = 0;
+
+    Matcher matcher = ModifierMaximizeCommand.WITHIN_PATTERN.matcher(parameters.trim());
+    if (matcher.find()) {
+      timeLimit = StringUtilities.parseLong(matcher.group(1));
+      parameters = matcher.group(2);
+    }
 
     if (!isSpeculateOnly) {
       RequestLogger.updateSessionLog();
       RequestLogger.updateSessionLog(command + " " + parameters);
     }
 
-    if (!Maximizer.maximize(parameters, 0, 0, isSpeculateOnly) && !isSpeculateOnly) {
+    if (!Maximizer.maximize(parameters, 0, 0, isSpeculateOnly, timeLimit) && !isSpeculateOnly) {
       KoLmafia.updateDisplay(
           MafiaState.ERROR, "Unable to meet all requirements via equipment changes.");
       RequestLogger.printLine("See the Modifier Maximizer for further suggestions.");
@@ -0,0 +1,422 @@
+package net.sourceforge.kolmafia.utilities;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import net.java.dev.spellcast.utilities.UtilityConstants;
+
+// The bundled data files, already split into fields.
+//
+// The build runs main() over src/data to write data/snapshot.bin, and
+// FileUtilities.getVersionedReader reads a table from it rather than reading the text, skipping
+// its comments and splitting each line on tabs.  The text is read as before if there is no
+// snapshot, if the snapshot was made from a different copy of the file, or if the user has an
+// override of the file in their data directory.  Text in the same jar as the snapshot was built
+// with it; other text is only read to compare with the CRC32 each table keeps if it could have
+// been edited since.
+//
+// Each table has its own pool of strings, so a field that repeats is only decoded once.  When
+// the snapshot is a plain file it is memory-mapped; inside a jar it is read in one go.
+
+public class DataSnapshot {
+  public static final String FILENAME = "snapshot.bin";
+
+  private static final int MAGIC = 0x4b4d4453;
+  private static final int FORMAT = 2;
+
+  static class Table {
+    final long checksum;
+    final int offset;
+    // Whether the bundled text is still what the table was made from, once known
+    volatile Boolean current = null;
+
+    Table(final long checksum, final int offset) {
+      this.checksum = checksum;
+      this.offset = offset;
+    }
+  }
+
+  // Hands out the rows of a table as FileUtilities.readData would have
+  public static class TableReader extends BufferedReader {
+    private final String[][] rows;
+    private int next = 0;
+
+    TableReader(final String[][] rows) {
+      super(Reader.nullReader());
+      this.rows = rows;
+    }
+
+    public String[] readData() {
+      return this.next < this.rows.length ? this.rows[this.next++] : null;
+    }
+
+    @Override
+    public String readLine() {
+      String[] row = this.readData();
+      return row == null ? null : String.join("\t", row);
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  private static boolean loaded = false;
+  private static ByteBuffer buffer = null;
+  private static Map<String, Table> tables = null;
+
+  // The jar the snapshot is in, or else when the snapshot file was written
+  private static String jar = null;
+  private static long written = 0;
+
+  private static int hits = 0;
+
+  private DataSnapshot() {}
+
+  // A reader for the bundled copy of a data file, or null if it must be read as text
+  public static BufferedReader getReader(final String filename) {
+    String[][] rows = DataSnapshot.getRows(filename);
+    return rows == null ? null : new TableReader(rows);
+  }
+
+  private static String[][] getRows(final String filename) {
+    Table table;
+    synchronized (DataSnapshot.class) {
+      if (!DataSnapshot.load()) {
+        return null;
+      }
+      table = DataSnapshot.tables.get(filename);
+    }
+
+    if (table == null || !DataSnapshot.isCurrent(filename, table)) {
+      return null;
+    }
+
+    ByteBuffer in;
+    synchronized (DataSnapshot.class) {
+      in = DataSnapshot.buffer.duplicate();
+      in.position(table.offset);
+      DataSnapshot.hits++;
+    }
+
+    // Tables can be decoded on several threads at once
+    try {
+      return DataSnapshot.readTable(in);
+    } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+      return null;
+    }
+  }
+
+  // The rows of the bundled copy of a data file, from the snapshot or else the text
+  static String[][] readBundled(final String filename) throws IOException {
+    String[][] rows = DataSnapshot.getRows(filename);
+    if (rows != null) {
+      return rows;
+    }
+
+    URL url = DataSnapshot.getResource(filename);
+    if (url == null) {
+      return null;
+    }
+    try (InputStream istream = url.openStream()) {
+      return DataSnapshot.readRows(istream).toArray(new String[0][]);
+    }
+  }
+
+  public static synchronized boolean isAvailable() {
+    return DataSnapshot.load();
+  }
+
+  public static synchronized int getHits() {
+    return DataSnapshot.hits;
+  }
+
+  private static URL getResource(final String filename) {
+    String fullname = UtilityConstants.DATA_DIRECTORY + filename;
+    URL url = UtilityConstants.SYSTEM_CLASSLOADER.getResource(fullname);
+    if (url == null) {
+      url = UtilityConstants.MAINCLASS_CLASSLOADER.getResource(fullname);
+    }
+    return url;
+  }
+
+  // The jar a resource is in, such as "jar:file:/KoLmafia.jar", or null if it isn't in one
+  static String getJar(final URL url) {
+    String spec = url.toString();
+    int separator = spec.indexOf("!/");
+    return url.getProtocol().equals("jar") && separator != -1 ? spec.substring(0, separator) : null;
+  }
+
+  // Whether the bundled text is still what the table was made from.  Text in the snapshot's
+  // own jar was built along with it, and a plain file no newer than the snapshot hasn't been
+  // edited since, so only text from anywhere else needs to be read and checksummed.
+  private static boolean isCurrent(final String filename, final Table table) {
+    Boolean current = table.current;
+    if (current == null) {
+      current = DataSnapshot.checkText(DataSnapshot.getResource(filename), table);
+      table.current = current;
+    }
+    return current;
+  }
+
+  private static boolean checkText(final URL url, final Table table) {
+    if (url == null) {
+      return false;
+    }
+
+    if (DataSnapshot.jar != null) {
+      if (DataSnapshot.jar.equals(DataSnapshot.getJar(url))) {
+        return true;
+      }
+    } else if (url.getProtocol().equals("file")) {
+      try {
+        if (new File(url.toURI()).lastModified() <= DataSnapshot.written) {
+          return true;
+        }
+      } catch (URISyntaxException | IllegalArgumentException e) {
+        return false;
+      }
+    }
+
+    try (InputStream istream = url.openStream()) {
+      return DataSnapshot.checksum(istream) == table.checksum;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  static long checksum(final InputStream istream) throws IOException {
+    CheckedInputStream checked = new CheckedInputStream(istream, new CRC32());
+    checked.transferTo(OutputStream.nullOutputStream());
+    return checked.getChecksum().getValue();
+  }
+
+  private static boolean load() {
+    if (DataSnapshot.loaded) {
+      return DataSnapshot.buffer != null;
+    }
+    DataSnapshot.loaded = true;
+
+    URL url = DataSnapshot.getResource(DataSnapshot.FILENAME);
+    if (url == null) {
+      return false;
+    }
+
+    try {
+      ByteBuffer buffer;
+      if (url.getProtocol().equals("file")) {
+        File file = new File(url.toURI());
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+          buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        DataSnapshot.written = file.lastModified();
+      } else {
+        DataSnapshot.jar = DataSnapshot.getJar(url);
+        try (InputStream istream = url.openStream()) {
+          buffer = ByteBuffer.wrap(istream.readAllBytes());
+        }
+      }
+
+      Map<String, Table> tables = DataSnapshot.readDirectory(buffer);
+      if (tables == null) {
+        return false;
+      }
+
+      // Offsets are from the end of the directory
+      DataSnapshot.buffer = buffer.slice();
+      DataSnapshot.tables = tables;
+      return true;
+    } catch (IOException
+        | URISyntaxException
+        | IllegalArgumentException
+        | BufferUnderflowException
+        | IndexOutOfBoundsException e) {
+      return false;
+    }
+  }
+
+  // The tables in a snapshot, or null if it isn't one this version can read
+  static Map<String, Table> readDirectory(final ByteBuffer in) {
+    if (in.getInt() != DataSnapshot.MAGIC || in.getInt() != DataSnapshot.FORMAT) {
+      return null;
+    }
+
+    int count = DataSnapshot.readInt(in);
+    Map<String, Table> tables = new HashMap<>();
+    for (int i = 0; i < count; ++i) {
+      String name = DataSnapshot.readString(in);
+      long checksum = in.getLong();
+      int offset = DataSnapshot.readInt(in);
+      tables.put(name, new Table(checksum, offset));
+    }
+    return tables;
+  }
+
+  static String[][] readTable(final ByteBuffer in) {
+    String[] strings = new String[DataSnapshot.readInt(in)];
+    for (int i = 0; i < strings.length; ++i) {
+      strings[i] = DataSnapshot.readString(in);
+    }
+
+    String[][] rows = new String[DataSnapshot.readInt(in)][];
+    for (int i = 0; i < rows.length; ++i) {
+      String[] row = new String[DataSnapshot.readInt(in)];
+      for (int j = 0; j < row.length; ++j) {
+        row[j] = strings[DataSnapshot.readInt(in)];
+      }
+      rows[i] = row;
+    }
+    return rows;
+  }
+
+  private static int readInt(final ByteBuffer in) {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = in.get();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+
+  private static String readString(final ByteBuffer in) {
+    int length = DataSnapshot.readInt(in);
+    if (in.hasArray()) {
+      String value =
+          new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+      in.position(in.position() + length);
+      return value;
+    }
+    byte[] bytes = new byte[length];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeInt(final DataOutputStream out, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static void writeString(final DataOutputStream out, final String value)
+      throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    DataSnapshot.writeInt(out, bytes.length);
+    out.write(bytes);
+  }
+
+  // The rows of a data file, skipping comments and blank lines as FileUtilities.readLine does
+  static List<String[]> readRows(final InputStream istream) throws IOException {
+    List<String[]> rows = new ArrayList<>();
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(istream, StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith("#") || line.length() == 0) {
+          continue;
+        }
+        rows.add(line.split("\t", -1));
+      }
+    }
+    return rows;
+  }
+
+  static void writeTable(final DataOutputStream out, final List<String[]> rows) throws IOException {
+    Map<String, Integer> pool = new LinkedHashMap<>();
+    for (String[] row : rows) {
+      for (String field : row) {
+        pool.putIfAbsent(field, pool.size());
+      }
+    }
+
+    DataSnapshot.writeInt(out, pool.size());
+    for (String value : pool.keySet()) {
+      DataSnapshot.writeString(out, value);
+    }
+
+    DataSnapshot.writeInt(out, rows.size());
+    for (String[] row : rows) {
+      DataSnapshot.writeInt(out, row.length);
+      for (String field : row) {
+        DataSnapshot.writeInt(out, pool.get(field));
+      }
+    }
+  }
+
+  // Writes the snapshot of every .txt file in a directory
+  static void write(final File directory, final OutputStream ostream) throws IOException {
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(".txt"));
+    if (files == null) {
+      throw new IOException("Cannot list " + directory);
+    }
+    Arrays.sort(files);
+
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    DataOutputStream dataOut = new DataOutputStream(data);
+
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    DataOutputStream headerOut = new DataOutputStream(header);
+    headerOut.writeInt(DataSnapshot.MAGIC);
+    headerOut.writeInt(DataSnapshot.FORMAT);
+    DataSnapshot.writeInt(headerOut, files.length);
+
+    for (File file : files) {
+      DataSnapshot.writeString(headerOut, file.getName());
+      try (InputStream istream = new FileInputStream(file)) {
+        headerOut.writeLong(DataSnapshot.checksum(istream));
+      }
+      DataSnapshot.writeInt(headerOut, dataOut.size());
+
+      try (InputStream istream = new FileInputStream(file)) {
+        DataSnapshot.writeTable(dataOut, DataSnapshot.readRows(istream));
+      }
+    }
+
+    headerOut.flush();
+    dataOut.flush();
+    header.writeTo(ostream);
+    data.writeTo(ostream);
+  }
+
+  // Run by the build: DataSnapshot <data directory> <snapshot file>
+  public static void main(final String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: DataSnapshot <data directory> <snapshot file>");
+      System.exit(1);
+    }
+
+    File output = new File(args[1]);
+    File parent = output.getParentFile();
+    if (parent != null) {
+      parent.mkdirs();
+    }
+    try (OutputStream ostream = new FileOutputStream(output)) {
+      DataSnapshot.write(new File(args[0]), ostream);
+    }
+  }
+}
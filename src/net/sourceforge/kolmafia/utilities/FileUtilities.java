@@ -13,6 +13,12 @@ import java.net.URL;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
@@ -29,6 +35,8 @@ import net.sourceforge.kolmafia.request.GenericRequest;
 public class FileUtilities {
   private static final Pattern FILEID_PATTERN = Pattern.compile("(\\d+)\\.");
 
+  private static final Map<String, Future<String[][]>> prefetched = new ConcurrentHashMap<>();
+
   public static final BufferedReader getReader(final String filename, final boolean allowOverride) {
     return FileUtilities.getReader(
         DataUtilities.getReader(KoLConstants.DATA_DIRECTORY, filename, allowOverride));
@@ -55,9 +63,15 @@ public class FileUtilities {
   }
 
   public static final BufferedReader getVersionedReader(final String filename, final int version) {
-    BufferedReader reader =
-        FileUtilities.getReader(
-            DataUtilities.getReader(KoLConstants.DATA_DIRECTORY, filename, true));
+    BufferedReader reader = FileUtilities.getPrefetchedReader(filename);
+    if (reader == null) {
+      reader = FileUtilities.getSnapshotReader(filename);
+    }
+    if (reader == null) {
+      reader =
+          FileUtilities.getReader(
+              DataUtilities.getReader(KoLConstants.DATA_DIRECTORY, filename, true));
+    }
 
     // If no file, no reader
     if (reader == null) {
@@ -103,6 +117,61 @@ public class FileUtilities {
     return reader;
   }
 
+  // Starts reading and splitting the bundled copy of a data file, so that the next
+  // getVersionedReader for it need not wait for the disk.  A file the user has their
+  // own copy of is left to be read as usual.
+  public static final void prefetch(final String filename, final Executor executor) {
+    if (new File(KoLConstants.DATA_LOCATION, filename).exists()) {
+      return;
+    }
+
+    FileUtilities.prefetched.computeIfAbsent(
+        filename,
+        k ->
+            CompletableFuture.supplyAsync(
+                () -> {
+                  try {
+                    return DataSnapshot.readBundled(k);
+                  } catch (IOException e) {
+                    return null;
+                  }
+                },
+                executor));
+  }
+
+  public static final void clearPrefetched() {
+    FileUtilities.prefetched.clear();
+  }
+
+  private static BufferedReader getPrefetchedReader(final String filename) {
+    Future<String[][]> future = FileUtilities.prefetched.remove(filename);
+    if (future == null) {
+      return null;
+    }
+
+    try {
+      String[][] rows = future.get();
+      return rows == null ? null : new DataSnapshot.TableReader(rows);
+    } catch (InterruptedException | ExecutionException e) {
+      return null;
+    }
+  }
+
+  // The bundled copy of a data file already split into fields, unless the user has their own
+  private static BufferedReader getSnapshotReader(final String filename) {
+    InputStream override =
+        DataUtilities.getOverrideStream(KoLConstants.DATA_DIRECTORY + filename, true);
+    if (override != null) {
+      try {
+        override.close();
+      } catch (IOException e) {
+        StaticEntity.printStackTrace(e);
+      }
+      return null;
+    }
+    return DataSnapshot.getReader(filename);
+  }
+
   public static final String readLine(final BufferedReader reader) {
     if (reader == null) {
       return null;
@@ -132,6 +201,10 @@ public class FileUtilities {
       return null;
     }
 
+    if (reader instanceof DataSnapshot.TableReader) {
+      return ((DataSnapshot.TableReader) reader).readData();
+    }
+
     String line = readLine(reader);
     return line == null ? null : line.split("\t", -1);
   }
@@ -0,0 +1,53 @@
+package net.sourceforge.kolmafia;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+public class ExpressionTest {
+  @Test
+  public void evaluatesArithmetic() {
+    assertEquals(7.0, new Expression("1+2*3", "test").eval());
+    assertEquals(-1.0, new Expression("2-3", "test").eval());
+    assertEquals(2.0, new Expression("6/3", "test").eval());
+    assertEquals(8.0, new Expression("2^3", "test").eval());
+    assertEquals(1.0, new Expression("7%3", "test").eval());
+    assertEquals(-4.0, new Expression("-(1+3)", "test").eval());
+    assertEquals(3.0, new Expression("max(min(5,3),ceil(1.5))", "test").eval());
+    assertEquals(2.5, new Expression("abs(-2.5)", "test").eval());
+    assertEquals(3.0, new Expression("sqrt(9)", "test").eval());
+    assertEquals(1234.0, new ModifierExpression("stripcommas(1,234)", "Item:test").eval());
+  }
+
+  @Test
+  public void reportsErrorsWhenEvaluated() {
+    Expression expr = new Expression("1/(2-2)", "test");
+    assertFalse(expr.hasErrors());
+    assertEquals(0.0, expr.eval());
+    assertTrue(new Expression("1+", "test").hasErrors());
+  }
+
+  @Test
+  public void evaluatesConcurrently() throws Exception {
+    Expression expr = new MonsterExpression("(1+2)*(3+4)+min(10,sqrt(16))", "test");
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Double>> results = new ArrayList<>();
+      for (int i = 0; i < 1000; ++i) {
+        results.add(pool.submit(expr::evalInternal));
+      }
+      for (Future<Double> result : results) {
+        assertEquals(25.0, result.get());
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
@@ -69,6 +69,51 @@ public class KoLCharacterTest {
     assertEquals(ZodiacZone.NONE, KoLCharacter.getSignZone());
   }
 
+  @Test
+  public void recalculationSeesPreferenceChanges() {
+    KoLCharacter.reset("testname");
+    KoLCharacter.recalculateAdjustments();
+
+    Preferences.setInteger("lastQuartetRequest", 3);
+    Preferences.setInteger("lastQuartetAscension", KoLCharacter.getAscensions());
+    KoLCharacter.recalculateAdjustments();
+    assertEquals(5.0, KoLCharacter.currentNumericModifier(Modifiers.ITEMDROP));
+  }
+
+  @Test
+  public void skipsRecalculationOnlyWhenNothingItReadsChanged() {
+    KoLCharacter.reset("testname");
+    KoLCharacter.recalculateAdjustments();
+    KoLCharacter.recalculateAdjustments();
+
+    int hits = AdjustmentsCache.getHits();
+    KoLCharacter.recalculateAdjustments();
+    assertEquals(hits + 1, AdjustmentsCache.getHits());
+
+    // A preference the calculation doesn't read
+    Preferences.setInteger("lastDwarfFactoryReset", 7);
+    KoLCharacter.recalculateAdjustments();
+    assertEquals(hits + 2, AdjustmentsCache.getHits());
+
+    // Preferences it does read
+    Preferences.setInteger("lastQuartetRequest", 3);
+    Preferences.setInteger("lastQuartetAscension", KoLCharacter.getAscensions());
+    KoLCharacter.recalculateAdjustments();
+    assertEquals(hits + 2, AdjustmentsCache.getHits());
+    assertEquals(5.0, KoLCharacter.currentNumericModifier(Modifiers.ITEMDROP));
+
+    // State other than preferences
+    VYKEACompanionData.currentCompanion =
+        new VYKEACompanionData(VYKEACompanionData.LAMP, 3, VYKEACompanionData.NO_RUNE, "Lampy");
+    try {
+      KoLCharacter.recalculateAdjustments();
+      assertEquals(hits + 2, AdjustmentsCache.getHits());
+      assertEquals(35.0, KoLCharacter.currentNumericModifier(Modifiers.ITEMDROP));
+    } finally {
+      VYKEACompanionData.initialize(false);
+    }
+  }
+
   @AfterEach
   void resetUsername() {
     deleteUserPrefsAndMoodsFiles(KoLCharacter.baseUserName());
@@ -1,8 +1,14 @@
 package net.sourceforge.kolmafia;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Map.Entry;
+import net.sourceforge.kolmafia.persistence.AdventureDatabase;
+import net.sourceforge.kolmafia.preferences.Preferences;
 import org.junit.jupiter.api.Test;
 
 public class ModifiersTest {
@@ -50,4 +56,158 @@ public class ModifiersTest {
       assertEquals(manualMask, mask, name);
     }
   }
+
+  @Test
+  public void lookupsByIdAndNameAgree() {
+    Modifiers mods = Modifiers.getItemModifiers(3);
+    assertSame(mods, Modifiers.getModifiers("Item", "helmet turtle"));
+    assertSame(mods, Modifiers.getModifiers(Modifiers.ModifierType.ITEM, 3));
+  }
+
+  @Test
+  public void lookupsByIdSeeOverrides() {
+    try {
+      // Smooth Movements
+      assertEquals(0, Modifiers.getEffectModifiers(165).get(Modifiers.MUS));
+      Modifiers.overrideModifier("Effect:[165]", "Muscle: +5");
+      assertEquals(5, Modifiers.getEffectModifiers(165).get(Modifiers.MUS));
+    } finally {
+      Modifiers.resetModifiers();
+    }
+  }
+
+  @Test
+  public void cachedExpressionsFollowTheirInputs() {
+    KoLCharacter.reset("fakeUserName");
+    Preferences.setBoolean("saveSettingsOnSet", false);
+    try {
+      ModifierExpression expr =
+          new ModifierExpression(
+              "pref(_modifiersTestValue)+10*loc(The Haunted Pantry)", "Item:test");
+      assertTrue(expr.isCacheable());
+      assertFalse(new ModifierExpression("L", "Item:test").isCacheable());
+
+      Modifiers.setLocation(null);
+      Preferences.setInteger("_modifiersTestValue", 3);
+      assertEquals(3.0, expr.eval());
+      assertEquals(3.0, expr.eval());
+
+      Preferences.setInteger("_modifiersTestValue", 4);
+      assertEquals(4.0, expr.eval());
+
+      Modifiers.setLocation(AdventureDatabase.getAdventure("The Haunted Pantry"));
+      assertEquals(14.0, expr.eval());
+    } finally {
+      Modifiers.setLocation(null);
+    }
+  }
+
+  @Test
+  public void evaluatedModifiersAreReusedUntilTheirTextChanges() {
+    Modifiers first = Modifiers.getEvaluatedModifiers("Mummery", "Meat Drop: +25");
+    assertEquals(25.0, first.get(Modifiers.MEATDROP));
+    assertSame(first, Modifiers.getEvaluatedModifiers("Mummery", "Meat Drop: +25"));
+
+    Modifiers second = Modifiers.getEvaluatedModifiers("Mummery", "Item Drop: +15");
+    assertEquals(0.0, second.get(Modifiers.MEATDROP));
+    assertEquals(15.0, second.get(Modifiers.ITEMDROP));
+  }
+
+  @Test
+  public void sourcesGivenByTypeAndNameMatchLookups() {
+    Modifiers byLookup = new Modifiers();
+    Modifiers byParts = new Modifiers();
+    byLookup.add(Modifiers.ITEMDROP, 10, "Item:broken champagne bottle");
+    byParts.add(Modifiers.ITEMDROP, 10, "Item", "broken champagne bottle");
+    byLookup.add(Modifiers.ITEMDROP, 5, "Effect:Fat Leon's Phat Loot Lyric");
+    byParts.add(Modifiers.ITEMDROP, 5, "Effect", "Fat Leon's Phat Loot Lyric");
+    byLookup.add(Modifiers.ITEMDROP, 3, "Familiar:Baby Gravy Fairy");
+    byParts.add(Modifiers.ITEMDROP, 3, "Familiar", "Baby Gravy Fairy");
+
+    assertEquals(18.0, byParts.get(Modifiers.ITEMDROP));
+    assertEquals(5.0, byLookup.getExtra(Modifiers.ITEMDROP));
+    assertEquals(5.0, byParts.getExtra(Modifiers.ITEMDROP));
+  }
+
+  @Test
+  public void indexFindsTheSourcesOfAModifier() {
+    boolean found = false;
+    boolean variable = false;
+    for (ModifierIndex.Source source : ModifierIndex.getSources("Item Drop")) {
+      // Fat Leon's Phat Loot Lyric
+      if (source.getType().equals("Effect") && source.getId() == 67) {
+        assertEquals(20.0, source.getValue());
+        assertFalse(source.isVariable());
+        found = true;
+      }
+      variable |= source.isVariable();
+    }
+    assertTrue(found);
+    assertTrue(variable);
+  }
+
+  @Test
+  public void indexSeesOverrides() {
+    try {
+      // Smooth Movements
+      assertFalse(providesMuscle("Effect:[165]"));
+      Modifiers.overrideModifier("Effect:[165]", "Muscle: +5");
+      assertTrue(providesMuscle("Effect:[165]"));
+    } finally {
+      Modifiers.resetModifiers();
+    }
+  }
+
+  @Test
+  public void lookingUpModifiersKeepsTheIndex() {
+    Modifiers.resetModifiers();
+    ModifierIndex.getSources(Modifiers.MUS);
+    int builds = ModifierIndex.getBuilds();
+
+    // The first lookup of each of these parses its text
+    assertEquals(15.0, Modifiers.getModifiers("Skill", "Abdominal Muscles").get(Modifiers.MUS));
+    assertEquals(40.0, Modifiers.getModifiers("Outfit", "Aeroutfit").get(Modifiers.MEATDROP));
+    assertTrue(providesMuscle("Skill:Abdominal Muscles"));
+    assertEquals(builds, ModifierIndex.getBuilds());
+  }
+
+  @Test
+  public void snapshotsCannotChange() {
+    Modifiers mods = new Modifiers();
+    mods.add(Modifiers.COLD_DAMAGE, 3.0, "Item:test");
+    mods.add(Modifiers.HOT_DAMAGE, 4.0, "Item:test");
+    mods.add(Modifiers.SLEAZE_DAMAGE, 4.0, "Item:test");
+    mods.add(Modifiers.SPOOKY_DAMAGE, 4.0, "Item:test");
+    mods.add(Modifiers.STENCH_DAMAGE, 4.0, "Item:test");
+    ModifiersSnapshot snapshot = new ModifiersSnapshot(mods);
+
+    assertThrows(UnsupportedOperationException.class, () -> snapshot.set(Modifiers.ITEMDROP, 5));
+    assertThrows(
+        UnsupportedOperationException.class,
+        () -> snapshot.add(Modifiers.ITEMDROP, 5.0, "Item:test"));
+    assertEquals(3.0, snapshot.get(Modifiers.PRISMATIC_DAMAGE));
+    assertTrue(new ModifiersSnapshot(snapshot).hasSameValues(snapshot));
+  }
+
+  @Test
+  public void sameValuesIncludeExtras() {
+    Modifiers squint = new Modifiers();
+    squint.add(Modifiers.ITEMDROP, 5.0, "Effect", "Steely-Eyed Squint");
+    Modifiers item = new Modifiers();
+    item.add(Modifiers.ITEMDROP, 5.0, "Item", "test");
+
+    // Both have the same Item Drop, but only the item's counts towards the Squint
+    assertEquals(squint.get(Modifiers.ITEMDROP), item.get(Modifiers.ITEMDROP));
+    assertFalse(squint.hasSameValues(item));
+    assertFalse(new ModifiersSnapshot(squint).hasSameValues(item));
+  }
+
+  private static boolean providesMuscle(final String lookup) {
+    for (ModifierIndex.Source source : ModifierIndex.getSources(Modifiers.MUS)) {
+      if (source.getLookup().equals(lookup)) {
+        return true;
+      }
+    }
+    return false;
+  }
 }
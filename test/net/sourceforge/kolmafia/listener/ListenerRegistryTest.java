@@ -0,0 +1,69 @@
+package net.sourceforge.kolmafia.listener;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import org.junit.jupiter.api.Test;
+
+class ListenerRegistryTest {
+
+  private static class CountingListener implements Listener {
+    int updates = 0;
+
+    @Override
+    public void update() {
+      this.updates++;
+    }
+  }
+
+  private static class CountingPanel extends JPanel implements Listener {
+    private static final long serialVersionUID = 1L;
+
+    int updates = 0;
+
+    @Override
+    public void update() {
+      this.updates++;
+    }
+  }
+
+  @Test
+  public void guiListenersRunOnceOnTheEventDispatchThread() throws Exception {
+    ListenerRegistry registry = new ListenerRegistry();
+    registry.setCoalescing(true);
+
+    CountingListener cache = new CountingListener();
+    CountingPanel panel = new CountingPanel();
+    registry.registerListener("first", cache);
+    registry.registerListener("first", panel);
+    registry.registerListener("second", panel);
+
+    registry.fireListener("first");
+    registry.fireListener("second");
+    registry.fireListener("first");
+
+    // Caches are brought up to date at once; the panel waits
+    assertEquals(2, cache.updates);
+    assertEquals(0, panel.updates);
+
+    registry.flushPending();
+    SwingUtilities.invokeAndWait(() -> {});
+    assertEquals(1, panel.updates);
+    assertEquals(2, cache.updates);
+
+    assertTrue(registry.getReport().startsWith("3 fired, 2 listeners run at once, 1 queued"));
+  }
+
+  @Test
+  public void listenersRunAtOnceWithoutCoalescing() {
+    ListenerRegistry registry = new ListenerRegistry();
+
+    CountingPanel panel = new CountingPanel();
+    registry.registerListener("key", panel);
+    registry.fireListener("key");
+    registry.fireListener("key");
+
+    assertEquals(2, panel.updates);
+  }
+}
@@ -2,14 +2,26 @@ package net.sourceforge.kolmafia.maximizer;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import net.sourceforge.kolmafia.AdventureResult;
 import net.sourceforge.kolmafia.FamiliarData;
 import net.sourceforge.kolmafia.KoLCharacter;
 import net.sourceforge.kolmafia.KoLConstants;
+import net.sourceforge.kolmafia.KoLmafiaCLI;
+import net.sourceforge.kolmafia.ModifierIndex;
 import net.sourceforge.kolmafia.Modifiers;
+import net.sourceforge.kolmafia.RequestLogger;
 import net.sourceforge.kolmafia.objectpool.EffectPool;
 import net.sourceforge.kolmafia.objectpool.FamiliarPool;
+import net.sourceforge.kolmafia.objectpool.ItemPool;
+import net.sourceforge.kolmafia.preferences.Preferences;
 import net.sourceforge.kolmafia.session.EquipmentManager;
 import net.sourceforge.kolmafia.session.InventoryManager;
 import org.json.JSONException;
@@ -21,6 +33,7 @@ public class MaximizerTest {
   @BeforeEach
   public void init() {
     KoLCharacter.reset(true);
+    MaximizerCache.invalidate();
   }
 
   @Test
@@ -175,6 +188,217 @@ public class MaximizerTest {
     assertEquals(25, modFor("Meat Drop"), 0.01);
   }
 
+  @Test
+  public void parallelSearchPicksSameCombinationAsSerialSearch() {
+    // Per-user preferences need a user
+    KoLCharacter.reset("MaximizerParallelUser");
+    KoLCharacter.setStatPoints(100, 10000, 100, 10000, 100, 10000);
+    KoLCharacter.addFamiliar(new FamiliarData(FamiliarPool.DICE));
+    KoLCharacter.addFamiliar(new FamiliarData(FamiliarPool.POTATO));
+    // Leprechaun
+    KoLCharacter.addFamiliar(new FamiliarData(2));
+    // helmet turtle, bugbear beanie, bugbear bungguard, eyepatch, swashbuckling pants,
+    // stuffed shoulder parrot, tiny plastic seal clubber
+    loadInventory(
+        "{\"3\": \"1\", \"169\": \"1\", \"79\": \"1\", \"224\": \"1\", \"402\": \"1\", \"403\": \"1\", \"963\": \"1\"}");
+    String expression =
+        "mys, mox, 0.5 mus, meat, switch fuzzy dice, switch levitating potato, switch leprechaun";
+
+    assertTrue(maximize(expression));
+    MaximizerSpeculation serial = Maximizer.best;
+
+    List<Thread> listenerThreads = new ArrayList<>();
+    MaximizerListener listener = best -> listenerThreads.add(Thread.currentThread());
+    Maximizer.addListener(listener);
+    Preferences.setBoolean("maximizerParallelSearch", true);
+    try {
+      MaximizerCache.invalidate();
+      assertTrue(maximize(expression));
+    } finally {
+      Preferences.setBoolean("maximizerParallelSearch", false);
+      Maximizer.removeListener(listener);
+    }
+    MaximizerSpeculation parallel = Maximizer.best;
+
+    assertArrayEquals(serial.equipment, parallel.equipment);
+    assertEquals(serial.getFamiliar(), parallel.getFamiliar());
+    assertEquals(serial.getScore(), parallel.getScore(), 0.01);
+    // The tasks ran on the search's own threads, but improvements were
+    // reported on the thread which asked for the search
+    assertTrue(
+        Thread.getAllStackTraces().keySet().stream()
+            .anyMatch(t -> t.getName().equals("Maximizer search")));
+    assertFalse(listenerThreads.isEmpty());
+    assertTrue(listenerThreads.stream().allMatch(t -> t == Thread.currentThread()));
+  }
+
+  @Test
+  public void incrementalModifiersMatchFullRecalculation() {
+    MaximizerSpeculation spec = new MaximizerSpeculation();
+    spec.equip(EquipmentManager.HAT, ItemPool.get(ItemPool.HELMET_TURTLE));
+    // stuffed shoulder parrot
+    spec.equip(EquipmentManager.ACCESSORY1, ItemPool.get(403));
+    Modifiers full = new Modifiers(spec.calculate());
+
+    IncrementalModifiers incremental = new IncrementalModifiers(spec);
+    Modifiers mods = incremental.calculate(spec, spec.equipment);
+    assertNotNull(mods);
+    for (int i = 0; i < Modifiers.DOUBLE_MODIFIERS; ++i) {
+      assertEquals(full.get(i), mods.get(i), 0.01, Modifiers.getModifierName(i));
+    }
+    assertEquals(1, mods.get(Modifiers.MUS), 0.01);
+    assertEquals(5, mods.get(Modifiers.MP), 0.01);
+  }
+
+  @Test
+  public void prunesCombinationsThatCannotBeatBest() {
+    KoLCharacter.setStatPoints(0, 0, 10, 100, 0, 0);
+    // 1 eXtreme nose ring, 1 shiny ring, 1 consolation ribbon,
+    // 1 tiny plastic seal clubber, 1 string of green beads.
+    loadInventory(
+        "{\"195\": \"1\", \"199\": \"1\", \"336\": \"1\", \"963\": \"1\", \"1044\": \"1\"}");
+    assertTrue(maximize("mox"));
+    assertEquals(8, modFor("Moxie"), 0.01);
+    assertTrue(Maximizer.bestPruned > 0);
+  }
+
+  @Test
+  public void reusesResultsUntilStateChanges() {
+    // 1 helmet turtle.
+    loadInventory("{\"3\": \"1\"}");
+    MaximizerCache.resetCounters();
+    assertTrue(maximize("mus"));
+    assertTrue(maximize("mus"));
+    assertEquals(1, MaximizerCache.getHits());
+    assertEquals(1, modFor("Buffed Muscle"), 0.01);
+
+    // 1 helmet turtle, 1 seal-skull helmet.
+    loadInventory("{\"3\": \"1\", \"2283\": \"1\"}");
+    assertTrue(maximize("mus"));
+    assertEquals(1, MaximizerCache.getHits());
+    assertEquals(2, MaximizerCache.getMisses());
+  }
+
+  @Test
+  public void reusesResultsUntilPreferencesOrClosetChange() {
+    // Per-user preferences need a user
+    KoLCharacter.reset("MaximizerCacheUser");
+    // 1 helmet turtle.
+    loadInventory("{\"3\": \"1\"}");
+    MaximizerCache.resetCounters();
+    assertTrue(maximize("mus"));
+    assertTrue(maximize("mus"));
+    assertEquals(1, MaximizerCache.getHits());
+
+    Preferences.setString("_voteModifier", "Muscle: +1");
+    try {
+      assertTrue(maximize("mus"));
+      assertEquals(1, MaximizerCache.getHits());
+    } finally {
+      Preferences.resetToDefault("_voteModifier");
+    }
+
+    AdventureResult.addResultToList(KoLConstants.closet, ItemPool.get(ItemPool.HELMET_TURTLE));
+    try {
+      assertTrue(maximize("mus"));
+      assertEquals(1, MaximizerCache.getHits());
+      assertEquals(3, MaximizerCache.getMisses());
+    } finally {
+      KoLConstants.closet.clear();
+    }
+  }
+
+  @Test
+  public void maximizesBatchOfExpressions() {
+    // 1 helmet turtle.
+    loadInventory("{\"3\": \"1\"}");
+    Map<String, List<Boost>> results = Maximizer.maximizeBatch(List.of("mus", "-mus"), 0, 0);
+    assertEquals(List.of("mus", "-mus"), new ArrayList<>(results.keySet()));
+    assertTrue(results.get("mus").stream().anyMatch(b -> equipsItem(b, 3)));
+    assertFalse(results.get("-mus").stream().anyMatch(b -> equipsItem(b, 3)));
+  }
+
+  @Test
+  public void batchMatchesExpressionsMaximizedOneAtATime() {
+    KoLCharacter.setStatPoints(100, 10000, 100, 10000, 100, 10000);
+    // helmet turtle, seal-skull helmet, seal-clubbing club, eyepatch, swashbuckling pants
+    loadInventory("{\"3\": \"1\", \"169\": \"1\", \"1\": \"1\", \"224\": \"1\", \"402\": \"1\"}");
+    List<String> expressions = List.of("mus", "mox", "-mus");
+
+    Map<String, List<String>> separately = new LinkedHashMap<>();
+    for (String expression : expressions) {
+      MaximizerCache.invalidate();
+      Maximizer.maximize(expression, 0, 0, true);
+      separately.put(
+          expression, Maximizer.boosts.stream().map(Boost::toString).collect(Collectors.toList()));
+    }
+
+    MaximizerCache.invalidate();
+    int builds = ModifierIndex.getBuilds();
+    Map<String, List<Boost>> results = Maximizer.maximizeBatch(List.of("-mus", "mox", "mus"), 0, 0);
+    for (String expression : expressions) {
+      assertEquals(
+          separately.get(expression),
+          results.get(expression).stream().map(Boost::toString).collect(Collectors.toList()));
+    }
+    // The modifier index is built once for the whole batch
+    assertEquals(builds + 1, ModifierIndex.getBuilds());
+    // and the last expression's result is the one speculated
+    assertTrue(Modifiers.getNumericModifier("Generated", "_spec", "Muscle") > 0);
+    assertEquals(
+        Maximizer.best.calculate().get(Modifiers.MUS),
+        Modifiers.getNumericModifier("Generated", "_spec", "Muscle"));
+  }
+
+  private static boolean equipsItem(Boost boost, int itemId) {
+    AdventureResult item = boost.getItem(false);
+    return boost.isEquipment() && item != null && item.getItemId() == itemId;
+  }
+
+  @Test
+  public void prunesDominatedCandidates() {
+    KoLCharacter.setStatPoints(100, 10000, 100, 10000, 100, 10000);
+    // aerated diving helmet, oxygenated eggnog helmet
+    loadInventory("{\"3607\": \"1\", \"10372\": \"1\"}");
+    assertTrue(maximize("stench res, +sea -tie"));
+    assertEquals(3, modFor("Stench Resistance"), 0.01);
+    // Both hats meet the constraint, but one is better at everything else
+    assertEquals(1, Maximizer.eval.getDominated());
+  }
+
+  @Test
+  public void reportsBestSoFarWithinTimeLimit() {
+    // 1 helmet turtle.
+    loadInventory("{\"3\": \"1\"}");
+    List<Double> scores = new ArrayList<>();
+    MaximizerListener listener = best -> scores.add(best.getScore());
+    Maximizer.addListener(listener);
+    try {
+      Maximizer.maximize("mus", 0, 0, true, 1);
+    } finally {
+      Maximizer.removeListener(listener);
+    }
+    assertFalse(scores.isEmpty());
+    assertTrue(Maximizer.best.getScore() >= scores.get(scores.size() - 1));
+  }
+
+  @Test
+  public void callsScriptFunctionWithEachImprovement() {
+    // 1 helmet turtle.
+    loadInventory("{\"3\": \"1\"}");
+    var outputStream = new ByteArrayOutputStream();
+    RequestLogger.openCustom(new PrintStream(outputStream));
+    try {
+      KoLmafiaCLI.DEFAULT_SHELL.executeLine(
+          "ash void improved(float score, familiar fam) { print(\"improved \" + score + \" \" + fam); }"
+              + " maximize(\"mus\", true, 0, \"improved\")");
+    } finally {
+      RequestLogger.closeCustom();
+    }
+    String output = outputStream.toString();
+    assertTrue(output.contains("improved " + Maximizer.best.getScore() + " none"), output);
+  }
+
   private void equip(int slot, String item) {
     EquipmentManager.setEquipment(slot, AdventureResult.parseResult(item));
   }
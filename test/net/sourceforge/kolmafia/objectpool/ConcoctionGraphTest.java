@@ -0,0 +1,110 @@
+package net.sourceforge.kolmafia.objectpool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.sourceforge.kolmafia.AdventureResult;
+import net.sourceforge.kolmafia.KoLCharacter;
+import net.sourceforge.kolmafia.KoLConstants;
+import net.sourceforge.kolmafia.persistence.ConcoctionDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ConcoctionGraphTest {
+
+  @BeforeEach
+  public void beforeEach() {
+    KoLCharacter.reset("");
+    KoLCharacter.reset("concoction graph user");
+    KoLConstants.inventory.clear();
+  }
+
+  @AfterEach
+  public void afterEach() {
+    KoLConstants.inventory.clear();
+  }
+
+  @Test
+  public void recipesDependOnTheirIngredients() {
+    Concoction abridged = ConcoctionPool.get(ItemPool.ABRIDGED);
+    List<Concoction> inputs = ConcoctionGraph.getInputs(abridged);
+
+    assertTrue(inputs.contains(ConcoctionPool.get(ItemPool.BRIDGE)));
+    assertTrue(inputs.contains(ConcoctionPool.get(ItemPool.DICTIONARY)));
+    // Combining may need meat paste, which isn't in the recipe
+    assertTrue(inputs.contains(ConcoctionPool.get(ItemPool.MEAT_PASTE)));
+
+    List<Concoction> changed = new ArrayList<>();
+    changed.add(ConcoctionPool.get(ItemPool.DICTIONARY));
+    assertTrue(ConcoctionGraph.getAffected(changed).contains(abridged));
+  }
+
+  @Test
+  public void ingredientsComeBeforeTheirUsers() {
+    int abridged = -1;
+    int dictionary = -1;
+    int i = 0;
+    for (Concoction[] group : ConcoctionGraph.getGroups()) {
+      for (Concoction c : group) {
+        if (c == ConcoctionPool.get(ItemPool.ABRIDGED)) {
+          abridged = i;
+        } else if (c == ConcoctionPool.get(ItemPool.DICTIONARY)) {
+          dictionary = i;
+        }
+      }
+      i++;
+    }
+
+    assertTrue(dictionary >= 0);
+    assertTrue(dictionary < abridged);
+  }
+
+  @Test
+  public void unobtainableConcoctionsAreNotSearched() {
+    AdventureResult.addResultToList(KoLConstants.inventory, ItemPool.get(ItemPool.BRIDGE, 1));
+    AdventureResult.addResultToList(KoLConstants.inventory, ItemPool.get(ItemPool.DICTIONARY, 1));
+    ConcoctionDatabase.refreshConcoctionsNow();
+
+    // Searching for how many can be made agrees with what the refresh worked out
+    for (Concoction c : ConcoctionPool.concoctions()) {
+      int[] expected = {c.total, c.creatable, c.visibleTotal, c.freeTotal};
+      c.calculate2();
+      c.calculate3();
+      int[] actual = {c.total, c.creatable, c.visibleTotal, c.freeTotal};
+      assertArrayEquals(expected, actual, c.getName());
+    }
+  }
+
+  @Test
+  public void incrementalRefreshMatchesFullRefresh() {
+    AdventureResult.addResultToList(KoLConstants.inventory, ItemPool.get(ItemPool.BRIDGE, 1));
+    ConcoctionDatabase.refreshConcoctionsNow();
+
+    AdventureResult.addResultToList(KoLConstants.inventory, ItemPool.get(ItemPool.DICTIONARY, 1));
+    AdventureResult.addResultToList(KoLConstants.inventory, ItemPool.get(ItemPool.MEAT_PASTE, 1));
+    ConcoctionDatabase.refreshConcoctionsNow();
+
+    int count = ConcoctionPool.concoctions().size();
+    int recalculated = ConcoctionDatabase.getLastRecalculated();
+    assertTrue(recalculated > 0);
+    assertTrue(recalculated < count);
+
+    List<int[]> incremental = new ArrayList<>();
+    for (Concoction c : ConcoctionPool.concoctions()) {
+      incremental.add(new int[] {c.total, c.creatable, c.visibleTotal, c.freeTotal});
+    }
+
+    // Forget the graph, which makes the next refresh work out everything
+    ConcoctionGraph.invalidate();
+    ConcoctionDatabase.refreshConcoctionsNow();
+    assertEquals(count, ConcoctionDatabase.getLastRecalculated());
+
+    int i = 0;
+    for (Concoction c : ConcoctionPool.concoctions()) {
+      int[] expected = {c.total, c.creatable, c.visibleTotal, c.freeTotal};
+      assertArrayEquals(expected, incremental.get(i++), c.getName());
+    }
+  }
+}
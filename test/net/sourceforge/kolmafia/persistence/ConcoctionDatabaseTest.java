@@ -0,0 +1,112 @@
+package net.sourceforge.kolmafia.persistence;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import net.java.dev.spellcast.utilities.LockableListModel;
+import net.sourceforge.kolmafia.AdventureResult;
+import net.sourceforge.kolmafia.KoLCharacter;
+import net.sourceforge.kolmafia.KoLConstants;
+import net.sourceforge.kolmafia.objectpool.Concoction;
+import net.sourceforge.kolmafia.objectpool.ConcoctionGraph;
+import net.sourceforge.kolmafia.objectpool.ConcoctionPool;
+import net.sourceforge.kolmafia.objectpool.ItemPool;
+import net.sourceforge.kolmafia.preferences.Preferences;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ConcoctionDatabaseTest {
+
+  private static class RecordingListener implements ListDataListener {
+    final List<ListDataEvent> events = new ArrayList<>();
+
+    @Override
+    public void intervalAdded(final ListDataEvent e) {
+      this.events.add(e);
+    }
+
+    @Override
+    public void intervalRemoved(final ListDataEvent e) {
+      this.events.add(e);
+    }
+
+    @Override
+    public void contentsChanged(final ListDataEvent e) {
+      this.events.add(e);
+    }
+  }
+
+  @BeforeEach
+  public void beforeEach() {
+    KoLCharacter.reset("");
+    KoLCharacter.reset("concoction database user");
+    KoLConstants.inventory.clear();
+  }
+
+  @AfterEach
+  public void afterEach() {
+    KoLConstants.inventory.clear();
+  }
+
+  @Test
+  public void refreshRepaintsOnlyTheRowsWhichChanged() {
+    LockableListModel<Concoction> usables = ConcoctionDatabase.getUsables();
+    ConcoctionDatabase.refreshConcoctionsNow();
+    ConcoctionDatabase.refreshConcoctionsNow();
+
+    int builds = ConcoctionGraph.getBuilds();
+    RecordingListener listener = new RecordingListener();
+    usables.addListDataListener(listener);
+    try {
+      AdventureResult.addResultToList(KoLConstants.inventory, ItemPool.get(ItemPool.BRIDGE, 1));
+      ConcoctionDatabase.refreshConcoctionsNow();
+    } finally {
+      usables.removeListDataListener(listener);
+    }
+
+    // Only quantities changed, so the graph was kept
+    assertEquals(builds, ConcoctionGraph.getBuilds());
+
+    int row = usables.getIndexOf(ConcoctionPool.get(ItemPool.BRIDGE));
+    assertFalse(listener.events.isEmpty());
+    for (ListDataEvent e : listener.events) {
+      assertEquals(ListDataEvent.CONTENTS_CHANGED, e.getType());
+      assertEquals(e.getIndex0(), e.getIndex1());
+    }
+    assertTrue(
+        listener.events.stream().anyMatch(e -> e.getIndex0() == row), "bridge row repainted");
+  }
+
+  @Test
+  public void refreshSeesTokenBalanceChanges() {
+    Concoction sleeve = ConcoctionPool.get(ItemPool.CARD_SLEEVE);
+    Preferences.setBoolean("autoSatisfyWithCoinmasters", true);
+    Preferences.setInteger("availableStoreCredits", 0);
+    KoLCharacter.setRonin(true);
+    try {
+      ConcoctionDatabase.refreshConcoctionsNow();
+      ConcoctionDatabase.refreshConcoctionsNow();
+      assertEquals(0, sleeve.creatable);
+
+      // The credit reader is broken in Ronin
+      Preferences.setInteger("availableStoreCredits", 5000);
+      ConcoctionDatabase.refreshConcoctionsNow();
+      assertEquals(0, sleeve.creatable);
+
+      // Nothing in inventory changes when the Game Shoppe opens
+      KoLCharacter.setRonin(false);
+      ConcoctionDatabase.refreshConcoctionsNow();
+      assertEquals(2, sleeve.creatable);
+
+      Preferences.setInteger("availableStoreCredits", 2500);
+      ConcoctionDatabase.refreshConcoctionsNow();
+      assertEquals(1, sleeve.creatable);
+    } finally {
+      KoLCharacter.setRonin(true);
+    }
+  }
+}
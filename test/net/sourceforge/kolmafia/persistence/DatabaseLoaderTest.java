@@ -0,0 +1,30 @@
+package net.sourceforge.kolmafia.persistence;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class DatabaseLoaderTest {
+  @Test
+  public void databasesLoadAfterWhatTheyRequire() {
+    List<String> order = DatabaseLoader.getOrderNames();
+    assertEquals(order.size(), order.stream().distinct().count());
+    for (String name : order) {
+      for (String required : DatabaseLoader.getRequiredNames(name)) {
+        assertTrue(
+            order.indexOf(required) < order.indexOf(name), name + " loads before " + required);
+      }
+    }
+  }
+
+  @Test
+  public void loadingReportsEveryDatabase() {
+    DatabaseLoader.load();
+    String report = DatabaseLoader.getReport();
+    for (String name : DatabaseLoader.getOrderNames()) {
+      assertTrue(report.contains(name + ": "), name);
+    }
+    assertTrue(ItemDatabase.getItemId("seal-clubbing club") > 0);
+  }
+}
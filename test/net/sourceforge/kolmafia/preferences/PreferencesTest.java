@@ -2,8 +2,12 @@ package net.sourceforge.kolmafia.preferences;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.TreeMap;
 import net.sourceforge.kolmafia.KoLCharacter;
+import net.sourceforge.kolmafia.KoLConstants;
 import org.junit.jupiter.api.*;
 
 class PreferencesTest {
@@ -158,6 +162,21 @@ class PreferencesTest {
     assertEquals(0, checkPref, "Preference not recorded");
   }
 
+  @Test
+  void sameValueCanBeReadAsSeveralTypes() {
+    String prefName = "aTypedPref";
+    Preferences.setString(prefName, "12");
+    assertEquals(12, Preferences.getInteger(prefName));
+    assertEquals(12.0, Preferences.getDouble(prefName));
+    assertEquals(12L, Preferences.getLong(prefName));
+    assertEquals("12", Preferences.getString(prefName));
+
+    Preferences.setInteger(prefName, 7);
+    assertEquals("7", Preferences.getString(prefName));
+    assertEquals(7.0, Preferences.getDouble(prefName));
+    assertEquals(7, Preferences.getInteger(prefName));
+  }
+
   @Test
   void IncrementPref() {
     String prefName = "anIntegerPref";
@@ -503,6 +522,72 @@ class PreferencesTest {
     Preferences.saveSettingsToFile = false;
   }
 
+  @Test
+  public void changesAreWrittenTogetherWhenFlushed() throws IOException {
+    File file =
+        new File(
+            KoLConstants.SETTINGS_LOCATION,
+            Preferences.baseUserName(KoLCharacter.getUserName()) + "_prefs.txt");
+    boolean saveSettingsOnSet = Preferences.getBoolean("saveSettingsOnSet");
+    try {
+      Preferences.saveSettingsToFile = true;
+      Preferences.setBoolean("saveSettingsOnSet", true);
+      Preferences.flush();
+
+      Preferences.setString("flushedFirst", "one");
+      Preferences.setString("flushedSecond", "two");
+      assertTrue(Preferences.isFlushPending());
+
+      Preferences.flush();
+      assertFalse(Preferences.isFlushPending());
+
+      String contents = Files.readString(file.toPath());
+      assertTrue(contents.contains("flushedFirst=one"));
+      assertTrue(contents.contains("flushedSecond=two"));
+      assertFalse(new File(file.getPath() + ".tmp").exists());
+    } finally {
+      Preferences.removeProperty("flushedFirst", false);
+      Preferences.removeProperty("flushedSecond", false);
+      Preferences.setBoolean("saveSettingsOnSet", saveSettingsOnSet);
+      Preferences.flush();
+      Preferences.saveSettingsToFile = false;
+    }
+  }
+
+  @Test
+  public void pendingChangesAreWrittenForTheirOwnUser() throws IOException {
+    String userName = KoLCharacter.getUserName();
+    File file =
+        new File(KoLConstants.SETTINGS_LOCATION, Preferences.baseUserName(userName) + "_prefs.txt");
+    File otherFile =
+        new File(
+            KoLConstants.SETTINGS_LOCATION,
+            Preferences.baseUserName("otherPrefUser") + "_prefs.txt");
+    boolean saveSettingsOnSet = Preferences.getBoolean("saveSettingsOnSet");
+    try {
+      Preferences.saveSettingsToFile = true;
+      Preferences.setBoolean("saveSettingsOnSet", true);
+      Preferences.flush();
+
+      Preferences.setString("switchedAwayFrom", "first");
+      assertTrue(Preferences.isFlushPending());
+
+      Preferences.reset("otherPrefUser");
+      assertFalse(Preferences.isFlushPending());
+      assertEquals("", Preferences.getString("switchedAwayFrom"));
+      assertTrue(Files.readString(file.toPath()).contains("switchedAwayFrom=first"));
+      assertFalse(
+          otherFile.exists() && Files.readString(otherFile.toPath()).contains("switchedAwayFrom"));
+    } finally {
+      Preferences.reset(userName);
+      Preferences.removeProperty("switchedAwayFrom", false);
+      Preferences.setBoolean("saveSettingsOnSet", saveSettingsOnSet);
+      Preferences.flush();
+      Preferences.saveSettingsToFile = false;
+      otherFile.delete();
+    }
+  }
+
   @Test
   public void exerciseGetStringVariant() {
     String name = "makeMineAlso"; // makeAndTestUserProperty using the same name breaks
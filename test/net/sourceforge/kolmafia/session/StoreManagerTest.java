@@ -0,0 +1,88 @@
+package net.sourceforge.kolmafia.session;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import net.sourceforge.kolmafia.AdventureResult;
+import net.sourceforge.kolmafia.KoLConstants;
+import net.sourceforge.kolmafia.KoLConstants.MafiaState;
+import net.sourceforge.kolmafia.KoLmafia;
+import net.sourceforge.kolmafia.objectpool.ItemPool;
+import net.sourceforge.kolmafia.persistence.ItemDatabase;
+import net.sourceforge.kolmafia.request.MallPurchaseRequest;
+import net.sourceforge.kolmafia.request.PurchaseRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StoreManagerTest {
+  @BeforeEach
+  public void beforeEach() {
+    KoLmafia.forceContinue();
+  }
+
+  @AfterEach
+  public void afterEach() {
+    KoLmafia.forceContinue();
+    new File(KoLConstants.DATA_LOCATION, "mallprices.txt").delete();
+  }
+
+  private static ArrayList<PurchaseRequest> offer(final int itemId, final int price) {
+    ArrayList<PurchaseRequest> results = new ArrayList<>();
+    results.add(new MallPurchaseRequest(itemId, 100, 1, "a store", price, 100));
+    return results;
+  }
+
+  @Test
+  public void getMallPriceUsesPrefetchedPrices() {
+    List<AdventureResult> items =
+        List.of(
+            ItemPool.get(ItemPool.BEER_LENS, 1), ItemPool.get(ItemPool.GNOLLISH_AUTOPLUNGER, 1));
+    StoreManager.prefetchMallPrices(
+        items,
+        name ->
+            name.equals(ItemDatabase.getItemDataName(ItemPool.BEER_LENS))
+                ? StoreManagerTest.offer(ItemPool.BEER_LENS, 150)
+                : StoreManagerTest.offer(ItemPool.GNOLLISH_AUTOPLUNGER, 2500));
+
+    // With no session, searching the mall again would find nothing
+    assertEquals(150, StoreManager.getMallPrice(ItemPool.get(ItemPool.BEER_LENS, 1)));
+    assertEquals(2500, StoreManager.getMallPrice(ItemPool.get(ItemPool.GNOLLISH_AUTOPLUNGER, 1)));
+    assertTrue(KoLmafia.permitsContinue());
+  }
+
+  @Test
+  public void failedPrefetchesAreNotCachedOrReported() {
+    List<AdventureResult> items =
+        List.of(ItemPool.get(ItemPool.HEMP_STRING, 1), ItemPool.get(ItemPool.BANJO_STRINGS, 1));
+    StoreManager.prefetchMallPrices(
+        items,
+        name -> {
+          if (name.equals(ItemDatabase.getItemDataName(ItemPool.HEMP_STRING))) {
+            KoLmafia.updateDisplay(MafiaState.ERROR, "The mall is closed.");
+            return new ArrayList<>();
+          }
+          return StoreManagerTest.offer(ItemPool.BANJO_STRINGS, 400);
+        });
+
+    // The failure stayed on the search's own thread
+    assertTrue(KoLmafia.permitsContinue());
+    assertEquals(400, StoreManager.getMallPrice(ItemPool.get(ItemPool.BANJO_STRINGS, 1)));
+
+    // The hemp string wasn't given the failed search's empty results, so it is searched again
+    List<String> searched = Collections.synchronizedList(new ArrayList<>());
+    StoreManager.prefetchMallPrices(
+        List.of(ItemPool.get(ItemPool.HEMP_STRING, 1), ItemPool.get(ItemPool.DRY_NOODLES, 1)),
+        name -> {
+          searched.add(name);
+          return name.equals(ItemDatabase.getItemDataName(ItemPool.HEMP_STRING))
+              ? StoreManagerTest.offer(ItemPool.HEMP_STRING, 90)
+              : StoreManagerTest.offer(ItemPool.DRY_NOODLES, 60);
+        });
+    assertTrue(searched.contains(ItemDatabase.getItemDataName(ItemPool.HEMP_STRING)));
+    assertEquals(90, StoreManager.getMallPrice(ItemPool.get(ItemPool.HEMP_STRING, 1)));
+  }
+}
@@ -0,0 +1,84 @@
+package net.sourceforge.kolmafia.utilities;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DataSnapshotTest {
+
+  @Test
+  public void tablesReadBackAsTheirText() throws Exception {
+    String text =
+        "1\n"
+            + "# A comment\n"
+            + "\n"
+            + "1\tseal-clubbing club\t\n"
+            + "2\tseal tooth\tnone\n"
+            + "3\tjabañero pepper\tnone\n";
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    DataSnapshot.writeTable(
+        out,
+        DataSnapshot.readRows(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))));
+    out.flush();
+
+    String[][] rows = DataSnapshot.readTable(ByteBuffer.wrap(bytes.toByteArray()));
+    assertArrayEquals(
+        new String[][] {
+          {"1"},
+          {"1", "seal-clubbing club", ""},
+          {"2", "seal tooth", "none"},
+          {"3", "jabañero pepper", "none"},
+        },
+        rows);
+
+    // Repeated fields share a string
+    assertSame(rows[2][2], rows[3][2]);
+  }
+
+  @Test
+  public void tableReadersHandOutRows() {
+    DataSnapshot.TableReader reader =
+        new DataSnapshot.TableReader(new String[][] {{"1"}, {"a", "b"}});
+    assertEquals("1", FileUtilities.readLine(reader));
+    assertArrayEquals(new String[] {"a", "b"}, FileUtilities.readData(reader));
+    assertNull(FileUtilities.readData(reader));
+  }
+
+  @Test
+  public void tablesRememberTheTextTheyCameFrom(@TempDir Path directory) throws Exception {
+    byte[] text = "1\n1\tseal tooth\n".getBytes(StandardCharsets.UTF_8);
+    byte[] edited = "1\n1\tseal tootH\n".getBytes(StandardCharsets.UTF_8);
+    Files.write(directory.resolve("items.txt"), text);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataSnapshot.write(directory.toFile(), bytes);
+
+    Map<String, DataSnapshot.Table> tables =
+        DataSnapshot.readDirectory(ByteBuffer.wrap(bytes.toByteArray()));
+    long checksum = tables.get("items.txt").checksum;
+    assertEquals(checksum, DataSnapshot.checksum(new ByteArrayInputStream(text)));
+
+    // An edit which keeps the length is still noticed
+    assertNotEquals(checksum, DataSnapshot.checksum(new ByteArrayInputStream(edited)));
+  }
+
+  @Test
+  public void textInTheSnapshotsJarIsRecognised() throws Exception {
+    assertEquals(
+        "jar:file:/kolmafia/KoLmafia.jar",
+        DataSnapshot.getJar(new URL("jar:file:/kolmafia/KoLmafia.jar!/data/items.txt")));
+    assertNull(DataSnapshot.getJar(new URL("file:/kolmafia/src/data/items.txt")));
+  }
+}